@@ -0,0 +1,700 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.ApacheHttpTransport;
+
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.ds.AbstractDataStore;
+import org.codelibs.fess.ds.atlassian.api.AtlassianClient;
+import org.codelibs.fess.ds.atlassian.api.AtlassianClientBuilder;
+import org.codelibs.fess.ds.atlassian.api.JdkHttpTransport;
+import org.codelibs.fess.ds.atlassian.api.MetadataCache;
+import org.codelibs.fess.ds.atlassian.api.ResponseCache;
+import org.codelibs.fess.ds.atlassian.callback.BatchingIndexUpdateCallback;
+import org.codelibs.fess.ds.atlassian.callback.SegmentUpdater;
+import org.codelibs.fess.ds.atlassian.flow.DocumentPublisher;
+import org.codelibs.fess.ds.atlassian.jfr.DocumentProcessedEvent;
+import org.codelibs.fess.ds.atlassian.metrics.CrawlMetrics;
+import org.codelibs.fess.ds.atlassian.store.CrawlCheckpoint;
+import org.codelibs.fess.ds.atlassian.store.ExtractedTextCache;
+import org.codelibs.fess.ds.atlassian.store.FingerprintStore;
+import org.codelibs.fess.ds.atlassian.store.SeenIdSet;
+import org.codelibs.fess.ds.atlassian.webhook.WebhookReceiver;
+import org.codelibs.fess.ds.callback.IndexUpdateCallback;
+import org.codelibs.fess.es.config.exentity.DataConfig;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public abstract class AbstractAtlassianDataStore extends AbstractDataStore {
+    private static final Logger logger = LoggerFactory.getLogger(AbstractAtlassianDataStore.class);
+
+    // parameters
+    protected static final String HOME_PARAM = "home";
+
+    protected static final String CONSUMER_KEY_PARAM = "oauth.consumer_key";
+    protected static final String PRIVATE_KEY_PARAM = "oauth.private_key";
+    protected static final String SECRET_PARAM = "oauth.secret";
+    protected static final String ACCESS_TOKEN_PARAM = "oauth.access_token";
+
+    protected static final String USERNAME_PARAM = "basicauth.username";
+    protected static final String PASSWORD_PARAM = "basicauth.password";
+
+    protected static final String NUMBER_OF_THREADS = "number_of_threads";
+
+    protected static final String STORE_DIRECTORY_PARAM = "store.directory";
+    protected static final String TEXT_CACHE_ENABLED_PARAM = "text_cache.enabled";
+    protected static final String TEXT_CACHE_MAX_SIZE_PARAM = "text_cache.max_size";
+    protected static final String FINGERPRINT_ENABLED_PARAM = "fingerprint.enabled";
+    protected static final String FINGERPRINT_BATCH_SIZE_PARAM = "fingerprint.batch_size";
+    protected static final String DELETION_DETECTION_ENABLED_PARAM = "deletion_detection.enabled";
+    protected static final String CHECKPOINT_ENABLED_PARAM = "checkpoint.enabled";
+    protected static final String METADATA_CACHE_MAX_SIZE_PARAM = "metadata_cache.max_size";
+    protected static final String METADATA_CACHE_TTL_PARAM = "metadata_cache.ttl";
+    protected static final String RESPONSE_FILTER_ENABLED_PARAM = "response_filter.enabled";
+    protected static final String VIRTUAL_THREADS_ENABLED_PARAM = "virtual_threads.enabled";
+    protected static final String MAX_CONCURRENT_REQUESTS_PARAM = "max_concurrent_requests";
+    protected static final String COMMENT_MAX_COUNT_PARAM = "comment.max_count";
+    protected static final String COMMENT_MAX_CHARS_PARAM = "comment.max_chars";
+    protected static final String BATCH_SIZE_PARAM = "batch.size";
+    protected static final String BATCH_MAX_BYTES_PARAM = "batch.max_bytes";
+    protected static final String BATCH_MAX_DELAY_PARAM = "batch.max_delay";
+    protected static final String PAGE_SIZE_MIN_PARAM = "page_size.min";
+    protected static final String PAGE_SIZE_MAX_PARAM = "page_size.max";
+    protected static final String PAGE_SIZE_TARGET_TIME_PARAM = "page_size.target_time";
+    protected static final String PAGE_SIZE_TARGET_BYTES_PARAM = "page_size.target_bytes";
+    protected static final String MEMORY_HIGH_WATER_PARAM = "memory.high_water";
+    protected static final String MEMORY_LOW_WATER_PARAM = "memory.low_water";
+    protected static final String MEMORY_MAX_PAUSE_PARAM = "memory.max_pause";
+    protected static final String SPILL_THRESHOLD_PARAM = "spill.threshold";
+    protected static final String SPILL_DIRECTORY_PARAM = "spill.directory";
+    protected static final String METRICS_ENABLED_PARAM = "metrics.enabled";
+    protected static final String HTTP2_ENABLED_PARAM = "http2.enabled";
+    protected static final String RESPONSE_CACHE_ENABLED_PARAM = "response_cache.enabled";
+    protected static final String RESPONSE_CACHE_MAX_SIZE_PARAM = "response_cache.max_size";
+    protected static final String RESPONSE_CACHE_MAX_ENTRY_SIZE_PARAM = "response_cache.max_entry_size";
+    protected static final String RESPONSE_CACHE_PATH_PATTERN_PARAM = "response_cache.path_pattern";
+
+    protected static final String WEBHOOK_PORT_PARAM = "webhook.port";
+    protected static final String WEBHOOK_PATH_PARAM = "webhook.path";
+    protected static final String WEBHOOK_TOKEN_PARAM = "webhook.token";
+    protected static final String WEBHOOK_DEBOUNCE_PARAM = "webhook.debounce";
+    protected static final String WEBHOOK_MAX_DELAY_PARAM = "webhook.max_delay";
+    protected static final String WEBHOOK_BATCH_SIZE_PARAM = "webhook.batch_size";
+    protected static final String WEBHOOK_MAX_BODY_SIZE_PARAM = "webhook.max_body_size";
+
+    protected static final long DEFAULT_BATCH_MAX_BYTES = 10L * 1024L * 1024L;
+    protected static final long DEFAULT_BATCH_MAX_DELAY = 1000L;
+    protected static final int DEFAULT_PAGE_SIZE_MIN = 5;
+    protected static final int DEFAULT_PAGE_SIZE_GROWTH = 4;
+    protected static final long DEFAULT_PAGE_SIZE_TARGET_TIME = 10L * 1000L;
+    protected static final long DEFAULT_PAGE_SIZE_TARGET_BYTES = 5L * 1024L * 1024L;
+    protected static final long DEFAULT_MEMORY_MAX_PAUSE = 60L * 1000L;
+    protected static final long DEFAULT_TEXT_CACHE_MAX_SIZE = 64L * 1024L * 1024L;
+    protected static final long DEFAULT_RESPONSE_CACHE_MAX_SIZE = 256L * 1024L * 1024L;
+    protected static final long DEFAULT_RESPONSE_CACHE_MAX_ENTRY_SIZE = 4L * 1024L * 1024L;
+
+    // the JFR event of the document processed by the current thread, only while recording
+    protected final ThreadLocal<DocumentProcessedEvent> documentEvent = new ThreadLocal<>();
+
+    // e.g. "issue" for issue.summary in the scripts
+    protected static Pattern getScriptReferencePattern(final String name) {
+        return Pattern.compile("\\b" + name + "\\b(?:\\s*\\??\\.\\s*(\\w+)(?:\\s*\\??\\.\\s*(\\w+))?)?");
+    }
+
+    // the documents of a crawl as a stream, so that the consumer pulls them at its own rate
+    public Flow.Publisher<Map<String, Object>> publish(final DataConfig dataConfig, final Map<String, String> paramMap,
+            final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap) {
+        // cancelling the subscription stops this crawl only, not the other crawls of this data store
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        return new DocumentPublisher(callback -> storeData(dataConfig, callback, paramMap, scriptMap, defaultDataMap, cancelled),
+                () -> cancelled.set(true));
+    }
+
+    @Override
+    protected void storeData(final DataConfig dataConfig, final IndexUpdateCallback callback, final Map<String, String> paramMap,
+            final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap) {
+        storeData(dataConfig, callback, paramMap, scriptMap, defaultDataMap, new AtomicBoolean());
+    }
+
+    protected abstract void storeData(DataConfig dataConfig, IndexUpdateCallback callback, Map<String, String> paramMap,
+            Map<String, String> scriptMap, Map<String, Object> defaultDataMap, AtomicBoolean cancelled);
+
+    protected boolean isRunning(final CrawlContext context) {
+        return alive && !context.isCancelled();
+    }
+
+    protected CrawlContext newCrawlContext(final DataConfig dataConfig, final IndexUpdateCallback callback,
+            final Map<String, String> paramMap, final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap) {
+        final CrawlContext context = new CrawlContext(dataConfig, callback, paramMap, scriptMap, defaultDataMap);
+        // scanned once per crawl instead of per document
+        context.setScriptReferences(getScriptReferences(scriptMap));
+        return context;
+    }
+
+    protected boolean validateParams(final Map<String, String> paramMap) {
+        if (getHome(paramMap).isEmpty()) {
+            logger.warn("parameter \"" + HOME_PARAM + "\" is required");
+            return false;
+        } else if (isBasicAuth(paramMap)) {
+            return true;
+        } else if (getConsumerKey(paramMap).isEmpty() || getPrivateKey(paramMap).isEmpty() || getSecret(paramMap).isEmpty()
+                || getAccessToken(paramMap).isEmpty()) {
+            logger.warn("parameter \"" + USERNAME_PARAM + "\" and \"" + PASSWORD_PARAM + "\" or \"" + CONSUMER_KEY_PARAM + "\", \""
+                    + PRIVATE_KEY_PARAM + "\", \"" + SECRET_PARAM + "\" and \"" + ACCESS_TOKEN_PARAM + "\" are required");
+            return false;
+        }
+        return true;
+    }
+
+    protected boolean isBasicAuth(final Map<String, String> paramMap) {
+        return !getUserName(paramMap).isEmpty() && !getPassword(paramMap).isEmpty();
+    }
+
+    protected AtlassianClientBuilder newClientBuilder(final Map<String, String> paramMap, final ResponseCache responseCache,
+            final CrawlMetrics crawlMetrics) {
+        return AtlassianClient.builder().responseCache(responseCache).httpTransport(createHttpTransport(paramMap)).metrics(crawlMetrics)
+                .maxConcurrentRequests(Integer.parseInt(paramMap.getOrDefault(MAX_CONCURRENT_REQUESTS_PARAM, "0")))
+                .spill(getSpillThreshold(paramMap), getSpillDirectory(paramMap));
+    }
+
+    protected AtlassianClient createClient(final Map<String, String> paramMap, final AtlassianClientBuilder builder) {
+        final String home = getHome(paramMap);
+        if (isBasicAuth(paramMap)) {
+            return builder.basicAuth(home, getUserName(paramMap), getPassword(paramMap)).build();
+        }
+        final String consumerKey = getConsumerKey(paramMap);
+        final String privateKey = getPrivateKey(paramMap);
+        final String verifier = getSecret(paramMap);
+        final String temporaryToken = getAccessToken(paramMap);
+        return builder.oAuthToken(home, accessToken -> {
+            accessToken.consumerKey = consumerKey;
+            accessToken.signer = AtlassianClientBuilder.getOAuthRsaSigner(privateKey);
+            accessToken.transport = new ApacheHttpTransport();
+            accessToken.verifier = verifier;
+            accessToken.temporaryToken = temporaryToken;
+        }).build();
+    }
+
+    protected void storeIfChanged(final CrawlContext context, final Map<String, Object> dataMap, final Map<String, Object> documentMap,
+            final String id, final Date lastModified) {
+        final IndexUpdateCallback callback = context.getCallback();
+        final Map<String, String> paramMap = context.getParamMap();
+        final FingerprintStore fingerprintStore = context.getFingerprintStore();
+        if (fingerprintStore == null || id == null) {
+            callback.store(paramMap, dataMap);
+            return;
+        }
+        final long documentId = Long.parseLong(id);
+        final long hash = getFingerprint(context, dataMap, documentMap);
+        if (fingerprintStore.isUnchanged(documentId, hash)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Skip unchanged document: " + id);
+            }
+            // Fess deletes the documents of older segments after the crawl
+            updateSegment(context, dataMap);
+            return;
+        }
+        final Runnable onStored = () -> fingerprintStore.put(documentId, hash, lastModified != null ? lastModified.getTime() : -1L);
+        if (callback instanceof BatchingIndexUpdateCallback) {
+            // a buffered document is not stored until its batch is flushed
+            ((BatchingIndexUpdateCallback) callback).store(paramMap, dataMap, onStored);
+        } else {
+            callback.store(paramMap, dataMap);
+            onStored.run();
+        }
+    }
+
+    protected long getFingerprint(final CrawlContext context, final Map<String, Object> dataMap, final Map<String, Object> documentMap) {
+        // segment, created and other default values change on every crawl
+        final Map<String, Object> fingerprintMap = new HashMap<>(dataMap);
+        fingerprintMap.keySet().removeAll(context.getDefaultDataMap().keySet());
+        fingerprintMap.put(StringUtil.EMPTY, documentMap);
+        return FingerprintStore.hash(fingerprintMap);
+    }
+
+    protected void updateSegment(final CrawlContext context, final Map<String, Object> dataMap) {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final Object segment = dataMap.get(fessConfig.getIndexFieldSegment());
+        if (segment == null) {
+            return;
+        }
+        final String docId = ComponentUtil.getCrawlingInfoHelper().generateId(dataMap);
+        final SegmentUpdater segmentUpdater = context.getSegmentUpdater();
+        if (segmentUpdater != null) {
+            // updated with a bulk request of the other unchanged documents
+            segmentUpdater.add(docId, segment);
+            return;
+        }
+        if (!ComponentUtil.getFessEsClient().update(fessConfig.getIndexDocumentUpdateIndex(), fessConfig.getIndexDocumentType(), docId,
+                fessConfig.getIndexFieldSegment(), segment)) {
+            logger.warn("Failed to update the segment of " + dataMap.get(fessConfig.getIndexFieldUrl()));
+        }
+    }
+
+    protected void close(final MemoryGovernor memoryGovernor) {
+        if (memoryGovernor == null) {
+            return;
+        }
+        memoryGovernor.close();
+        if (memoryGovernor.getPauseCount() > 0) {
+            logger.info("Paused fetching " + memoryGovernor.getPauseCount() + " times for " + memoryGovernor.getPausedTime()
+                    + "ms by heap usage.");
+        }
+    }
+
+    protected void logTruncatedComments(final CrawlContext context) {
+        if (context.getTruncatedCommentCount() > 0) {
+            logger.info("Truncated comments of " + context.getTruncatedCommentCount() + " documents by " + COMMENT_MAX_COUNT_PARAM + "/"
+                    + COMMENT_MAX_CHARS_PARAM + ".");
+        }
+    }
+
+    protected void finish(final CrawlMetrics crawlMetrics) {
+        if (crawlMetrics != null) {
+            crawlMetrics.finish();
+            logger.info(crawlMetrics.getSummary());
+        }
+    }
+
+    // Fess crawls in a child process which exits after the crawl, so the receiver only lives as long as the crawl;
+    // it is closed before the callback of the crawl, which stores the refetched documents.
+    protected WebhookReceiver startWebhook(final Map<String, String> paramMap, final Supplier<WebhookReceiver.Handler> handler) {
+        if (!paramMap.containsKey(WEBHOOK_PORT_PARAM)) {
+            return null;
+        }
+        final int port = Integer.parseInt(paramMap.get(WEBHOOK_PORT_PARAM));
+        final long debounce = Long.parseLong(paramMap.getOrDefault(WEBHOOK_DEBOUNCE_PARAM, "5000"));
+        final long maxDelay = Long.parseLong(paramMap.getOrDefault(WEBHOOK_MAX_DELAY_PARAM, "60000"));
+        final int batchSize = Integer.parseInt(paramMap.getOrDefault(WEBHOOK_BATCH_SIZE_PARAM, "50"));
+        final int maxBodySize = Integer.parseInt(
+                paramMap.getOrDefault(WEBHOOK_MAX_BODY_SIZE_PARAM, Integer.toString(WebhookReceiver.DEFAULT_MAX_BODY_SIZE)));
+        final WebhookReceiver receiver = new WebhookReceiver(handler.get(), debounce, maxDelay, batchSize, maxBodySize);
+        try {
+            receiver.start(port, paramMap.getOrDefault(WEBHOOK_PATH_PARAM, "/"), paramMap.get(WEBHOOK_TOKEN_PARAM));
+        } catch (final AtlassianDataStoreException e) {
+            receiver.close();
+            throw e;
+        }
+        return receiver;
+    }
+
+    protected void deleteRemovedDocuments(final SeenIdSet seenIdSet, final FingerprintStore fingerprintStore) {
+        final long count = seenIdSet.commit((id, url) -> {
+            deleteDocument(url);
+            if (fingerprintStore != null) {
+                fingerprintStore.remove(id);
+            }
+        });
+        if (count > 0) {
+            logger.info("Deleted " + count + " documents which no longer exist in " + getName());
+        }
+    }
+
+    protected void deleteDocument(final String url) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Deleting " + url);
+        }
+        ComponentUtil.getIndexingHelper().deleteDocumentByUrl(ComponentUtil.getFessEsClient(), url);
+    }
+
+    protected CrawlCheckpoint createCrawlCheckpoint(final DataConfig dataConfig, final Map<String, String> paramMap, final String query) {
+        if (!Boolean.parseBoolean(paramMap.getOrDefault(CHECKPOINT_ENABLED_PARAM, Boolean.FALSE.toString()))) {
+            return null;
+        }
+        final Path path = getStorePath(dataConfig, paramMap, "checkpoint.properties");
+        if (path == null) {
+            logger.warn("parameter \"" + STORE_DIRECTORY_PARAM + "\" is required for \"" + CHECKPOINT_ENABLED_PARAM + "\"");
+            return null;
+        }
+        return new CrawlCheckpoint(path, query);
+    }
+
+    protected SeenIdSet createSeenIdSet(final DataConfig dataConfig, final Map<String, String> paramMap, final String query) {
+        if (!Boolean.parseBoolean(paramMap.getOrDefault(DELETION_DETECTION_ENABLED_PARAM, Boolean.FALSE.toString()))) {
+            return null;
+        }
+        // ids seen by another query must not be deleted
+        final Path path = getStorePath(dataConfig, paramMap, "seen_" + Integer.toHexString(query.hashCode()) + ".dat");
+        if (path == null) {
+            logger.warn("parameter \"" + STORE_DIRECTORY_PARAM + "\" is required for \"" + DELETION_DETECTION_ENABLED_PARAM + "\"");
+            return null;
+        }
+        return new SeenIdSet(path);
+    }
+
+    protected FingerprintStore createFingerprintStore(final DataConfig dataConfig, final Map<String, String> paramMap) {
+        if (!Boolean.parseBoolean(paramMap.getOrDefault(FINGERPRINT_ENABLED_PARAM, Boolean.FALSE.toString()))) {
+            return null;
+        }
+        final Path path = getStorePath(dataConfig, paramMap, "fingerprint.dat");
+        if (path == null) {
+            logger.warn("parameter \"" + STORE_DIRECTORY_PARAM + "\" is required for \"" + FINGERPRINT_ENABLED_PARAM + "\"");
+            return null;
+        }
+        return new FingerprintStore(path);
+    }
+
+    protected SegmentUpdater createSegmentUpdater(final Map<String, String> paramMap, final FingerprintStore fingerprintStore) {
+        if (fingerprintStore == null) {
+            return null;
+        }
+        return new SegmentUpdater(Integer.parseInt(paramMap.getOrDefault(FINGERPRINT_BATCH_SIZE_PARAM, "100")));
+    }
+
+    // null when the whole document is referenced, otherwise keys such as "title" or "<nested>.<key>"
+    protected Set<String> getScriptReferences(final Map<String, String> scriptMap, final Pattern pattern, final String nested) {
+        final Set<String> references = new HashSet<>();
+        for (final String script : scriptMap.values()) {
+            if (script == null) {
+                continue;
+            }
+            final Matcher matcher = pattern.matcher(script);
+            while (matcher.find()) {
+                final String name = matcher.group(1);
+                if (name == null) {
+                    return null;
+                }
+                references.add(nested.equals(name) && matcher.group(2) != null ? name + "." + matcher.group(2) : name);
+            }
+        }
+        return references;
+    }
+
+    protected abstract Set<String> getScriptReferences(Map<String, String> scriptMap);
+
+    protected Date parseDate(final String value) {
+        try {
+            final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return format.parse(value);
+        } catch (final ParseException e) {
+            logger.warn("Fail to parse: " + value, e);
+        }
+        return null;
+    }
+
+    protected int getMetadataCacheMaxSize(final Map<String, String> paramMap) {
+        return Integer.parseInt(paramMap.getOrDefault(METADATA_CACHE_MAX_SIZE_PARAM, Integer.toString(MetadataCache.DEFAULT_MAX_SIZE)));
+    }
+
+    protected long getMetadataCacheTtl(final Map<String, String> paramMap) {
+        return Long.parseLong(paramMap.getOrDefault(METADATA_CACHE_TTL_PARAM, Long.toString(MetadataCache.DEFAULT_TTL)));
+    }
+
+    protected String[] getResponsePaths(final Map<String, String> paramMap, final String[] paths) {
+        // null disables the filter, so the whole response is parsed
+        if (!Boolean.parseBoolean(paramMap.getOrDefault(RESPONSE_FILTER_ENABLED_PARAM, Boolean.FALSE.toString()))) {
+            return null;
+        }
+        return paths;
+    }
+
+    protected CommentBuffer newCommentBuffer(final Map<String, String> paramMap) {
+        return new CommentBuffer(Integer.parseInt(paramMap.getOrDefault(COMMENT_MAX_COUNT_PARAM, "0")),
+                Integer.parseInt(paramMap.getOrDefault(COMMENT_MAX_CHARS_PARAM, "0")));
+    }
+
+    protected void onCommentsRead(final CrawlContext context, final String id, final CommentBuffer buffer) {
+        final DocumentProcessedEvent event = documentEvent.get();
+        if (event != null) {
+            event.commentCount = buffer.getCount();
+        }
+        if (buffer.isTruncated()) {
+            context.incrementTruncatedCommentCount();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Truncated comments of " + id + " at " + buffer.getCount() + " comments.");
+            }
+        }
+    }
+
+    protected BatchingIndexUpdateCallback createBatchingCallback(final IndexUpdateCallback callback, final Map<String, String> paramMap) {
+        final int batchSize = Integer.parseInt(paramMap.getOrDefault(BATCH_SIZE_PARAM, "1"));
+        if (batchSize <= 1) {
+            return null;
+        }
+        final long maxBytes = Long.parseLong(paramMap.getOrDefault(BATCH_MAX_BYTES_PARAM, Long.toString(DEFAULT_BATCH_MAX_BYTES)));
+        final long maxDelay = Long.parseLong(paramMap.getOrDefault(BATCH_MAX_DELAY_PARAM, Long.toString(DEFAULT_BATCH_MAX_DELAY)));
+        return new BatchingIndexUpdateCallback(callback, batchSize, maxBytes, maxDelay);
+    }
+
+    // the page grows up to page_size.max, and a smaller limit applied by the server is learned from the responses
+    protected AdaptivePageSize createPageSize(final String endpoint, final Map<String, String> paramMap, final int initial) {
+        final int max = Integer.parseInt(paramMap.getOrDefault(PAGE_SIZE_MAX_PARAM, Integer.toString(initial * DEFAULT_PAGE_SIZE_GROWTH)));
+        final int min =
+                Integer.parseInt(paramMap.getOrDefault(PAGE_SIZE_MIN_PARAM, Integer.toString(Math.min(DEFAULT_PAGE_SIZE_MIN, max))));
+        final long targetTime =
+                Long.parseLong(paramMap.getOrDefault(PAGE_SIZE_TARGET_TIME_PARAM, Long.toString(DEFAULT_PAGE_SIZE_TARGET_TIME)));
+        final long targetBytes =
+                Long.parseLong(paramMap.getOrDefault(PAGE_SIZE_TARGET_BYTES_PARAM, Long.toString(DEFAULT_PAGE_SIZE_TARGET_BYTES)));
+        return new AdaptivePageSize(endpoint, initial, min, max, targetTime, targetBytes);
+    }
+
+    // requests a page with the current size, again with a smaller one while the server is overloaded by it
+    protected <T> T getPage(final AtlassianClient client, final AdaptivePageSize pageSize, final IntFunction<T> request) {
+        while (true) {
+            final int size = pageSize.get();
+            final long startTime = System.currentTimeMillis();
+            final long startBytes = client.getDecodedBytes();
+            try {
+                final T page = request.apply(size);
+                pageSize.succeeded(System.currentTimeMillis() - startTime, client.getDecodedBytes() - startBytes);
+                return page;
+            } catch (final RuntimeException e) {
+                if (!pageSize.failed(e)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    protected CrawlMetrics createCrawlMetrics(final DataConfig dataConfig, final Map<String, String> paramMap) {
+        if (!Boolean.parseBoolean(paramMap.getOrDefault(METRICS_ENABLED_PARAM, Boolean.TRUE.toString()))) {
+            return null;
+        }
+        final CrawlMetrics metrics = new CrawlMetrics();
+        metrics.register(getName() + "_" + (dataConfig.getId() != null ? dataConfig.getId() : "default"));
+        return metrics;
+    }
+
+    // maxTasks is the number of tasks of a page, which bounds the concurrency of virtual threads
+    protected MemoryGovernor createMemoryGovernor(final Map<String, String> paramMap, final int maxTasks) {
+        final String highWater = paramMap.getOrDefault(MEMORY_HIGH_WATER_PARAM, StringUtil.EMPTY);
+        if (highWater.isEmpty()) {
+            return null;
+        }
+        final double high = Double.parseDouble(highWater);
+        final double low = Double.parseDouble(paramMap.getOrDefault(MEMORY_LOW_WATER_PARAM, Double.toString(high - 0.1d)));
+        final long maxPause = Long.parseLong(paramMap.getOrDefault(MEMORY_MAX_PAUSE_PARAM, Long.toString(DEFAULT_MEMORY_MAX_PAUSE)));
+        // number_of_threads also bounds the virtual threads, which would otherwise run a whole page at once
+        final int maxConcurrency = Math.min(maxTasks, getNumberOfThreads(paramMap));
+        return new MemoryGovernor(high, low, maxPause, maxConcurrency).start();
+    }
+
+    // 0 keeps the responses and the texts to extract in memory
+    protected long getSpillThreshold(final Map<String, String> paramMap) {
+        return Long.parseLong(paramMap.getOrDefault(SPILL_THRESHOLD_PARAM, "0"));
+    }
+
+    protected Path getSpillDirectory(final Map<String, String> paramMap) {
+        final String directory = paramMap.getOrDefault(SPILL_DIRECTORY_PARAM, StringUtil.EMPTY);
+        return directory.isEmpty() ? null : Paths.get(directory);
+    }
+
+    protected HttpTransport createHttpTransport(final Map<String, String> paramMap) {
+        if (!Boolean.parseBoolean(paramMap.getOrDefault(HTTP2_ENABLED_PARAM, Boolean.FALSE.toString()))) {
+            return null;
+        }
+        return new JdkHttpTransport();
+    }
+
+    protected ResponseCache createResponseCache(final DataConfig dataConfig, final Map<String, String> paramMap) {
+        if (!Boolean.parseBoolean(paramMap.getOrDefault(RESPONSE_CACHE_ENABLED_PARAM, Boolean.FALSE.toString()))) {
+            return null;
+        }
+        final Path path = getStorePath(dataConfig, paramMap, "responses");
+        if (path == null) {
+            logger.warn("parameter \"" + STORE_DIRECTORY_PARAM + "\" is required for \"" + RESPONSE_CACHE_ENABLED_PARAM + "\"");
+            return null;
+        }
+        final long maxSize =
+                Long.parseLong(paramMap.getOrDefault(RESPONSE_CACHE_MAX_SIZE_PARAM, Long.toString(DEFAULT_RESPONSE_CACHE_MAX_SIZE)));
+        final long maxEntrySize = Long.parseLong(
+                paramMap.getOrDefault(RESPONSE_CACHE_MAX_ENTRY_SIZE_PARAM, Long.toString(DEFAULT_RESPONSE_CACHE_MAX_ENTRY_SIZE)));
+        final Pattern pathPattern =
+                Pattern.compile(paramMap.getOrDefault(RESPONSE_CACHE_PATH_PATTERN_PARAM, ResponseCache.DEFAULT_PATH_PATTERN));
+        return new ResponseCache(path, maxSize, maxEntrySize, pathPattern);
+    }
+
+    protected ExtractedTextCache createExtractedTextCache(final DataConfig dataConfig, final Map<String, String> paramMap) {
+        if (!Boolean.parseBoolean(paramMap.getOrDefault(TEXT_CACHE_ENABLED_PARAM, Boolean.FALSE.toString()))) {
+            return null;
+        }
+        final Path path = getStorePath(dataConfig, paramMap, "text.cache");
+        if (path == null) {
+            logger.warn("parameter \"" + STORE_DIRECTORY_PARAM + "\" is required for \"" + TEXT_CACHE_ENABLED_PARAM + "\"");
+            return null;
+        }
+        final long maxSize = Long.parseLong(paramMap.getOrDefault(TEXT_CACHE_MAX_SIZE_PARAM, Long.toString(DEFAULT_TEXT_CACHE_MAX_SIZE)));
+        return new ExtractedTextCache(path, maxSize);
+    }
+
+    protected Path getStorePath(final DataConfig dataConfig, final Map<String, String> paramMap, final String suffix) {
+        final String directory = paramMap.getOrDefault(STORE_DIRECTORY_PARAM, StringUtil.EMPTY);
+        if (directory.isEmpty()) {
+            return null;
+        }
+        return Paths.get(directory, getName().toLowerCase(Locale.ROOT) + "_" + getConfigId(dataConfig) + "_" + suffix);
+    }
+
+    protected String getConfigId(final DataConfig dataConfig) {
+        return dataConfig.getId() != null ? dataConfig.getId() : "default";
+    }
+
+    protected String getHome(final Map<String, String> paramMap) {
+        if (paramMap.containsKey(HOME_PARAM)) {
+            return paramMap.get(HOME_PARAM);
+        }
+        return StringUtil.EMPTY;
+    }
+
+    protected String getUserName(final Map<String, String> paramMap) {
+        if (paramMap.containsKey(USERNAME_PARAM)) {
+            return paramMap.get(USERNAME_PARAM);
+        }
+        return StringUtil.EMPTY;
+    }
+
+    protected String getPassword(final Map<String, String> paramMap) {
+        if (paramMap.containsKey(PASSWORD_PARAM)) {
+            return paramMap.get(PASSWORD_PARAM);
+        }
+        return StringUtil.EMPTY;
+    }
+
+    protected String getConsumerKey(final Map<String, String> paramMap) {
+        if (paramMap.containsKey(CONSUMER_KEY_PARAM)) {
+            return paramMap.get(CONSUMER_KEY_PARAM);
+        }
+        return StringUtil.EMPTY;
+    }
+
+    protected String getPrivateKey(final Map<String, String> paramMap) {
+        if (paramMap.containsKey(PRIVATE_KEY_PARAM)) {
+            return paramMap.get(PRIVATE_KEY_PARAM);
+        }
+        return StringUtil.EMPTY;
+    }
+
+    protected String getSecret(final Map<String, String> paramMap) {
+        if (paramMap.containsKey(SECRET_PARAM)) {
+            return paramMap.get(SECRET_PARAM);
+        }
+        return StringUtil.EMPTY;
+    }
+
+    protected String getAccessToken(final Map<String, String> paramMap) {
+        if (paramMap.containsKey(ACCESS_TOKEN_PARAM)) {
+            return paramMap.get(ACCESS_TOKEN_PARAM);
+        }
+        return StringUtil.EMPTY;
+    }
+
+    protected ExecutorService newExecutorService(final Map<String, String> paramMap) {
+        if (Boolean.parseBoolean(paramMap.getOrDefault(VIRTUAL_THREADS_ENABLED_PARAM, Boolean.FALSE.toString()))) {
+            try {
+                // Executors.newVirtualThreadPerTaskExecutor() is available since Java 21
+                final ExecutorService executorService =
+                        (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Executor: virtual thread per task");
+                }
+                return executorService;
+            } catch (final ReflectiveOperationException e) {
+                logger.warn("Virtual threads are not supported on Java " + System.getProperty("java.version") + ", use "
+                        + NUMBER_OF_THREADS + " platform threads.");
+            }
+        }
+        return newFixedThreadPool(getNumberOfThreads(paramMap));
+    }
+
+    protected int getNumberOfThreads(final Map<String, String> paramMap) {
+        return Integer.parseInt(paramMap.getOrDefault(NUMBER_OF_THREADS, "1"));
+    }
+
+    // waits for all of the tasks, so that the checkpoint does not pass an unfinished one
+    protected void runTasks(final ExecutorService executorService, final List<Runnable> tasks) {
+        final List<Future<?>> futures = new ArrayList<>(tasks.size());
+        for (final Runnable task : tasks) {
+            futures.add(executorService.submit(task));
+        }
+        RuntimeException failure = null;
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new AtlassianDataStoreException("Interrupted.", e);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                } else if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                            : new AtlassianDataStoreException(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    protected void shutdown(final ExecutorService executorService) {
+        try {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Shutting down thread executor.");
+            }
+            executorService.shutdown();
+            executorService.awaitTermination(60, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Interrupted.", e);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    protected ExecutorService newFixedThreadPool(final int nThreads) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Executor Thread Pool: " + nThreads);
+        }
+        return new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(nThreads),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+}
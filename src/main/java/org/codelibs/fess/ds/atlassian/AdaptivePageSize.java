@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian;
+
+import java.net.SocketTimeoutException;
+
+import com.google.api.client.http.HttpResponseException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// grows the page size of a listing while its responses stay under the targets, and halves it on timeouts, 413 and 5xx
+public class AdaptivePageSize {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptivePageSize.class);
+
+    protected final String endpoint;
+    protected int min;
+    protected int max;
+    protected final long targetTime;
+    protected final long targetBytes;
+    protected int size;
+    protected int requested;
+    protected int largest;
+    protected int shrinkCount = 0;
+
+    public AdaptivePageSize(final String endpoint, final int initial, final int min, final int max, final long targetTime,
+            final long targetBytes) {
+        this.endpoint = endpoint;
+        this.min = Math.max(1, Math.min(min, max));
+        this.max = Math.max(this.min, max);
+        this.targetTime = targetTime;
+        this.targetBytes = targetBytes;
+        this.size = Math.max(this.min, Math.min(initial, this.max));
+        this.requested = size;
+        this.largest = size;
+    }
+
+    public int get() {
+        requested = size;
+        return size;
+    }
+
+    public int getRequested() {
+        return requested;
+    }
+
+    // the page size applied by the server caps this listing, so that the page does not grow beyond it
+    public void served(final Integer limit) {
+        if (limit == null || limit <= 0 || limit >= requested) {
+            return;
+        }
+        logger.info("Page size of " + endpoint + " is limited to " + limit + " by the server (requested: " + requested + ")");
+        max = limit;
+        min = Math.min(min, max);
+        size = Math.min(size, max);
+    }
+
+    public void succeeded(final long time, final long bytes) {
+        if (size >= max || time > targetTime || bytes > targetBytes) {
+            return;
+        }
+        final int previous = size;
+        size = Math.min(max, size + Math.max(1, size / 4));
+        largest = Math.max(largest, size);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Page size of " + endpoint + ": " + previous + " -> " + size + " (" + time + "ms, " + bytes + " bytes)");
+        }
+    }
+
+    // returns true if the page should be requested again with the smaller size
+    public boolean failed(final Throwable t) {
+        if (size <= min || !isOverloaded(t)) {
+            return false;
+        }
+        final int previous = size;
+        size = Math.max(min, size / 2);
+        shrinkCount++;
+        logger.warn("Page size of " + endpoint + ": " + previous + " -> " + size + " by " + t.getMessage());
+        return true;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getShrinkCount() {
+        return shrinkCount;
+    }
+
+    @Override
+    public String toString() {
+        return endpoint + ": " + size + " (largest: " + largest + ", halved: " + shrinkCount + " times, range: " + min + "-" + max + ")";
+    }
+
+    protected boolean isOverloaded(final Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException) {
+                return true;
+            }
+            if (cause instanceof HttpResponseException) {
+                final int statusCode = ((HttpResponseException) cause).getStatusCode();
+                return statusCode == 413 || statusCode >= 500;
+            }
+        }
+        return false;
+    }
+
+}
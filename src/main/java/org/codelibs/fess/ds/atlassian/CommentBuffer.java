@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian;
+
+// joins comments until a count or character budget is spent, <= 0 means no limit
+public class CommentBuffer {
+
+    protected static final String SEPARATOR = "\n\n";
+    protected static final int MAX_INITIAL_CAPACITY = 64 * 1024;
+
+    protected final int maxCount;
+    protected final int maxChars;
+    protected final StringBuilder buffer;
+    protected int count = 0;
+    protected boolean truncated = false;
+
+    public CommentBuffer(final int maxCount, final int maxChars) {
+        this.maxCount = maxCount;
+        this.maxChars = maxChars;
+        buffer = new StringBuilder(maxChars > 0 ? Math.min(maxChars, MAX_INITIAL_CAPACITY) : 1024);
+    }
+
+    // false when the comment did not fit, so that no more pages are requested
+    public boolean append(final Object comment) {
+        if (truncated || (maxCount > 0 && count >= maxCount) || (maxChars > 0 && buffer.length() >= maxChars)) {
+            truncated = true;
+            return false;
+        }
+        final String text = String.valueOf(comment);
+        count++;
+        if (maxChars > 0 && buffer.length() + SEPARATOR.length() + text.length() > maxChars) {
+            buffer.append(SEPARATOR, 0, Math.min(SEPARATOR.length(), maxChars - buffer.length()));
+            buffer.append(text, 0, Math.max(0, maxChars - buffer.length()));
+            truncated = true;
+            return false;
+        }
+        buffer.append(SEPARATOR).append(text);
+        return true;
+    }
+
+    // one more than the remaining count, which tells whether any comment was left out
+    public int getPageSize(final int pageSize) {
+        return maxCount > 0 ? Math.max(1, Math.min(pageSize, maxCount - count + 1)) : pageSize;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+
+}
@@ -16,46 +16,53 @@
 package org.codelibs.fess.ds.atlassian;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.TimeZone;
-
-import com.google.api.client.http.apache.ApacheHttpTransport;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 
 import org.codelibs.core.lang.StringUtil;
 import org.codelibs.fess.crawler.exception.CrawlingAccessException;
 import org.codelibs.fess.crawler.extractor.Extractor;
 import org.codelibs.fess.crawler.extractor.impl.HtmlExtractor;
-import org.codelibs.fess.ds.AbstractDataStore;
-import org.codelibs.fess.ds.atlassian.api.AtlassianClient;
-import org.codelibs.fess.ds.atlassian.api.AtlassianClientBuilder;
+import org.codelibs.fess.ds.atlassian.api.ResponseCache;
 import org.codelibs.fess.ds.atlassian.api.confluence.ConfluenceClient;
+import org.codelibs.fess.ds.atlassian.api.confluence.content.GetContentsRequest;
+import org.codelibs.fess.ds.atlassian.api.confluence.content.GetContentsResponse;
+import org.codelibs.fess.ds.atlassian.callback.BatchingIndexUpdateCallback;
+import org.codelibs.fess.ds.atlassian.callback.SegmentUpdater;
+import org.codelibs.fess.ds.atlassian.jfr.DocumentProcessedEvent;
+import org.codelibs.fess.ds.atlassian.metrics.CrawlMetrics;
+import org.codelibs.fess.ds.atlassian.store.CrawlCheckpoint;
+import org.codelibs.fess.ds.atlassian.store.ExtractedTextCache;
+import org.codelibs.fess.ds.atlassian.store.FingerprintStore;
+import org.codelibs.fess.ds.atlassian.store.SeenIdSet;
+import org.codelibs.fess.ds.atlassian.store.SpillBuffer;
+import org.codelibs.fess.ds.atlassian.webhook.WebhookEvent;
+import org.codelibs.fess.ds.atlassian.webhook.WebhookReceiver;
 import org.codelibs.fess.ds.callback.IndexUpdateCallback;
 import org.codelibs.fess.es.config.exentity.DataConfig;
-import org.codelibs.fess.mylasta.direction.FessConfig;
 import org.codelibs.fess.util.ComponentUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class ConfluenceDataStore extends AbstractDataStore {
+public class ConfluenceDataStore extends AbstractAtlassianDataStore {
     private static final Logger logger = LoggerFactory.getLogger(JiraDataStore.class);
 
     // parameters
-    protected static final String HOME_PARAM = "home";
-
-    protected static final String CONSUMER_KEY_PARAM = "oauth.consumer_key";
-    protected static final String PRIVATE_KEY_PARAM = "oauth.private_key";
-    protected static final String SECRET_PARAM = "oauth.secret";
-    protected static final String ACCESS_TOKEN_PARAM = "oauth.access_token";
-
-    protected static final String USERNAME_PARAM = "basicauth.username";
-    protected static final String PASSWORD_PARAM = "basicauth.password";
+    protected static final String EXPAND_PARAM = "content.expand";
 
     // scripts
     protected static final String CONTENT = "content";
@@ -64,114 +71,302 @@ public class ConfluenceDataStore extends AbstractDataStore {
     protected static final String CONTENT_COMMENTS = "comments";
     protected static final String CONTENT_LAST_MODIFIED = "last_modified";
     protected static final String CONTENT_VIEW_URL = "view_url";
+    protected static final String CONTENT_RAW = "raw";
+    protected static final String CONTENT_SPACE_NAME = "space_name";
+    protected static final String CONTENT_SPACE_TYPE = "space_type";
+
+    // checkpoint partitions
+    protected static final String PAGE = "page";
+    protected static final String BLOGPOST = "blogpost";
 
     protected static final int CONTENT_LIMIT = 25;
 
-    protected Extractor extractor;
+    // "space" and "version" are always needed for view_url, last_modified and the local stores
+    protected static final String[] REQUIRED_CONTENT_EXPAND = { "space", "version" };
+    protected static final String BODY_EXPAND = "body.view";
+
+    // values read from the responses when response_filter.enabled is true
+    protected static final String[] CONTENT_PATHS = { "id", "type", "title", "space.key", "version.number", "version.when" };
+    protected static final String BODY_PATH = "body.view.value";
+    protected static final Set<String> BASE_CONTENT_KEYS =
+            new HashSet<>(Arrays.asList("id", "type", "status", "title", "_links", "_expandable"));
+    protected static final String[] COMMENT_PATHS = { "id", "version.number", "body.view.value" };
+
+    protected static final Pattern SCRIPT_REFERENCE_PATTERN = getScriptReferencePattern(CONTENT);
 
     protected String getName() {
         return "Confluence";
     }
 
     @Override
-    protected void storeData(final DataConfig dataConfig, final IndexUpdateCallback callback, final Map<String, String> paramMap,
-            final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap) {
-        final FessConfig fessConfig = ComponentUtil.getFessConfig();
-
-        final String confluenceHome = getConfluenceHome(paramMap);
-
-        final String userName = getUserName(paramMap);
-        final String password = getPassword(paramMap);
-
-        final String consumerKey = getConsumerKey(paramMap);
-        final String privateKey = getPrivateKey(paramMap);
-        final String verifier = getSecret(paramMap);
-        final String temporaryToken = getAccessToken(paramMap);
+    protected CrawlContext newCrawlContext(final DataConfig dataConfig, final IndexUpdateCallback callback,
+            final Map<String, String> paramMap, final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap) {
+        final CrawlContext context = super.newCrawlContext(dataConfig, callback, paramMap, scriptMap, defaultDataMap);
+        context.setExtractor(new HtmlExtractor());
+        context.setSpill(getSpillThreshold(paramMap), getSpillDirectory(paramMap));
+        return context;
+    }
 
-        final long readInterval = getReadInterval(paramMap);
+    @Override
+    protected void storeData(final DataConfig dataConfig, final IndexUpdateCallback callback, final Map<String, String> paramMap,
+            final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap, final AtomicBoolean cancelled) {
+        final String confluenceHome = getHome(paramMap);
 
-        boolean basic = false;
-        if (confluenceHome.isEmpty()) {
-            logger.warn("parameter \"" + HOME_PARAM + "\" is required");
-            return;
-        } else if (!userName.isEmpty() && !password.isEmpty()) {
-            basic = true;
-        } else if (consumerKey.isEmpty() || privateKey.isEmpty() || verifier.isEmpty() || temporaryToken.isEmpty()) {
-            logger.warn("parameter \"" + USERNAME_PARAM + "\" and \"" + PASSWORD_PARAM + "\" or \"" + CONSUMER_KEY_PARAM + "\", \""
-                    + PRIVATE_KEY_PARAM + "\", \"" + SECRET_PARAM + "\" and \"" + ACCESS_TOKEN_PARAM + "\" are required");
+        if (!validateParams(paramMap)) {
             return;
         }
 
-        final ConfluenceClient client =
-                basic ? new ConfluenceClient(AtlassianClient.builder().basicAuth(confluenceHome, userName, password).build())
-                        : new ConfluenceClient(AtlassianClient.builder().oAuthToken(confluenceHome, accessToken -> {
-                            accessToken.consumerKey = consumerKey;
-                            accessToken.signer = AtlassianClientBuilder.getOAuthRsaSigner(privateKey);
-                            accessToken.transport = new ApacheHttpTransport();
-                            accessToken.verifier = verifier;
-                            accessToken.temporaryToken = temporaryToken;
-                        }).build());
-
-        extractor = new HtmlExtractor();
-
-        for (int start = 0;; start += CONTENT_LIMIT) {
-            // get contents
-            final List<Map<String, Object>> contents =
-                    client.getContents().start(start).limit(CONTENT_LIMIT).expand("space", "version", "body.view").execute().getContents();
-
-            // store contents
-            for (final Map<String, Object> content : contents) {
-                processContent(dataConfig, callback, paramMap, scriptMap, defaultDataMap, fessConfig, client, readInterval, confluenceHome,
-                        content);
+        final CrawlMetrics crawlMetrics = createCrawlMetrics(dataConfig, paramMap);
+        // the resources are closed in reverse order even if one of them fails, so the batch is flushed before the stores
+        try (ResponseCache responseCache = createResponseCache(dataConfig, paramMap)) {
+            final ConfluenceClient client =
+                    new ConfluenceClient(createClient(paramMap, newClientBuilder(paramMap, responseCache, crawlMetrics)));
+            client.metadataCache(getMetadataCacheMaxSize(paramMap), getMetadataCacheTtl(paramMap));
+
+            try (ExtractedTextCache textCache = createExtractedTextCache(dataConfig, paramMap);
+                    FingerprintStore fingerprintStore = createFingerprintStore(dataConfig, paramMap);
+                    SegmentUpdater segmentUpdater = createSegmentUpdater(paramMap, fingerprintStore);
+                    SeenIdSet seenIdSet = createSeenIdSet(dataConfig, paramMap, confluenceHome);
+                    BatchingIndexUpdateCallback batchCallback = createBatchingCallback(callback, paramMap)) {
+                final CrawlContext context =
+                        newCrawlContext(dataConfig, batchCallback != null ? batchCallback : callback, paramMap, scriptMap, defaultDataMap);
+                context.setMetrics(crawlMetrics);
+                context.setTextCache(textCache);
+                context.setFingerprintStore(fingerprintStore);
+                context.setSegmentUpdater(segmentUpdater);
+                context.setSeenIdSet(seenIdSet);
+                context.setCancelled(cancelled);
+                try (WebhookReceiver webhookReceiver =
+                        startWebhook(paramMap, () -> createWebhookHandler(context, client, confluenceHome))) {
+                    storeContents(context, client, batchCallback, confluenceHome);
+                }
             }
+        } finally {
+            finish(crawlMetrics);
+        }
+    }
 
-            if (contents.size() < CONTENT_LIMIT)
-                break;
+    protected void storeContents(final CrawlContext context, final ConfluenceClient client, final BatchingIndexUpdateCallback batchCallback,
+            final String confluenceHome) {
+        final Map<String, String> paramMap = context.getParamMap();
+        final SeenIdSet seenIdSet = context.getSeenIdSet();
+        final CrawlCheckpoint checkpoint = createCrawlCheckpoint(context.getDataConfig(), paramMap, confluenceHome);
+        final String[] expand = getContentExpand(paramMap, context.getScriptMap());
+        final String[] contentPaths = getResponsePaths(paramMap, getContentPaths(expand));
+        if (logger.isDebugEnabled()) {
+            logger.debug("Content expand: " + String.join(",", expand));
+        }
+        if (checkpoint != null && checkpoint.isResumed()) {
+            logger.info("Resume crawling from " + checkpoint.getPartition() + " at " + checkpoint.getOffset() + " (last id: "
+                    + checkpoint.getLastId() + ")");
         }
+        final ExecutorService executorService = newExecutorService(paramMap);
+        final MemoryGovernor memoryGovernor = createMemoryGovernor(paramMap, CONTENT_LIMIT);
+        final AdaptivePageSize pagePageSize = createPageSize("content (page)", paramMap, CONTENT_LIMIT);
+        final AdaptivePageSize blogPageSize = createPageSize("content (blogpost)", paramMap, CONTENT_LIMIT);
+        try {
+            final boolean skipPages = checkpoint != null && checkpoint.isResumed() && BLOGPOST.equals(checkpoint.getPartition());
+            for (int start = checkpoint != null ? getResumeOffset(client, checkpoint, PAGE) : 0; !skipPages && isRunning(context);) {
+                if (memoryGovernor != null) {
+                    memoryGovernor.awaitPage();
+                }
+                // get contents
+                final int offset = start;
+                final GetContentsResponse response = getPage(client.client(), pagePageSize,
+                        limit -> client.getContents().start(offset).limit(limit).expand(expand).filter(contentPaths).execute());
+                final List<Map<String, Object>> contents = response.getContents();
+                final boolean last = response.isLast(pagePageSize.getRequested());
+                pagePageSize.served(response.getLimit());
+
+                // store contents
+                final List<Runnable> tasks = new ArrayList<>(contents.size());
+                for (final Map<String, Object> content : contents) {
+                    final Runnable task = () -> processContent(context, client, confluenceHome, content);
+                    tasks.add(memoryGovernor != null ? memoryGovernor.limit(task) : task);
+                }
+                runTasks(executorService, tasks);
+                if (!isRunning(context)) {
+                    // the checkpoint must not pass the contents skipped by the stop
+                    break;
+                }
+                if (batchCallback != null && checkpoint != null) {
+                    // the checkpoint must not pass documents which are not stored yet
+                    batchCallback.flush();
+                }
+
+                if (last) {
+                    if (checkpoint != null) {
+                        checkpoint.update(BLOGPOST, 0, null);
+                    }
+                    break;
+                }
+                if (checkpoint != null) {
+                    checkpoint.update(PAGE, start + contents.size(), (String) contents.get(contents.size() - 1).get("id"));
+                }
+                start += contents.size();
+            }
 
-        for (int start = 0;; start += CONTENT_LIMIT) {
-            // get blog contents
-            final List<Map<String, Object>> blogContents = client.getContents().start(start).limit(CONTENT_LIMIT).type("blogpost")
-                    .expand("space", "version", "body.view").execute().getContents();
+            for (int start = checkpoint != null ? getResumeOffset(client, checkpoint, BLOGPOST) : 0; isRunning(context);) {
+                if (memoryGovernor != null) {
+                    memoryGovernor.awaitPage();
+                }
+                // get blog contents
+                final int offset = start;
+                final GetContentsResponse response = getPage(client.client(), blogPageSize, limit -> client.getContents().start(offset)
+                        .limit(limit).type("blogpost").expand(expand).filter(contentPaths).execute());
+                final List<Map<String, Object>> blogContents = response.getContents();
+                final boolean last = response.isLast(blogPageSize.getRequested());
+                blogPageSize.served(response.getLimit());
+
+                // store blog contents
+                final List<Runnable> tasks = new ArrayList<>(blogContents.size());
+                for (final Map<String, Object> content : blogContents) {
+                    final Runnable task = () -> processContent(context, client, confluenceHome, content);
+                    tasks.add(memoryGovernor != null ? memoryGovernor.limit(task) : task);
+                }
+                runTasks(executorService, tasks);
+                if (!isRunning(context)) {
+                    // the checkpoint must not pass the contents skipped by the stop
+                    break;
+                }
+                if (batchCallback != null && checkpoint != null) {
+                    // the checkpoint must not pass documents which are not stored yet
+                    batchCallback.flush();
+                }
 
-            // store blog contents
-            for (final Map<String, Object> content : blogContents) {
-                processContent(dataConfig, callback, paramMap, scriptMap, defaultDataMap, fessConfig, client, readInterval, confluenceHome,
-                        content);
+                if (checkpoint != null && !blogContents.isEmpty()) {
+                    checkpoint.update(BLOGPOST, start + blogContents.size(),
+                            (String) blogContents.get(blogContents.size() - 1).get("id"));
+                }
+
+                if (last)
+                    break;
+                start += blogContents.size();
             }
 
-            if (blogContents.size() < CONTENT_LIMIT)
-                break;
+            if (isRunning(context)) {
+                if (seenIdSet != null) {
+                    if (checkpoint != null && checkpoint.isResumed()) {
+                        // ids before the checkpoint were not seen in this run
+                        logger.info("Skip deletion detection for the resumed crawl.");
+                    } else {
+                        deleteRemovedDocuments(seenIdSet, context.getFingerprintStore());
+                    }
+                }
+                if (checkpoint != null) {
+                    checkpoint.clear();
+                }
+            }
+        } finally {
+            try {
+                shutdown(executorService);
+            } finally {
+                close(memoryGovernor);
+            }
+            logger.info("Page size of " + pagePageSize + ", " + blogPageSize);
+            logTruncatedComments(context);
         }
+    }
 
+    // contents added or removed before the checkpoint shift the offset, so it is used only while the last id is still there
+    protected int getResumeOffset(final ConfluenceClient client, final CrawlCheckpoint checkpoint, final String type) {
+        final int offset = checkpoint.getOffset(type);
+        if (offset == 0 || checkpoint.getLastId() == null) {
+            return offset;
+        }
+        final GetContentsRequest request = client.getContents().start(offset - 1).limit(1);
+        if (BLOGPOST.equals(type)) {
+            request.type(BLOGPOST);
+        }
+        final List<Map<String, Object>> contents = request.execute().getContents();
+        if (!contents.isEmpty() && checkpoint.getLastId().equals(contents.get(0).get("id"))) {
+            return offset;
+        }
+        logger.info("Restart crawling " + type + " because the contents before the checkpoint were changed.");
+        return 0;
     }
 
-    protected void processContent(final DataConfig dataConfig, final IndexUpdateCallback callback, final Map<String, String> paramMap,
-            final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap, final FessConfig fessConfig,
-            final ConfluenceClient client, final long readInterval, final String confluenceHome, final Map<String, Object> content) {
+    protected void processContent(final CrawlContext context, final ConfluenceClient client, final String confluenceHome,
+            final Map<String, Object> content) {
+        if (!isRunning(context)) {
+            return;
+        }
+        final SeenIdSet seenIdSet = context.getSeenIdSet();
         final Map<String, Object> dataMap = new HashMap<>();
-        dataMap.putAll(defaultDataMap);
-        final Map<String, Object> resultMap = new LinkedHashMap<>();
-        resultMap.putAll(paramMap);
+        dataMap.putAll(context.getDefaultDataMap());
+        final Map<String, Object> resultMap = new HashMap<>();
         final Map<String, Object> contentMap = new HashMap<>();
+        final long startTime = System.nanoTime();
+        final DocumentProcessedEvent event = new DocumentProcessedEvent();
+        final boolean recording = event.isEnabled();
+        if (recording) {
+            event.begin();
+            event.type = CONTENT;
+            event.id = (String) content.get("id");
+            documentEvent.set(event);
+        }
 
         try {
             contentMap.put(CONTENT_TITLE, getContentTitle(content));
-            contentMap.put(CONTENT_BODY, getContentBody(content));
-            contentMap.put(CONTENT_COMMENTS, getContentComments(content, client));
-            contentMap.put(CONTENT_LAST_MODIFIED, getContentLastModified(content));
+            if (context.isScriptReferenced(CONTENT_BODY)) {
+                contentMap.put(CONTENT_BODY, getContentBody(context, content));
+            }
+            if (context.isScriptReferenced(CONTENT_COMMENTS)) {
+                contentMap.put(CONTENT_COMMENTS, getContentComments(context, client, content));
+            }
+            final Date lastModified = getContentLastModified(content);
+            contentMap.put(CONTENT_LAST_MODIFIED, lastModified);
             contentMap.put(CONTENT_VIEW_URL, getContentViewUrl(content, confluenceHome));
+            contentMap.put(CONTENT_RAW, content);
+            if (context.isScriptReferenced(CONTENT_SPACE_NAME) || context.isScriptReferenced(CONTENT_SPACE_TYPE)) {
+                final Map<String, Object> space = getContentSpace(content, client);
+                contentMap.put(CONTENT_SPACE_NAME, space.getOrDefault("name", StringUtil.EMPTY));
+                contentMap.put(CONTENT_SPACE_TYPE, space.getOrDefault("type", StringUtil.EMPTY));
+            }
             resultMap.put(CONTENT, contentMap);
 
-            for (final Map.Entry<String, String> entry : scriptMap.entrySet()) {
-                final Object convertValue = convertValue(entry.getValue(), resultMap);
-                if (convertValue != null) {
-                    dataMap.put(entry.getKey(), convertValue);
-                }
+            dataMap.putAll(context.getScripts().evaluate(context.getParamMap(), resultMap));
+            if (seenIdSet != null) {
+                seenIdSet.add(Long.parseLong((String) content.get("id")),
+                        (String) dataMap.get(ComponentUtil.getFessConfig().getIndexFieldUrl()));
+            }
+            final long storeTime = System.nanoTime();
+            storeIfChanged(context, dataMap, contentMap, (String) content.get("id"), lastModified);
+            if (recording) {
+                event.storeTime = System.nanoTime() - storeTime;
+            }
+            if (context.getMetrics() != null) {
+                context.getMetrics().onDocument(CONTENT, System.nanoTime() - startTime);
             }
-            callback.store(paramMap, dataMap);
         } catch (final CrawlingAccessException e) {
             logger.warn("Crawling Access Exception at : " + dataMap, e);
+            if (seenIdSet != null) {
+                // keep the indexed document, the failure is not a deletion
+                seenIdSet.add(Long.parseLong((String) content.get("id")), null);
+            }
+        } finally {
+            if (recording) {
+                documentEvent.remove();
+                event.end();
+                if (event.shouldCommit()) {
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> getContentSpace(final Map<String, Object> content, final ConfluenceClient client) {
+        final Map<String, Object> space = (Map<String, Object>) content.get("space");
+        final String spaceKey = space != null ? (String) space.get("key") : null;
+        if (spaceKey == null) {
+            return Collections.emptyMap();
+        }
+        try {
+            return client.getCachedSpace(spaceKey);
+        } catch (final AtlassianDataStoreException e) {
+            logger.warn("Failed to get the space: " + spaceKey, e);
+            return Collections.emptyMap();
         }
     }
 
@@ -180,53 +375,103 @@ public class ConfluenceDataStore extends AbstractDataStore {
     }
 
     @SuppressWarnings("unchecked")
-    protected String getContentBody(final Map<String, Object> content) {
+    protected String getContentBody(final CrawlContext context, final Map<String, Object> content) {
         final Map<String, Object> body = (Map<String, Object>) content.get("body");
         final Map<String, Object> view = (Map<String, Object>) body.get("view");
         final String value = (String) view.get("value");
-        return getExtractedText(value);
+        return getExtractedText(context, (String) content.get("id"), getContentVersionNumber(content), value);
     }
 
     @SuppressWarnings("unchecked")
-    protected String getContentComments(final Map<String, Object> content, final ConfluenceClient client) {
-        final StringBuilder sb = new StringBuilder();
+    protected String getContentComments(final CrawlContext context, final ConfluenceClient client, final Map<String, Object> content) {
+        final Map<String, String> paramMap = context.getParamMap();
+        final CommentBuffer buffer = newCommentBuffer(paramMap);
         final String id = (String) content.get("id");
 
-        for (int start = 0;; start += CONTENT_LIMIT) {
-            final List<Map<String, Object>> comments =
-                    client.getCommentsOfContent(id).start(start).limit(CONTENT_LIMIT).expand("body.view").execute().getComments();
+        for (int start = 0;;) {
+            final int limit = buffer.getPageSize(CONTENT_LIMIT);
+            final List<Map<String, Object>> comments = client.getCommentsOfContent(id).start(start).limit(limit)
+                    .expand("body.view", "version").filter(getResponsePaths(paramMap, COMMENT_PATHS)).execute().getComments();
 
             for (final Map<String, Object> comment : comments) {
                 final Map<String, Object> body = (Map<String, Object>) comment.get("body");
                 final Map<String, Object> view = (Map<String, Object>) body.get("view");
                 final String value = (String) view.get("value");
-                sb.append("\n\n");
-                sb.append(getExtractedText(value));
+                if (!buffer.append(getExtractedText(context, (String) comment.get("id"), getContentVersionNumber(comment), value))) {
+                    break;
+                }
             }
 
-            if (comments.size() < CONTENT_LIMIT)
+            if (buffer.isTruncated() || comments.size() < limit)
                 break;
+            start += comments.size();
         }
-        return sb.toString();
+        onCommentsRead(context, id, buffer);
+        return buffer.toString();
     }
 
-    protected String getExtractedText(final String text) {
-        final InputStream in = new ByteArrayInputStream(text.getBytes());
+    protected String getExtractedText(final CrawlContext context, final String id, final String version, final String text) {
+        final ExtractedTextCache textCache = context.getTextCache();
+        if (textCache == null) {
+            return getExtractedText(context, text);
+        }
+        final String cached = textCache.get(id, version);
+        if (cached != null) {
+            return cached;
+        }
+        final String extracted = getExtractedText(context, text);
+        textCache.put(id, version, extracted);
+        return extracted;
+    }
+
+    protected String getExtractedText(final CrawlContext context, final String text) {
+        final CrawlMetrics crawlMetrics = context.getMetrics();
+        final DocumentProcessedEvent event = documentEvent.get();
+        if (crawlMetrics == null && event == null) {
+            return extractText(context, text);
+        }
+        final long startTime = System.nanoTime();
+        try {
+            return extractText(context, text);
+        } finally {
+            final long elapsed = System.nanoTime() - startTime;
+            if (crawlMetrics != null) {
+                crawlMetrics.onExtraction(elapsed);
+            }
+            if (event != null) {
+                event.extractionTime += elapsed;
+            }
+        }
+    }
+
+    protected String extractText(final CrawlContext context, final String text) {
+        final Extractor extractor = context.getExtractor();
+        final long spillThreshold = context.getSpillThreshold();
+        if (spillThreshold > 0 && text.length() > spillThreshold) {
+            // a large body is extracted from a temp file instead of a byte array copy of it
+            try (SpillBuffer buffer = SpillBuffer.spool(text, StandardCharsets.UTF_8, spillThreshold, context.getSpillDirectory())) {
+                return extractor.getText(buffer.getInputStream(), null).getContent();
+            } catch (final IOException e) {
+                throw new AtlassianDataStoreException("Failed to spill the text of " + text.length() + " chars.", e);
+            }
+        }
+        final InputStream in = new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
         return extractor.getText(in, null).getContent();
     }
 
     @SuppressWarnings("unchecked")
-    protected Date getContentLastModified(final Map<String, Object> content) {
+    protected String getContentVersionNumber(final Map<String, Object> content) {
         final Map<String, Object> version = (Map<String, Object>) content.get("version");
-        final String when = (String) version.get("when");
-        try {
-            final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX");
-            format.setTimeZone(TimeZone.getTimeZone("UTC"));
-            return format.parse(when);
-        } catch (final ParseException e) {
-            logger.warn("Fail to parse: " + when, e);
+        if (version == null || version.get("number") == null) {
+            return null;
         }
-        return null;
+        return version.get("number").toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    protected Date getContentLastModified(final Map<String, Object> content) {
+        final Map<String, Object> version = (Map<String, Object>) content.get("version");
+        return parseDate((String) version.get("when"));
     }
 
     protected String getContentViewUrl(final Map<String, Object> content, final String confluenceHome) {
@@ -238,53 +483,78 @@ public class ConfluenceDataStore extends AbstractDataStore {
         return confluenceHome + "/spaces/" + spaceKey + "/" + (type.equals("blogpost") ? "blog" : "page") + "/" + id;
     }
 
-    protected String getConfluenceHome(Map<String, String> paramMap) {
-        if (paramMap.containsKey(HOME_PARAM)) {
-            return paramMap.get(HOME_PARAM);
-        }
-        return StringUtil.EMPTY;
-    }
+    protected WebhookReceiver.Handler createWebhookHandler(final CrawlContext context, final ConfluenceClient client,
+            final String confluenceHome) {
+        final Map<String, String> paramMap = context.getParamMap();
+        final Map<String, String> scriptMap = context.getScriptMap();
+        final String[] expand = getContentExpand(paramMap, scriptMap);
+        return new WebhookReceiver.Handler() {
+            @Override
+            public void update(final List<WebhookEvent> events) {
+                for (final WebhookEvent event : events) {
+                    try {
+                        final Map<String, Object> content = client.getContent(event.getId()).expand(expand)
+                                .filter(getResponsePaths(paramMap, getContentPaths(expand))).execute().getContent();
+                        processContent(context, client, confluenceHome, content);
+                    } catch (final AtlassianDataStoreException e) {
+                        logger.warn("Failed to refresh the content: " + event.getId(), e);
+                    }
+                }
+            }
 
-    protected String getUserName(Map<String, String> paramMap) {
-        if (paramMap.containsKey(USERNAME_PARAM)) {
-            return paramMap.get(USERNAME_PARAM);
-        }
-        return StringUtil.EMPTY;
+            @Override
+            public void delete(final List<WebhookEvent> events) {
+                for (final WebhookEvent event : events) {
+                    final Map<String, Object> space = new HashMap<>();
+                    space.put("key", event.getEntity().get("spaceKey"));
+                    final Map<String, Object> content = new HashMap<>();
+                    content.put("id", event.getId());
+                    content.put("type", event.getName().startsWith("blog") ? "blogpost" : "page");
+                    content.put("space", space);
+                    deleteDocument(getContentViewUrl(content, confluenceHome));
+                }
+            }
+        };
     }
 
-    protected String getPassword(Map<String, String> paramMap) {
-        if (paramMap.containsKey(PASSWORD_PARAM)) {
-            return paramMap.get(PASSWORD_PARAM);
-        }
-        return StringUtil.EMPTY;
+    // null when the whole "content" is referenced, otherwise keys such as "title", "raw" or "raw.history"
+    @Override
+    protected Set<String> getScriptReferences(final Map<String, String> scriptMap) {
+        return getScriptReferences(scriptMap, SCRIPT_REFERENCE_PATTERN, CONTENT_RAW);
     }
 
-    protected String getConsumerKey(Map<String, String> paramMap) {
-        if (paramMap.containsKey(CONSUMER_KEY_PARAM)) {
-            return paramMap.get(CONSUMER_KEY_PARAM);
+    protected String[] getContentExpand(final Map<String, String> paramMap, final Map<String, String> scriptMap) {
+        final Set<String> expand = new LinkedHashSet<>(Arrays.asList(REQUIRED_CONTENT_EXPAND));
+        final Set<String> references = getScriptReferences(scriptMap);
+        if (references == null || references.contains(CONTENT_BODY)) {
+            expand.add(BODY_EXPAND);
         }
-        return StringUtil.EMPTY;
-    }
-
-    protected String getPrivateKey(Map<String, String> paramMap) {
-        if (paramMap.containsKey(PRIVATE_KEY_PARAM)) {
-            return paramMap.get(PRIVATE_KEY_PARAM);
+        if (references != null) {
+            for (final String reference : references) {
+                // e.g. content.raw.history -> expand=history
+                if (reference.startsWith(CONTENT_RAW + ".") && !BASE_CONTENT_KEYS.contains(reference.substring(CONTENT_RAW.length() + 1))) {
+                    expand.add(reference.substring(CONTENT_RAW.length() + 1));
+                }
+            }
         }
-        return StringUtil.EMPTY;
-    }
-
-    protected String getSecret(Map<String, String> paramMap) {
-        if (paramMap.containsKey(SECRET_PARAM)) {
-            return paramMap.get(SECRET_PARAM);
+        for (final String value : paramMap.getOrDefault(EXPAND_PARAM, StringUtil.EMPTY).split(",")) {
+            if (!value.trim().isEmpty()) {
+                expand.add(value.trim());
+            }
         }
-        return StringUtil.EMPTY;
+        return expand.toArray(new String[expand.size()]);
     }
 
-    protected String getAccessToken(Map<String, String> paramMap) {
-        if (paramMap.containsKey(ACCESS_TOKEN_PARAM)) {
-            return paramMap.get(ACCESS_TOKEN_PARAM);
+    protected String[] getContentPaths(final String[] expand) {
+        final Set<String> paths = new LinkedHashSet<>(Arrays.asList(CONTENT_PATHS));
+        for (final String value : expand) {
+            if (BODY_EXPAND.equals(value)) {
+                paths.add(BODY_PATH);
+            } else if (!Arrays.asList(REQUIRED_CONTENT_EXPAND).contains(value)) {
+                paths.add(value);
+            }
         }
-        return StringUtil.EMPTY;
+        return paths.toArray(new String[paths.size()]);
     }
 
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codelibs.fess.crawler.extractor.Extractor;
+import org.codelibs.fess.ds.atlassian.callback.SegmentUpdater;
+import org.codelibs.fess.ds.atlassian.metrics.CrawlMetrics;
+import org.codelibs.fess.ds.atlassian.script.CompiledScripts;
+import org.codelibs.fess.ds.atlassian.store.ExtractedTextCache;
+import org.codelibs.fess.ds.atlassian.store.FingerprintStore;
+import org.codelibs.fess.ds.atlassian.store.SeenIdSet;
+import org.codelibs.fess.ds.callback.IndexUpdateCallback;
+import org.codelibs.fess.es.config.exentity.DataConfig;
+
+// the state of one crawl, so that a data store instance keeps nothing between or across crawls
+public class CrawlContext {
+
+    protected final DataConfig dataConfig;
+    protected final IndexUpdateCallback callback;
+    protected final Map<String, String> paramMap;
+    protected final Map<String, String> scriptMap;
+    protected final Map<String, Object> defaultDataMap;
+    protected final AtomicLong truncatedCommentCount = new AtomicLong();
+
+    protected CompiledScripts scripts;
+    protected Set<String> scriptReferences;
+    protected CrawlMetrics metrics;
+    protected ExtractedTextCache textCache;
+    protected FingerprintStore fingerprintStore;
+    protected SeenIdSet seenIdSet;
+    protected SegmentUpdater segmentUpdater;
+    protected Extractor extractor;
+    protected long spillThreshold;
+    protected Path spillDirectory;
+    protected AtomicBoolean cancelled = new AtomicBoolean();
+
+    public CrawlContext(final DataConfig dataConfig, final IndexUpdateCallback callback, final Map<String, String> paramMap,
+            final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap) {
+        this.dataConfig = dataConfig;
+        this.callback = callback;
+        this.paramMap = paramMap;
+        this.scriptMap = scriptMap;
+        this.defaultDataMap = defaultDataMap;
+    }
+
+    public DataConfig getDataConfig() {
+        return dataConfig;
+    }
+
+    public IndexUpdateCallback getCallback() {
+        return callback;
+    }
+
+    public Map<String, String> getParamMap() {
+        return paramMap;
+    }
+
+    public Map<String, String> getScriptMap() {
+        return scriptMap;
+    }
+
+    public Map<String, Object> getDefaultDataMap() {
+        return defaultDataMap;
+    }
+
+    public long getTruncatedCommentCount() {
+        return truncatedCommentCount.get();
+    }
+
+    public void incrementTruncatedCommentCount() {
+        truncatedCommentCount.incrementAndGet();
+    }
+
+    // compiled once per crawl, by the first document
+    public synchronized CompiledScripts getScripts() {
+        if (scripts == null) {
+            scripts = new CompiledScripts(scriptMap);
+        }
+        return scripts;
+    }
+
+    // null when the whole document is referenced
+    public void setScriptReferences(final Set<String> scriptReferences) {
+        this.scriptReferences = scriptReferences;
+    }
+
+    public boolean isScriptReferenced(final String name) {
+        return scriptReferences == null || scriptReferences.contains(name);
+    }
+
+    public CrawlMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(final CrawlMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public ExtractedTextCache getTextCache() {
+        return textCache;
+    }
+
+    public void setTextCache(final ExtractedTextCache textCache) {
+        this.textCache = textCache;
+    }
+
+    public FingerprintStore getFingerprintStore() {
+        return fingerprintStore;
+    }
+
+    public void setFingerprintStore(final FingerprintStore fingerprintStore) {
+        this.fingerprintStore = fingerprintStore;
+    }
+
+    public SeenIdSet getSeenIdSet() {
+        return seenIdSet;
+    }
+
+    public void setSeenIdSet(final SeenIdSet seenIdSet) {
+        this.seenIdSet = seenIdSet;
+    }
+
+    public SegmentUpdater getSegmentUpdater() {
+        return segmentUpdater;
+    }
+
+    public void setSegmentUpdater(final SegmentUpdater segmentUpdater) {
+        this.segmentUpdater = segmentUpdater;
+    }
+
+    public Extractor getExtractor() {
+        return extractor;
+    }
+
+    public void setExtractor(final Extractor extractor) {
+        this.extractor = extractor;
+    }
+
+    public long getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public void setSpill(final long spillThreshold, final Path spillDirectory) {
+        this.spillThreshold = spillThreshold;
+        this.spillDirectory = spillDirectory;
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    // shared with the subscription of DocumentPublisher, which cancels this crawl only
+    public void setCancelled(final AtomicBoolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
+}
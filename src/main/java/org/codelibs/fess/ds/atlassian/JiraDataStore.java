@@ -15,54 +15,56 @@
  */
 package org.codelibs.fess.ds.atlassian;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.TimeZone;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-
-import com.google.api.client.http.apache.ApacheHttpTransport;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 
 import org.codelibs.core.lang.StringUtil;
 import org.codelibs.fess.crawler.exception.CrawlingAccessException;
-import org.codelibs.fess.ds.AbstractDataStore;
-import org.codelibs.fess.ds.atlassian.api.AtlassianClient;
-import org.codelibs.fess.ds.atlassian.api.AtlassianClientBuilder;
+import org.codelibs.fess.ds.atlassian.api.ResponseCache;
 import org.codelibs.fess.ds.atlassian.api.jira.JiraClient;
+import org.codelibs.fess.ds.atlassian.api.jira.search.SearchResponse;
+import org.codelibs.fess.ds.atlassian.callback.BatchingIndexUpdateCallback;
+import org.codelibs.fess.ds.atlassian.callback.SegmentUpdater;
+import org.codelibs.fess.ds.atlassian.jfr.DocumentProcessedEvent;
+import org.codelibs.fess.ds.atlassian.metrics.CrawlMetrics;
+import org.codelibs.fess.ds.atlassian.store.CrawlCheckpoint;
+import org.codelibs.fess.ds.atlassian.store.ExtractedTextCache;
+import org.codelibs.fess.ds.atlassian.store.FingerprintStore;
+import org.codelibs.fess.ds.atlassian.store.SeenIdSet;
+import org.codelibs.fess.ds.atlassian.webhook.WebhookEvent;
+import org.codelibs.fess.ds.atlassian.webhook.WebhookReceiver;
 import org.codelibs.fess.ds.callback.IndexUpdateCallback;
 import org.codelibs.fess.es.config.exentity.DataConfig;
-import org.codelibs.fess.mylasta.direction.FessConfig;
 import org.codelibs.fess.util.ComponentUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class JiraDataStore extends AbstractDataStore {
+public class JiraDataStore extends AbstractAtlassianDataStore {
     private static final Logger logger = LoggerFactory.getLogger(JiraDataStore.class);
 
     // parameters
-    protected static final String HOME_PARAM = "home";
-
-    protected static final String CONSUMER_KEY_PARAM = "oauth.consumer_key";
-    protected static final String PRIVATE_KEY_PARAM = "oauth.private_key";
-    protected static final String SECRET_PARAM = "oauth.secret";
-    protected static final String ACCESS_TOKEN_PARAM = "oauth.access_token";
-
-    protected static final String USERNAME_PARAM = "basicauth.username";
-    protected static final String PASSWORD_PARAM = "basicauth.password";
-
     protected static final String JQL_PARAM = "issue.jql";
+    protected static final String FIELDS_PARAM = "issue.fields";
+    protected static final String CUSTOM_FIELDS_PARAM = "issue.custom_fields";
+    protected static final String FIELD_CACHE_TTL_PARAM = "field_cache.ttl";
 
     protected static final String IGNORE_FOLDER = "ignore_folder";
     protected static final String IGNORE_ERROR = "ignore_error";
     protected static final String DEFAULT_PERMISSIONS = "default_permissions";
-    protected static final String NUMBER_OF_THREADS = "number_of_threads";
+
+    protected static final String COMMENT_NEWEST_FIRST_PARAM = "comment.newest_first";
 
     // scripts
     protected static final String ISSUE = "issue";
@@ -71,116 +73,247 @@ public class JiraDataStore extends AbstractDataStore {
     protected static final String ISSUE_COMMENTS = "comments";
     protected static final String ISSUE_LAST_MODIFIED = "last_modified";
     protected static final String ISSUE_VIEW_URL = "view_url";
+    protected static final String ISSUE_FIELDS = "fields";
+    protected static final String ISSUE_CUSTOM_FIELDS = "custom_fields";
+    protected static final String ISSUE_PROJECT_NAME = "project_name";
+    protected static final String ISSUE_PROJECT_CATEGORY = "project_category";
 
     protected static final int ISSUE_MAX_RESULTS = 50;
 
+    // "updated" is always needed for last_modified and the local stores
+    protected static final String[] REQUIRED_ISSUE_FIELDS = { "updated" };
+    protected static final String[] DEFAULT_ISSUE_FIELDS = { "summary", "description", "updated" };
+    protected static final String ALL_FIELDS = "*all";
+
+    // values read from the responses when response_filter.enabled is true
+    protected static final String[] COMMENT_PATHS = { "body" };
+
+    protected static final Pattern SCRIPT_REFERENCE_PATTERN = getScriptReferencePattern(ISSUE);
+    protected static final Pattern ORDER_BY_PATTERN = Pattern.compile("\\bORDER\\s+BY\\b.*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    protected static final long DEFAULT_FIELD_CACHE_TTL = 60L * 60L * 1000L;
+
     protected String getName() {
         return "Jira";
     }
 
     @Override
     protected void storeData(final DataConfig dataConfig, final IndexUpdateCallback callback, final Map<String, String> paramMap,
-            final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap) {
-        final FessConfig fessConfig = ComponentUtil.getFessConfig();
-
-        final String jiraHome = getJiraHome(paramMap);
-
-        final String userName = getUserName(paramMap);
-        final String password = getPassword(paramMap);
-
-        final String consumerKey = getConsumerKey(paramMap);
-        final String privateKey = getPrivateKey(paramMap);
-        final String verifier = getSecret(paramMap);
-        final String temporaryToken = getAccessToken(paramMap);
-
-        final long readInterval = getReadInterval(paramMap);
+            final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap, final AtomicBoolean cancelled) {
+        final String jiraHome = getHome(paramMap);
 
         final String jql = getJql(paramMap);
 
-        boolean basic = false;
-        if (jiraHome.isEmpty()) {
-            logger.warn("parameter \"" + HOME_PARAM + "\" is required");
-            return;
-        } else if (!userName.isEmpty() && !password.isEmpty()) {
-            basic = true;
-        } else if (consumerKey.isEmpty() || privateKey.isEmpty() || verifier.isEmpty() || temporaryToken.isEmpty()) {
-            logger.warn("parameter \"" + USERNAME_PARAM + "\" and \"" + PASSWORD_PARAM + "\" or \"" + CONSUMER_KEY_PARAM + "\", \""
-                    + PRIVATE_KEY_PARAM + "\", \"" + SECRET_PARAM + "\" and \"" + ACCESS_TOKEN_PARAM + "\" are required");
+        if (!validateParams(paramMap)) {
             return;
         }
 
-        final JiraClient client = basic ? new JiraClient(AtlassianClient.builder().basicAuth(jiraHome, userName, password).build())
-                : new JiraClient(AtlassianClient.builder().oAuthToken(jiraHome, accessToken -> {
-                    accessToken.consumerKey = consumerKey;
-                    accessToken.signer = AtlassianClientBuilder.getOAuthRsaSigner(privateKey);
-                    accessToken.transport = new ApacheHttpTransport();
-                    accessToken.verifier = verifier;
-                    accessToken.temporaryToken = temporaryToken;
-                }).build());
+        final CrawlMetrics crawlMetrics = createCrawlMetrics(dataConfig, paramMap);
+        // the resources are closed in reverse order even if one of them fails, so the batch is flushed before the stores
+        try (ResponseCache responseCache = createResponseCache(dataConfig, paramMap)) {
+            final JiraClient client = new JiraClient(createClient(paramMap, newClientBuilder(paramMap, responseCache, crawlMetrics)));
+            client.metadataCache(getMetadataCacheMaxSize(paramMap), getMetadataCacheTtl(paramMap));
+
+            try (ExtractedTextCache textCache = createExtractedTextCache(dataConfig, paramMap);
+                    FingerprintStore fingerprintStore = createFingerprintStore(dataConfig, paramMap);
+                    SegmentUpdater segmentUpdater = createSegmentUpdater(paramMap, fingerprintStore);
+                    SeenIdSet seenIdSet = createSeenIdSet(dataConfig, paramMap, jiraHome + "\n" + jql);
+                    BatchingIndexUpdateCallback batchCallback = createBatchingCallback(callback, paramMap)) {
+                final CrawlContext context =
+                        newCrawlContext(dataConfig, batchCallback != null ? batchCallback : callback, paramMap, scriptMap, defaultDataMap);
+                context.setMetrics(crawlMetrics);
+                context.setTextCache(textCache);
+                context.setFingerprintStore(fingerprintStore);
+                context.setSegmentUpdater(segmentUpdater);
+                context.setSeenIdSet(seenIdSet);
+                context.setCancelled(cancelled);
+                try (WebhookReceiver webhookReceiver = startWebhook(paramMap, () -> createWebhookHandler(context, client, jiraHome))) {
+                    storeIssues(context, client, batchCallback, jiraHome, jql);
+                }
+            }
+        } finally {
+            finish(crawlMetrics);
+        }
+    }
 
-        for (int startAt = 0;; startAt += ISSUE_MAX_RESULTS) {
+    protected void storeIssues(final CrawlContext context, final JiraClient client, final BatchingIndexUpdateCallback batchCallback,
+            final String jiraHome, final String jql) {
+        final Map<String, String> paramMap = context.getParamMap();
+        final Map<String, String> customFields = getCustomFields(context.getDataConfig(), paramMap, client);
+        final String[] fields = getIssueFields(paramMap, context.getScriptMap(), customFields.keySet());
+        final String[] issuePaths = getResponsePaths(paramMap, getIssuePaths(fields));
+        if (logger.isDebugEnabled()) {
+            logger.debug("Issue fields: " + String.join(",", fields));
+        }
 
-            // get issues
-            final List<Map<String, Object>> issues = client.search().jql(jql).startAt(startAt).maxResults(ISSUE_MAX_RESULTS)
-                    .fields("summary", "description", "updated").execute().getIssues();
+        final SeenIdSet seenIdSet = context.getSeenIdSet();
+        final CrawlCheckpoint checkpoint = createCrawlCheckpoint(context.getDataConfig(), paramMap, jiraHome + "\n" + jql);
+        if (checkpoint != null && checkpoint.isResumed()) {
+            logger.info("Resume crawling from " + checkpoint.getPartition() + " at " + checkpoint.getOffset() + " (last id: "
+                    + checkpoint.getLastId() + ")");
+        }
+        final ExecutorService executorService = newExecutorService(paramMap);
+        final MemoryGovernor memoryGovernor = createMemoryGovernor(paramMap, ISSUE_MAX_RESULTS);
+        final AdaptivePageSize pageSize = createPageSize("search", paramMap, ISSUE_MAX_RESULTS);
+        try {
+            String lastId = checkpoint != null && checkpoint.getOffset(ISSUE) > 0 ? checkpoint.getLastId() : null;
+            for (int startAt = checkpoint != null ? checkpoint.getOffset(ISSUE) : 0;;) {
 
-            // store issues
-            for (final Map<String, Object> issue : issues) {
-                processIssue(dataConfig, callback, paramMap, scriptMap, defaultDataMap, fessConfig, client, readInterval, jiraHome, issue);
-            }
+                if (memoryGovernor != null) {
+                    memoryGovernor.awaitPage();
+                }
+                // get issues
+                final String query = checkpoint != null ? getKeysetJql(jql, lastId) : jql;
+                final int offset = checkpoint != null ? 0 : startAt;
+                final SearchResponse response = getPage(client.client(), pageSize, maxResults -> client.search().jql(query)
+                        .startAt(offset).maxResults(maxResults).fields(fields).filter(issuePaths).execute());
+                final List<Map<String, Object>> issues = response.getIssues();
+                final boolean last = response.isLast(pageSize.getRequested());
+                pageSize.served(response.getMaxResults());
+
+                // store issues
+                final List<Runnable> tasks = new ArrayList<>(issues.size());
+                for (final Map<String, Object> issue : issues) {
+                    final Runnable task = () -> processIssue(context, client, jiraHome, issue, customFields);
+                    tasks.add(memoryGovernor != null ? memoryGovernor.limit(task) : task);
+                }
+                runTasks(executorService, tasks);
+                if (!isRunning(context)) {
+                    // the checkpoint must not pass the issues skipped by the stop
+                    break;
+                }
+                if (batchCallback != null && checkpoint != null) {
+                    // the checkpoint must not pass documents which are not stored yet
+                    batchCallback.flush();
+                }
 
-            if (issues.size() < ISSUE_MAX_RESULTS)
-                break;
+                if (checkpoint != null && !issues.isEmpty()) {
+                    lastId = (String) issues.get(issues.size() - 1).get("id");
+                    checkpoint.update(ISSUE, startAt + issues.size(), lastId);
+                }
 
-        }
+                if (last)
+                    break;
+                startAt += issues.size();
 
-        final ExecutorService executorService = newFixedThreadPool(Integer.parseInt(paramMap.getOrDefault(NUMBER_OF_THREADS, "1")));
-        try {
-            
-            if (logger.isDebugEnabled()) {
-                logger.debug("Shutting down thread executor.");
             }
-            executorService.shutdown();
-            executorService.awaitTermination(60, TimeUnit.SECONDS);
-        } catch (final InterruptedException e) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("Interrupted.", e);
+
+            if (isRunning(context)) {
+                if (seenIdSet != null) {
+                    if (checkpoint != null && checkpoint.isResumed()) {
+                        // ids before the checkpoint were not seen in this run
+                        logger.info("Skip deletion detection for the resumed crawl.");
+                    } else {
+                        deleteRemovedDocuments(seenIdSet, context.getFingerprintStore());
+                    }
+                }
+                if (checkpoint != null) {
+                    checkpoint.clear();
+                }
             }
         } finally {
-            executorService.shutdownNow();
+            try {
+                shutdown(executorService);
+            } finally {
+                close(memoryGovernor);
+            }
+            logger.info("Page size of " + pageSize);
+            logTruncatedComments(context);
         }
-
     }
 
-    protected void processIssue(final DataConfig dataConfig, final IndexUpdateCallback callback, final Map<String, String> paramMap,
-            final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap, final FessConfig fessConfig,
-            final JiraClient client, final long readInterval, final String jiraHome, final Map<String, Object> issue) {
+    protected void processIssue(final CrawlContext context, final JiraClient client, final String jiraHome,
+            final Map<String, Object> issue, final Map<String, String> customFields) {
+        if (!isRunning(context)) {
+            return;
+        }
+        final SeenIdSet seenIdSet = context.getSeenIdSet();
         final Map<String, Object> dataMap = new HashMap<>();
-        dataMap.putAll(defaultDataMap);
-        final Map<String, Object> resultMap = new LinkedHashMap<>();
-        resultMap.putAll(paramMap);
+        dataMap.putAll(context.getDefaultDataMap());
+        final Map<String, Object> resultMap = new HashMap<>();
         final Map<String, Object> issueMap = new HashMap<>();
+        final long startTime = System.nanoTime();
+        final DocumentProcessedEvent event = new DocumentProcessedEvent();
+        final boolean recording = event.isEnabled();
+        if (recording) {
+            event.begin();
+            event.type = ISSUE;
+            event.id = (String) issue.get("id");
+            documentEvent.set(event);
+        }
 
         try {
             issueMap.put(ISSUE_SUMMARY, getIssueSummary(issue));
             issueMap.put(ISSUE_DESCRIPTION, getIssueDescription(issue));
-            issueMap.put(ISSUE_COMMENTS, getIssueComments(issue, client));
-            issueMap.put(ISSUE_LAST_MODIFIED, getIssueLastModified(issue));
+            if (context.isScriptReferenced(ISSUE_COMMENTS)) {
+                issueMap.put(ISSUE_COMMENTS, getIssueComments(context, client, issue));
+            }
+            final Date lastModified = getIssueLastModified(issue);
+            issueMap.put(ISSUE_LAST_MODIFIED, lastModified);
             issueMap.put(ISSUE_VIEW_URL, getIssueViewUrl(issue, jiraHome));
+            issueMap.put(ISSUE_FIELDS, issue.get("fields"));
+            issueMap.put(ISSUE_CUSTOM_FIELDS, getIssueCustomFields(issue, customFields));
+            if (context.isScriptReferenced(ISSUE_PROJECT_NAME) || context.isScriptReferenced(ISSUE_PROJECT_CATEGORY)) {
+                final Map<String, Object> project = getIssueProject(issue, client);
+                issueMap.put(ISSUE_PROJECT_NAME, project.getOrDefault("name", StringUtil.EMPTY));
+                issueMap.put(ISSUE_PROJECT_CATEGORY, getProjectCategory(project));
+            }
             resultMap.put(ISSUE, issueMap);
 
-            for (final Map.Entry<String, String> entry : scriptMap.entrySet()) {
-                final Object convertValue = convertValue(entry.getValue(), resultMap);
-                if (convertValue != null) {
-                    dataMap.put(entry.getKey(), convertValue);
-                }
+            dataMap.putAll(context.getScripts().evaluate(context.getParamMap(), resultMap));
+            if (seenIdSet != null) {
+                seenIdSet.add(Long.parseLong((String) issue.get("id")),
+                        (String) dataMap.get(ComponentUtil.getFessConfig().getIndexFieldUrl()));
+            }
+            final long storeTime = System.nanoTime();
+            storeIfChanged(context, dataMap, issueMap, (String) issue.get("id"), lastModified);
+            if (recording) {
+                event.storeTime = System.nanoTime() - storeTime;
+            }
+            if (context.getMetrics() != null) {
+                context.getMetrics().onDocument(ISSUE, System.nanoTime() - startTime);
             }
-            callback.store(paramMap, dataMap);
         } catch (final CrawlingAccessException e) {
             logger.warn("Crawling Access Exception at : " + dataMap, e);
+            if (seenIdSet != null) {
+                // keep the indexed document, the failure is not a deletion
+                seenIdSet.add(Long.parseLong((String) issue.get("id")), null);
+            }
+        } finally {
+            if (recording) {
+                documentEvent.remove();
+                event.end();
+                if (event.shouldCommit()) {
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    protected Map<String, Object> getIssueProject(final Map<String, Object> issue, final JiraClient client) {
+        // the project key is the prefix of the issue key, e.g. FESS-123
+        final String key = (String) issue.get("key");
+        if (key == null || key.lastIndexOf('-') <= 0) {
+            return Collections.emptyMap();
+        }
+        final String projectKey = key.substring(0, key.lastIndexOf('-'));
+        try {
+            return client.getCachedProject(projectKey);
+        } catch (final AtlassianDataStoreException e) {
+            logger.warn("Failed to get the project: " + projectKey, e);
+            return Collections.emptyMap();
         }
     }
 
+    @SuppressWarnings("unchecked")
+    protected String getProjectCategory(final Map<String, Object> project) {
+        final Object category = project.get("projectCategory");
+        if (category instanceof Map) {
+            return (String) ((Map<String, Object>) category).getOrDefault("name", StringUtil.EMPTY);
+        }
+        return StringUtil.EMPTY;
+    }
+
     protected String getIssueViewUrl(final Map<String, Object> issue, final String jiraHome) {
         return jiraHome + "/browse/" + (String) issue.get("key");
     }
@@ -197,101 +330,213 @@ public class JiraDataStore extends AbstractDataStore {
         return (String) fields.getOrDefault("description", "");
     }
 
-    protected String getIssueComments(final Map<String, Object> issue, final JiraClient client) {
-        final StringBuilder sb = new StringBuilder();
+    protected String getIssueComments(final CrawlContext context, final JiraClient client, final Map<String, Object> issue) {
+        final Map<String, String> paramMap = context.getParamMap();
+        final ExtractedTextCache textCache = context.getTextCache();
         final String id = (String) issue.get("id");
+        // "updated" also changes when a comment is added, edited or removed
+        final String updated = getIssueUpdated(issue);
+        if (textCache != null) {
+            final String cached = textCache.get(id, updated);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        final CommentBuffer buffer = newCommentBuffer(paramMap);
+        final String orderBy =
+                Boolean.parseBoolean(paramMap.getOrDefault(COMMENT_NEWEST_FIRST_PARAM, Boolean.FALSE.toString())) ? "-created" : null;
 
-        for (int startAt = 0;; startAt += ISSUE_MAX_RESULTS) {
-            final List<Map<String, Object>> comments =
-                    client.getComments(id).startAt(startAt).maxResults(ISSUE_MAX_RESULTS).execute().getComments();
+        for (int startAt = 0;;) {
+            final int maxResults = buffer.getPageSize(ISSUE_MAX_RESULTS);
+            final List<Map<String, Object>> comments = client.getComments(id).startAt(startAt).maxResults(maxResults).orderBy(orderBy)
+                    .filter(getResponsePaths(paramMap, COMMENT_PATHS)).execute().getComments();
 
             for (final Map<String, Object> comment : comments) {
-                sb.append("\n\n");
-                sb.append(comment.get("body"));
+                if (!buffer.append(comment.get("body"))) {
+                    break;
+                }
             }
 
-            if (comments.size() < ISSUE_MAX_RESULTS)
+            if (buffer.isTruncated() || comments.size() < maxResults)
                 break;
+            startAt += comments.size();
+        }
+        onCommentsRead(context, id, buffer);
+        final String text = buffer.toString();
+        if (textCache != null) {
+            textCache.put(id, updated, text);
         }
-        return sb.toString();
+        return text;
     }
 
-    protected Date getIssueLastModified(final Map<String, Object> issue) {
+    protected String getIssueUpdated(final Map<String, Object> issue) {
         @SuppressWarnings("unchecked")
         final Map<String, Object> fields = (Map<String, Object>) issue.get("fields");
-        final String updated = (String) fields.get("updated");
-        try {
-            final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX");
-            format.setTimeZone(TimeZone.getTimeZone("UTC"));
-            return format.parse(updated);
-        } catch (final ParseException e) {
-            logger.warn("Fail to parse: " + updated, e);
-        }
-        return null;
+        return (String) fields.get("updated");
     }
 
-    protected String getJiraHome(final Map<String, String> paramMap) {
-        if (paramMap.containsKey(HOME_PARAM)) {
-            return paramMap.get(HOME_PARAM);
-        }
-        return StringUtil.EMPTY;
+    protected Date getIssueLastModified(final Map<String, Object> issue) {
+        return parseDate(getIssueUpdated(issue));
     }
 
-    protected String getUserName(final Map<String, String> paramMap) {
-        if (paramMap.containsKey(USERNAME_PARAM)) {
-            return paramMap.get(USERNAME_PARAM);
+    // issues ordered by id are resumed after the last id even if issues before it were added or removed
+    protected String getKeysetJql(final String jql, final String lastId) {
+        final String filter = ORDER_BY_PATTERN.matcher(jql).replaceFirst(StringUtil.EMPTY).trim();
+        final StringBuilder buf = new StringBuilder();
+        if (!filter.isEmpty()) {
+            buf.append('(').append(filter).append(')');
         }
-        return StringUtil.EMPTY;
+        if (lastId != null) {
+            if (buf.length() > 0) {
+                buf.append(" AND ");
+            }
+            buf.append("id > ").append(lastId);
+        }
+        return buf.append(" ORDER BY id ASC").toString().trim();
     }
 
-    protected String getPassword(final Map<String, String> paramMap) {
-        if (paramMap.containsKey(PASSWORD_PARAM)) {
-            return paramMap.get(PASSWORD_PARAM);
+    protected String getJql(final Map<String, String> paramMap) {
+        if (paramMap.containsKey(JQL_PARAM)) {
+            return paramMap.get(JQL_PARAM);
         }
         return StringUtil.EMPTY;
     }
 
-    protected String getConsumerKey(final Map<String, String> paramMap) {
-        if (paramMap.containsKey(CONSUMER_KEY_PARAM)) {
-            return paramMap.get(CONSUMER_KEY_PARAM);
-        }
-        return StringUtil.EMPTY;
+    protected WebhookReceiver.Handler createWebhookHandler(final CrawlContext context, final JiraClient client, final String jiraHome) {
+        final Map<String, String> paramMap = context.getParamMap();
+        final Map<String, String> scriptMap = context.getScriptMap();
+        final Map<String, String> customFields = getCustomFields(context.getDataConfig(), paramMap, client);
+        final String[] fields = getIssueFields(paramMap, scriptMap, customFields.keySet());
+        return new WebhookReceiver.Handler() {
+            @Override
+            public void update(final List<WebhookEvent> events) {
+                final List<String> ids = new ArrayList<>(events.size());
+                for (final WebhookEvent event : events) {
+                    ids.add(event.getId());
+                }
+                try {
+                    for (final Map<String, Object> issue : client.getIssues(ids).fields(fields)
+                            .filter(getResponsePaths(paramMap, getIssuePaths(fields))).execute().getIssues()) {
+                        processIssue(context, client, jiraHome, issue, customFields);
+                    }
+                } catch (final AtlassianDataStoreException e) {
+                    logger.warn("Failed to refresh the issues: " + ids, e);
+                }
+            }
+
+            @Override
+            public void delete(final List<WebhookEvent> events) {
+                for (final WebhookEvent event : events) {
+                    deleteDocument(getIssueViewUrl(event.getEntity(), jiraHome));
+                }
+            }
+        };
     }
 
-    protected String getPrivateKey(final Map<String, String> paramMap) {
-        if (paramMap.containsKey(PRIVATE_KEY_PARAM)) {
-            return paramMap.get(PRIVATE_KEY_PARAM);
+    // null when the whole "issue" is referenced, otherwise keys such as "summary", "fields" or "fields.customfield_10000"
+    @Override
+    protected Set<String> getScriptReferences(final Map<String, String> scriptMap) {
+        return getScriptReferences(scriptMap, SCRIPT_REFERENCE_PATTERN, ISSUE_FIELDS);
+    }
+
+    protected String[] getIssueFields(final Map<String, String> paramMap, final Map<String, String> scriptMap,
+            final Collection<String> customFieldIds) {
+        final Set<String> fields = new LinkedHashSet<>(Arrays.asList(REQUIRED_ISSUE_FIELDS));
+        final Set<String> references = getScriptReferences(scriptMap);
+        if (references == null) {
+            fields.addAll(Arrays.asList(DEFAULT_ISSUE_FIELDS));
+        } else {
+            for (final String reference : references) {
+                if (ISSUE_SUMMARY.equals(reference) || ISSUE_DESCRIPTION.equals(reference)) {
+                    fields.add(reference);
+                } else if (ISSUE_FIELDS.equals(reference)) {
+                    fields.add(ALL_FIELDS);
+                } else if (reference.startsWith(ISSUE_FIELDS + ".")) {
+                    fields.add(reference.substring(ISSUE_FIELDS.length() + 1));
+                }
+            }
         }
-        return StringUtil.EMPTY;
+        for (final String field : paramMap.getOrDefault(FIELDS_PARAM, StringUtil.EMPTY).split(",")) {
+            if (!field.trim().isEmpty()) {
+                fields.add(field.trim());
+            }
+        }
+        fields.addAll(customFieldIds);
+        return fields.toArray(new String[fields.size()]);
     }
 
-    protected String getSecret(final Map<String, String> paramMap) {
-        if (paramMap.containsKey(SECRET_PARAM)) {
-            return paramMap.get(SECRET_PARAM);
+    // id -> name of the custom fields in issue.custom_fields
+    protected Map<String, String> getCustomFields(final DataConfig dataConfig, final Map<String, String> paramMap,
+            final JiraClient client) {
+        final Map<String, String> customFields = new LinkedHashMap<>();
+        final String value = paramMap.getOrDefault(CUSTOM_FIELDS_PARAM, StringUtil.EMPTY);
+        if (value.trim().isEmpty()) {
+            return customFields;
         }
-        return StringUtil.EMPTY;
+        final long ttl = Long.parseLong(paramMap.getOrDefault(FIELD_CACHE_TTL_PARAM, Long.toString(DEFAULT_FIELD_CACHE_TTL)));
+        final Map<String, String> fieldIds;
+        try {
+            fieldIds = client.getCachedFields(ttl, getStorePath(dataConfig, paramMap, "fields.json")).getFieldIds();
+        } catch (final AtlassianDataStoreException e) {
+            logger.warn("Failed to get fields, custom fields are not indexed.", e);
+            return customFields;
+        }
+        for (final String name : value.split(",")) {
+            final String fieldName = name.trim();
+            if (fieldName.isEmpty()) {
+                continue;
+            }
+            if (fieldIds.containsKey(fieldName)) {
+                customFields.put(fieldIds.get(fieldName), fieldName);
+            } else if (fieldIds.containsValue(fieldName)) {
+                customFields.put(fieldName, fieldName);
+            } else {
+                logger.warn("Unknown custom field: " + fieldName);
+            }
+        }
+        return customFields;
     }
 
-    protected String getAccessToken(final Map<String, String> paramMap) {
-        if (paramMap.containsKey(ACCESS_TOKEN_PARAM)) {
-            return paramMap.get(ACCESS_TOKEN_PARAM);
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> getIssueCustomFields(final Map<String, Object> issue, final Map<String, String> customFields) {
+        final Map<String, Object> values = new HashMap<>();
+        final Map<String, Object> fields = (Map<String, Object>) issue.get("fields");
+        for (final Map.Entry<String, String> entry : customFields.entrySet()) {
+            values.put(entry.getValue(), getCustomFieldValue(fields != null ? fields.get(entry.getKey()) : null));
         }
-        return StringUtil.EMPTY;
+        return values;
     }
 
-    protected String getJql(final Map<String, String> paramMap) {
-        if (paramMap.containsKey(JQL_PARAM)) {
-            return paramMap.get(JQL_PARAM);
+    // select lists, users and versions are objects, multi-value fields are arrays
+    @SuppressWarnings("unchecked")
+    protected Object getCustomFieldValue(final Object value) {
+        if (value instanceof Map) {
+            final Map<String, Object> map = (Map<String, Object>) value;
+            for (final String key : new String[] { "value", "name", "displayName" }) {
+                if (map.get(key) != null) {
+                    return map.get(key);
+                }
+            }
+            return map;
+        } else if (value instanceof List) {
+            final List<Object> list = new ArrayList<>();
+            for (final Object element : (List<Object>) value) {
+                list.add(getCustomFieldValue(element));
+            }
+            return list;
         }
-        return StringUtil.EMPTY;
+        return value;
     }
 
-    protected ExecutorService newFixedThreadPool(final int nThreads) {
-        if (logger.isDebugEnabled()) {
-            logger.debug("Executor Thread Pool: " + nThreads);
+    protected String[] getIssuePaths(final String[] fields) {
+        final List<String> paths = new ArrayList<>(fields.length + 2);
+        paths.add("id");
+        paths.add("key");
+        for (final String field : fields) {
+            paths.add(ALL_FIELDS.equals(field) ? ISSUE_FIELDS : ISSUE_FIELDS + "." + field);
         }
-        return new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(nThreads),
-                new ThreadPoolExecutor.CallerRunsPolicy());
+        return paths.toArray(new String[paths.size()]);
     }
 
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// pauses fetching and narrows the tasks of a page to one while the heap is above the high-water mark
+// the usage is polled so that the JVM-wide pool thresholds stay untouched for other crawls and Fess itself
+public class MemoryGovernor implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(MemoryGovernor.class);
+
+    protected static final long CHECK_INTERVAL = 100L;
+
+    protected final double highWater;
+    protected final double lowWater;
+    protected final long maxPause;
+    protected final int maxConcurrency;
+    protected final Permits permits;
+    protected final List<MemoryPoolMXBean> pools = new ArrayList<>();
+    protected final AtomicLong lastCheckTime = new AtomicLong();
+    protected final AtomicLong pauseCount = new AtomicLong();
+    protected final AtomicLong pausedTime = new AtomicLong();
+    protected boolean pressure = false;
+
+    public MemoryGovernor(final double highWater, final double lowWater, final long maxPause, final int maxConcurrency) {
+        this.highWater = highWater;
+        this.lowWater = Math.min(lowWater, highWater);
+        this.maxPause = maxPause;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.permits = new Permits(this.maxConcurrency);
+    }
+
+    public MemoryGovernor start() {
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            final long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && max > 0) {
+                pools.add(pool);
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Memory governor: high water " + highWater + ", low water " + lowWater + " on " + pools.size() + " pools");
+        }
+        return this;
+    }
+
+    // called before a page is fetched
+    public void awaitPage() {
+        check();
+        synchronized (this) {
+            if (!pressure) {
+                return;
+            }
+        }
+        final long startTime = System.currentTimeMillis();
+        try {
+            while (true) {
+                final long elapsed = System.currentTimeMillis() - startTime;
+                if (getUsedRatio() < lowWater) {
+                    break;
+                }
+                if (elapsed >= maxPause) {
+                    logger.warn("Resume fetching after " + elapsed + "ms above the low-water mark of the heap.");
+                    break;
+                }
+                synchronized (this) {
+                    wait(CHECK_INTERVAL);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            final long elapsed = System.currentTimeMillis() - startTime;
+            pauseCount.incrementAndGet();
+            pausedTime.addAndGet(elapsed);
+            logger.info("Paused fetching for " + elapsed + "ms by heap usage (paused: " + pauseCount.get() + " times, "
+                    + pausedTime.get() + "ms)");
+            relieve();
+        }
+    }
+
+    // runs the task within the concurrency allowed by the heap usage
+    public Runnable limit(final Runnable task) {
+        return () -> {
+            check();
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        };
+    }
+
+    public long getPauseCount() {
+        return pauseCount.get();
+    }
+
+    public long getPausedTime() {
+        return pausedTime.get();
+    }
+
+    public synchronized boolean isUnderPressure() {
+        return pressure;
+    }
+
+    @Override
+    public void close() {
+        pools.clear();
+        relieve();
+    }
+
+    // samples the heap at most once per interval across the fetching and task threads
+    protected void check() {
+        final long now = System.currentTimeMillis();
+        final long last = lastCheckTime.get();
+        if (now - last < CHECK_INTERVAL || !lastCheckTime.compareAndSet(last, now)) {
+            return;
+        }
+        if (getUsedRatio() >= highWater) {
+            press();
+        }
+    }
+
+    protected synchronized void press() {
+        if (pressure) {
+            return;
+        }
+        pressure = true;
+        if (maxConcurrency > 1) {
+            permits.reduce(maxConcurrency - 1);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Heap usage is above the high-water mark: " + getUsedRatio());
+        }
+    }
+
+    protected synchronized void relieve() {
+        if (!pressure) {
+            return;
+        }
+        pressure = false;
+        if (maxConcurrency > 1) {
+            permits.release(maxConcurrency - 1);
+        }
+        notifyAll();
+    }
+
+    // the highest ratio of the monitored pools, measured after the last GC when it is lower
+    protected double getUsedRatio() {
+        double ratio = 0;
+        for (final MemoryPoolMXBean pool : pools) {
+            final MemoryUsage usage = pool.getUsage();
+            final MemoryUsage collectionUsage = pool.getCollectionUsage();
+            final long used = collectionUsage != null ? Math.min(usage.getUsed(), collectionUsage.getUsed()) : usage.getUsed();
+            ratio = Math.max(ratio, (double) used / usage.getMax());
+        }
+        return ratio;
+    }
+
+    protected static class Permits extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        protected Permits(final int permits) {
+            super(permits, true);
+        }
+
+        protected void reduce(final int reduction) {
+            reducePermits(reduction);
+        }
+    }
+
+}
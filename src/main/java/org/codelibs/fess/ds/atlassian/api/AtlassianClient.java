@@ -15,16 +15,80 @@
  */
 package org.codelibs.fess.ds.atlassian.api;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpContent;
+import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+
+import org.codelibs.fess.ds.atlassian.jfr.AtlassianRequestEvent;
+import org.codelibs.fess.ds.atlassian.metrics.CrawlMetrics;
+import org.codelibs.fess.ds.atlassian.store.SpillBuffer;
 
 public class AtlassianClient {
 
+    protected static final String ACCEPT_ENCODING = "gzip, deflate";
+
     protected final String appHome;
     protected final HttpRequestFactory httpRequestFactory;
+    protected final ResponseCache responseCache;
+    protected final Semaphore requestPermits;
+    protected final long spillThreshold;
+    protected final Path spillDirectory;
+
+    protected final Map<String, CompletableFuture<Object>> inFlightRequests = new ConcurrentHashMap<>();
+    protected final AtomicLong coalescedCount = new AtomicLong();
+    protected final AtomicLong compressedBytes = new AtomicLong();
+    protected final AtomicLong uncompressedBytes = new AtomicLong();
+    protected final AtomicLong plainBytes = new AtomicLong();
+    protected final AtomicLong decodedBytes = new AtomicLong();
+    protected volatile CrawlMetrics metrics;
 
     public AtlassianClient(final String appHome, final HttpRequestFactory httpRequestFactory) {
+        this(appHome, httpRequestFactory, null);
+    }
+
+    public AtlassianClient(final String appHome, final HttpRequestFactory httpRequestFactory, final ResponseCache responseCache) {
+        this(appHome, httpRequestFactory, responseCache, 0);
+    }
+
+    // maxConcurrentRequests <= 0 means no limit
+    public AtlassianClient(final String appHome, final HttpRequestFactory httpRequestFactory, final ResponseCache responseCache,
+            final int maxConcurrentRequests) {
+        this(appHome, httpRequestFactory, responseCache, maxConcurrentRequests, 0L, null);
+    }
+
+    // responses larger than spillThreshold (> 0) are written to a temp file in spillDirectory and parsed from it
+    public AtlassianClient(final String appHome, final HttpRequestFactory httpRequestFactory, final ResponseCache responseCache,
+            final int maxConcurrentRequests, final long spillThreshold, final Path spillDirectory) {
         this.appHome = appHome;
         this.httpRequestFactory = httpRequestFactory;
+        this.responseCache = responseCache;
+        this.requestPermits = maxConcurrentRequests > 0 ? new Semaphore(maxConcurrentRequests, true) : null;
+        this.spillThreshold = spillThreshold;
+        this.spillDirectory = spillDirectory;
     }
 
     public static AtlassianClientBuilder builder() {
@@ -39,4 +103,373 @@ public class AtlassianClient {
         return httpRequestFactory;
     }
 
-}
\ No newline at end of file
+    public ResponseCache responseCache() {
+        return responseCache;
+    }
+
+    public AtlassianClient metrics(final CrawlMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public CrawlMetrics metrics() {
+        return metrics;
+    }
+
+    // concurrent GETs of the same url (and variant of parsing) share one HTTP call and its parsed response
+    @SuppressWarnings("unchecked")
+    public <T> T get(final GenericUrl url, final String variant, final ResponseParser<T> parser) throws IOException {
+        final String key = variant == null ? url.build() : url.build() + "\n" + variant;
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final CompletableFuture<Object> inFlight = inFlightRequests.putIfAbsent(key, future);
+        if (inFlight != null) {
+            coalescedCount.incrementAndGet();
+            return (T) await(inFlight);
+        }
+        try {
+            final T result;
+            acquirePermit();
+            try {
+                result = measure(url, bytes -> responseCache != null && responseCache.isCacheable(url.getRawPath())
+                        ? executeConditional(url, parser, bytes) : execute(buildGetRequest(url), parser, bytes));
+            } finally {
+                releasePermit();
+            }
+            future.complete(result);
+            return result;
+        } catch (final IOException | RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightRequests.remove(key, future);
+        }
+    }
+
+    public <T> T post(final GenericUrl url, final HttpContent content, final ResponseParser<T> parser) throws IOException {
+        final HttpRequest request = request().buildPostRequest(url, content);
+        request.getHeaders().setAcceptEncoding(ACCEPT_ENCODING);
+        request.setResponseReturnRawInputStream(true);
+        acquirePermit();
+        try {
+            return measure(url, bytes -> execute(request, parser, bytes));
+        } finally {
+            releasePermit();
+        }
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    // bytes on the wire of compressed responses
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    // decoded bytes of the responses counted in getCompressedBytes()
+    public long getUncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    public long getPlainBytes() {
+        return plainBytes.get();
+    }
+
+    // bytes of all response bodies handed to the parsers, including the ones served from the response cache
+    public long getDecodedBytes() {
+        return decodedBytes.get();
+    }
+
+    protected void acquirePermit() throws IOException {
+        if (requestPermits == null) {
+            return;
+        }
+        try {
+            requestPermits.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            final InterruptedIOException ioe = new InterruptedIOException("Interrupted while waiting for a request permit.");
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+    protected void releasePermit() {
+        if (requestPermits != null) {
+            requestPermits.release();
+        }
+    }
+
+    protected HttpRequest buildGetRequest(final GenericUrl url) throws IOException {
+        final HttpRequest request = request().buildGetRequest(url);
+        request.getHeaders().setAcceptEncoding(ACCEPT_ENCODING);
+        // decoded in decodeContent, so that the bytes on the wire can be counted
+        request.setResponseReturnRawInputStream(true);
+        return request;
+    }
+
+    // bytes counts the decoded body of this response only, if not null
+    protected InputStream getContent(final HttpResponse response, final AtomicLong bytes) throws IOException {
+        final InputStream content = decodeContent(response);
+        if (content == null) {
+            return null;
+        }
+        final InputStream counted = new CountingInputStream(content, decodedBytes::addAndGet);
+        return bytes != null ? new CountingInputStream(counted, bytes::addAndGet) : counted;
+    }
+
+    // reports the endpoint, status, bytes and duration of a request to the metrics and as a JFR event, if either is on
+    protected <T> T measure(final GenericUrl url, final MeasuredCall<T> call) throws IOException {
+        final CrawlMetrics crawlMetrics = metrics;
+        final AtlassianRequestEvent event = new AtlassianRequestEvent();
+        final boolean recording = event.isEnabled();
+        if (crawlMetrics == null && !recording) {
+            return call.execute(null);
+        }
+        final AtomicLong bytes = new AtomicLong();
+        final long startTime = System.nanoTime();
+        if (recording) {
+            event.begin();
+        }
+        int statusCode = 0;
+        try {
+            final T result = call.execute(bytes);
+            statusCode = 200;
+            return result;
+        } catch (final HttpResponseException e) {
+            statusCode = e.getStatusCode();
+            throw e;
+        } finally {
+            final String endpoint = CrawlMetrics.getEndpoint(url.getRawPath());
+            if (crawlMetrics != null) {
+                crawlMetrics.onRequest(endpoint, statusCode, bytes.get(), System.nanoTime() - startTime);
+            }
+            if (recording) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.endpoint = endpoint;
+                    event.statusCode = statusCode;
+                    event.bytes = bytes.get();
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    // the raw body is counted before decoding, and both gzip and deflate are decoded as streams
+    protected InputStream decodeContent(final HttpResponse response) throws IOException {
+        final InputStream content = response.getContent();
+        if (content == null) {
+            return null;
+        }
+        final String encoding = response.getContentEncoding() != null ? response.getContentEncoding().trim().toLowerCase(Locale.ROOT) : "";
+        switch (encoding) {
+        case "gzip":
+        case "x-gzip":
+            return new CountingInputStream(new GZIPInputStream(new CountingInputStream(content, this::addCompressedBytes)),
+                    this::addUncompressedBytes);
+        case "deflate":
+            return new CountingInputStream(inflate(new CountingInputStream(content, this::addCompressedBytes)), this::addUncompressedBytes);
+        default:
+            return new CountingInputStream(content, this::addPlainBytes);
+        }
+    }
+
+    protected void addCompressedBytes(final long n) {
+        compressedBytes.addAndGet(n);
+        final CrawlMetrics crawlMetrics = metrics;
+        if (crawlMetrics != null) {
+            crawlMetrics.addCompressedBytes(n);
+        }
+    }
+
+    protected void addUncompressedBytes(final long n) {
+        uncompressedBytes.addAndGet(n);
+        final CrawlMetrics crawlMetrics = metrics;
+        if (crawlMetrics != null) {
+            crawlMetrics.addUncompressedBytes(n);
+        }
+    }
+
+    protected void addPlainBytes(final long n) {
+        plainBytes.addAndGet(n);
+        final CrawlMetrics crawlMetrics = metrics;
+        if (crawlMetrics != null) {
+            crawlMetrics.addPlainBytes(n);
+        }
+    }
+
+    // "deflate" is meant to be zlib-wrapped, but some servers send raw deflate data
+    protected InputStream inflate(final InputStream in) throws IOException {
+        final PushbackInputStream pushback = new PushbackInputStream(in, 2);
+        final byte[] header = new byte[2];
+        int n = 0;
+        while (n < header.length) {
+            final int read = pushback.read(header, n, header.length - n);
+            if (read == -1) {
+                break;
+            }
+            n += read;
+        }
+        pushback.unread(header, 0, n);
+        final boolean zlib = n == 2 && (header[0] & 0x0f) == 8 && (((header[0] & 0xff) << 8) | (header[1] & 0xff)) % 31 == 0;
+        final Inflater inflater = new Inflater(!zlib);
+        return new InflaterInputStream(pushback, inflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    protected <T> T execute(final HttpRequest request, final ResponseParser<T> parser, final AtomicLong bytes) throws IOException {
+        final HttpResponse response = request.execute();
+        try {
+            if (response.getStatusCode() != 200) {
+                throw new HttpResponseException(response);
+            }
+            if (spillThreshold <= 0) {
+                return parser.parse(getContent(response, bytes));
+            }
+            // the body is drained before parsing, and only up to spillThreshold bytes of it are held in memory
+            try (SpillBuffer buffer = SpillBuffer.spool(getContent(response, bytes), spillThreshold, spillDirectory)) {
+                return parser.parse(buffer.getInputStream());
+            }
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    // revalidates a cached response with its ETag / Last-Modified, and serves 304 Not Modified from the cache
+    protected <T> T executeConditional(final GenericUrl url, final ResponseParser<T> parser, final AtomicLong bytes) throws IOException {
+        final String key = url.build();
+        final ResponseCache.Entry cached = responseCache.get(key);
+        final HttpRequest request = buildGetRequest(url);
+        if (cached != null) {
+            if (cached.getEtag() != null) {
+                request.getHeaders().setIfNoneMatch(cached.getEtag());
+            }
+            if (cached.getLastModified() != null) {
+                request.getHeaders().setIfModifiedSince(cached.getLastModified());
+            }
+        }
+        request.setThrowExceptionOnExecuteError(false);
+        final HttpResponse response = request.execute();
+        try {
+            if (response.getStatusCode() == 304 && cached != null) {
+                final byte[] body = responseCache.getBody(cached);
+                if (body != null) {
+                    responseCache.hit();
+                    decodedBytes.addAndGet(body.length);
+                    if (bytes != null) {
+                        bytes.addAndGet(body.length);
+                    }
+                    return parser.parse(new ByteArrayInputStream(body));
+                }
+                // the cached body was evicted or unreadable and has been dropped, so fetch it again without the conditional headers
+                return executeConditional(url, parser, bytes);
+            }
+            if (response.getStatusCode() != 200) {
+                throw new HttpResponseException(response);
+            }
+            responseCache.miss();
+            final String etag = response.getHeaders().getETag();
+            final String lastModified = response.getHeaders().getLastModified();
+            if (etag == null && lastModified == null) {
+                return parser.parse(getContent(response, bytes));
+            }
+            final InputStream in = getContent(response, bytes);
+            final byte[] body = readUpTo(in, responseCache.getMaxEntrySize());
+            if (body.length > responseCache.getMaxEntrySize()) {
+                // too large to cache, keep streaming it to the parser
+                return parser.parse(new SequenceInputStream(new ByteArrayInputStream(body), in));
+            }
+            responseCache.put(key, etag, lastModified, body);
+            return parser.parse(new ByteArrayInputStream(body));
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    // reads at most limit + 1 bytes, so that the caller can tell whether the stream was longer than limit
+    protected byte[] readUpTo(final InputStream in, final long limit) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (in == null) {
+            return out.toByteArray();
+        }
+        final byte[] buffer = new byte[8192];
+        long remaining = limit + 1;
+        int n;
+        while (remaining > 0 && (n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+            out.write(buffer, 0, n);
+            remaining -= n;
+        }
+        return out.toByteArray();
+    }
+
+    protected Object await(final CompletableFuture<Object> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the same request.", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    protected static class CountingInputStream extends FilterInputStream {
+        protected final LongConsumer counter;
+
+        protected CountingInputStream(final InputStream in, final LongConsumer counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                counter.accept(1L);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                counter.accept(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            counter.accept(skipped);
+            return skipped;
+        }
+    }
+
+    public interface ResponseParser<T> {
+        T parse(InputStream in) throws IOException;
+    }
+
+    protected interface MeasuredCall<T> {
+        T execute(AtomicLong bytes) throws IOException;
+    }
+
+}
@@ -15,6 +15,7 @@
  */
 package org.codelibs.fess.ds.atlassian.api;
 
+import java.nio.file.Path;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
@@ -25,14 +26,23 @@ import com.google.api.client.auth.oauth.OAuthGetAccessToken;
 import com.google.api.client.auth.oauth.OAuthRsaSigner;
 import com.google.api.client.http.BasicAuthentication;
 import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.repackaged.org.apache.commons.codec.binary.Base64;
 
+import org.codelibs.fess.ds.atlassian.metrics.CrawlMetrics;
+
 public class AtlassianClientBuilder {
 
     private String appHome;
     private OAuthGetAccessToken oAuthGetAccessToken;
     private BasicAuthentication basicAuthentication;
+    private ResponseCache responseCache;
+    private HttpTransport httpTransport;
+    private int maxConcurrentRequests = 0;
+    private long spillThreshold = 0L;
+    private Path spillDirectory;
+    private CrawlMetrics metrics;
 
     AtlassianClientBuilder() {
     }
@@ -50,16 +60,44 @@ public class AtlassianClientBuilder {
         return this;
     }
 
+    public AtlassianClientBuilder responseCache(final ResponseCache responseCache) {
+        this.responseCache = responseCache;
+        return this;
+    }
+
+    public AtlassianClientBuilder httpTransport(final HttpTransport httpTransport) {
+        this.httpTransport = httpTransport;
+        return this;
+    }
+
+    public AtlassianClientBuilder maxConcurrentRequests(final int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        return this;
+    }
+
+    public AtlassianClientBuilder spill(final long spillThreshold, final Path spillDirectory) {
+        this.spillThreshold = spillThreshold;
+        this.spillDirectory = spillDirectory;
+        return this;
+    }
+
+    public AtlassianClientBuilder metrics(final CrawlMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
     public AtlassianClient build() {
+        final HttpTransport transport = httpTransport != null ? httpTransport : new NetHttpTransport();
         final HttpRequestFactory httpRequestFactory;
         if (basicAuthentication != null) {
-            httpRequestFactory = new NetHttpTransport().createRequestFactory(basicAuthentication);
+            httpRequestFactory = transport.createRequestFactory(basicAuthentication);
         } else if (oAuthGetAccessToken != null) {
-            httpRequestFactory = new NetHttpTransport().createRequestFactory(oAuthGetAccessToken.createParameters());
+            httpRequestFactory = transport.createRequestFactory(oAuthGetAccessToken.createParameters());
         } else {
-            httpRequestFactory = new NetHttpTransport().createRequestFactory();
+            httpRequestFactory = transport.createRequestFactory();
         }
-        return new AtlassianClient(appHome, httpRequestFactory);
+        return new AtlassianClient(appHome, httpRequestFactory, responseCache, maxConcurrentRequests, spillThreshold, spillDirectory)
+                .metrics(metrics);
     }
 
     public interface OAuthTokenSupplier {
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+
+// HTTP/2 transport on java.net.http.HttpClient, so that concurrent requests share multiplexed connections
+public class JdkHttpTransport extends HttpTransport {
+
+    // set by HttpClient itself
+    protected static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    protected final HttpClient httpClient;
+
+    public JdkHttpTransport() {
+        // redirects are followed by com.google.api.client.http.HttpRequest
+        this(HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(20)).build());
+    }
+
+    public JdkHttpTransport(final HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    @Override
+    public boolean supportsMethod(final String method) {
+        return true;
+    }
+
+    @Override
+    protected LowLevelHttpRequest buildRequest(final String method, final String url) {
+        return new JdkHttpRequest(method, url);
+    }
+
+    protected class JdkHttpRequest extends LowLevelHttpRequest {
+        protected final String method;
+        protected final String url;
+        protected final List<String[]> headers = new ArrayList<>();
+        protected int readTimeout = 0;
+
+        protected JdkHttpRequest(final String method, final String url) {
+            this.method = method;
+            this.url = url;
+        }
+
+        @Override
+        public void addHeader(final String name, final String value) {
+            headers.add(new String[] { name, value });
+        }
+
+        @Override
+        public void setTimeout(final int connectTimeout, final int readTimeout) {
+            // the connect timeout belongs to the HttpClient
+            this.readTimeout = readTimeout;
+        }
+
+        @Override
+        public LowLevelHttpResponse execute() throws IOException {
+            final java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder(URI.create(url));
+            for (final String[] header : headers) {
+                if (!RESTRICTED_HEADERS.contains(header[0].toLowerCase(Locale.ROOT))) {
+                    builder.header(header[0], header[1]);
+                }
+            }
+            BodyPublisher publisher = BodyPublishers.noBody();
+            if (getStreamingContent() != null) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                getStreamingContent().writeTo(out);
+                publisher = BodyPublishers.ofByteArray(out.toByteArray());
+                if (getContentType() != null) {
+                    builder.header("Content-Type", getContentType());
+                }
+                if (getContentEncoding() != null) {
+                    builder.header("Content-Encoding", getContentEncoding());
+                }
+            }
+            builder.method(method, publisher);
+            if (readTimeout > 0) {
+                builder.timeout(Duration.ofMillis(readTimeout));
+            }
+            try {
+                return new JdkHttpResponse(httpClient.send(builder.build(), BodyHandlers.ofInputStream()));
+            } catch (final HttpTimeoutException e) {
+                // the same type as NetHttpTransport so that callers recognize a timeout
+                final SocketTimeoutException ste = new SocketTimeoutException(e.getMessage() + ": " + url);
+                ste.initCause(e);
+                throw ste;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                final InterruptedIOException ioe = new InterruptedIOException("Interrupted while requesting " + url);
+                ioe.initCause(e);
+                throw ioe;
+            }
+        }
+    }
+
+    protected static class JdkHttpResponse extends LowLevelHttpResponse {
+        protected final java.net.http.HttpResponse<InputStream> response;
+        protected final List<String[]> headers = new ArrayList<>();
+
+        protected JdkHttpResponse(final java.net.http.HttpResponse<InputStream> response) {
+            this.response = response;
+            for (final Map.Entry<String, List<String>> entry : response.headers().map().entrySet()) {
+                if (entry.getKey().startsWith(":")) {
+                    continue;
+                }
+                for (final String value : entry.getValue()) {
+                    headers.add(new String[] { entry.getKey(), value });
+                }
+            }
+        }
+
+        @Override
+        public InputStream getContent() {
+            return response.body();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return response.headers().firstValue("Content-Encoding").orElse(null);
+        }
+
+        @Override
+        public long getContentLength() {
+            return response.headers().firstValueAsLong("Content-Length").orElse(-1L);
+        }
+
+        @Override
+        public String getContentType() {
+            return response.headers().firstValue("Content-Type").orElse(null);
+        }
+
+        @Override
+        public String getStatusLine() {
+            return (response.version() == HttpClient.Version.HTTP_2 ? "HTTP/2" : "HTTP/1.1") + " " + response.statusCode();
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String getReasonPhrase() {
+            return null;
+        }
+
+        @Override
+        public int getHeaderCount() {
+            return headers.size();
+        }
+
+        @Override
+        public String getHeaderName(final int index) {
+            return headers.get(index)[0];
+        }
+
+        @Override
+        public String getHeaderValue(final int index) {
+            return headers.get(index)[1];
+        }
+
+        @Override
+        public void disconnect() throws IOException {
+            response.body().close();
+        }
+    }
+
+}
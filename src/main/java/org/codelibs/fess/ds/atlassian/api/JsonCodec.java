@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.filter.FilteringParserDelegate;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class JsonCodec {
+    private static final Logger logger = LoggerFactory.getLogger(JsonCodec.class);
+
+    public static final String MODE_PROPERTY = "fess.ds.atlassian.json.mode";
+
+    protected static final String AFTERBURNER_MODULE = "com.fasterxml.jackson.module.afterburner.AfterburnerModule";
+
+    protected static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {
+    };
+
+    protected static final TypeReference<List<Map<String, Object>>> LIST_TYPE = new TypeReference<List<Map<String, Object>>>() {
+    };
+
+    public enum Mode {
+        // one mapper and pre-built readers shared by all requests
+        SHARED,
+        // SHARED with the Afterburner module, if it is on the classpath
+        AFTERBURNER,
+        // a new mapper per call, as before, to compare against
+        PER_CALL;
+    }
+
+    private static volatile JsonCodec instance = new JsonCodec(getDefaultMode());
+
+    protected final Mode mode;
+    protected final ObjectMapper mapper;
+    protected final ObjectReader mapReader;
+    protected final ObjectReader listReader;
+
+    protected JsonCodec(final Mode mode) {
+        this.mapper = new ObjectMapper();
+        this.mode = mode == Mode.AFTERBURNER && !registerAfterburner(mapper) ? Mode.SHARED : mode;
+        this.mapReader = mapper.readerFor(MAP_TYPE);
+        this.listReader = mapper.readerFor(LIST_TYPE);
+    }
+
+    public static JsonCodec getInstance() {
+        return instance;
+    }
+
+    public static void setMode(final Mode mode) {
+        instance = new JsonCodec(mode);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public Map<String, Object> readMap(final String json) throws IOException {
+        if (mode == Mode.PER_CALL) {
+            return new ObjectMapper().readValue(json, MAP_TYPE);
+        }
+        return mapReader.readValue(json);
+    }
+
+    public List<Map<String, Object>> readList(final String json) throws IOException {
+        if (mode == Mode.PER_CALL) {
+            return new ObjectMapper().readValue(json, LIST_TYPE);
+        }
+        return listReader.readValue(json);
+    }
+
+    // parses the stream without buffering it, materializing only the values selected by the filter
+    public Map<String, Object> readMap(final InputStream in, final JsonPathFilter filter) throws IOException {
+        final ObjectMapper objectMapper = mode == Mode.PER_CALL ? new ObjectMapper() : mapper;
+        try (JsonParser parser = createParser(objectMapper, in, filter)) {
+            if (parser.nextToken() == null) {
+                // nothing was selected
+                return new HashMap<>();
+            }
+            return mode == Mode.PER_CALL ? objectMapper.readValue(parser, MAP_TYPE) : mapReader.readValue(parser);
+        }
+    }
+
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    protected JsonParser createParser(final ObjectMapper objectMapper, final InputStream in, final JsonPathFilter filter)
+            throws IOException {
+        final JsonParser parser = objectMapper.getFactory().createParser(in);
+        if (filter == null) {
+            return parser;
+        }
+        return new FilteringParserDelegate(parser, filter, true, true);
+    }
+
+    protected static Mode getDefaultMode() {
+        final String value = System.getProperty(MODE_PROPERTY);
+        if (value == null || value.isEmpty()) {
+            return Mode.SHARED;
+        }
+        try {
+            return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (final IllegalArgumentException e) {
+            logger.warn("Unknown " + MODE_PROPERTY + ": " + value);
+            return Mode.SHARED;
+        }
+    }
+
+    protected static boolean registerAfterburner(final ObjectMapper mapper) {
+        // jackson-module-afterburner is optional, so it is loaded only when fess provides it
+        try {
+            final Class<?> clazz = Class.forName(AFTERBURNER_MODULE, true, JsonCodec.class.getClassLoader());
+            mapper.registerModule((Module) clazz.getDeclaredConstructor().newInstance());
+            return true;
+        } catch (final ClassNotFoundException e) {
+            logger.warn("Afterburner is not available, use the shared mapper.");
+        } catch (final ReflectiveOperationException | LinkageError e) {
+            logger.warn("Failed to load Afterburner, use the shared mapper.", e);
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.api;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.filter.TokenFilter;
+
+public class JsonPathFilter extends TokenFilter {
+
+    protected final Map<String, JsonPathFilter> children = new HashMap<>();
+
+    protected boolean terminal = false;
+
+    protected String key;
+
+    protected JsonPathFilter() {
+    }
+
+    // paths are dot-separated property names; arrays are transparent, so "results.id" selects the id of every result
+    public static JsonPathFilter create(final String root, final String... paths) {
+        final JsonPathFilter filter = new JsonPathFilter();
+        for (final String path : paths) {
+            if (path != null && !path.isEmpty()) {
+                filter.add(root == null ? path : root + "." + path);
+            }
+        }
+        filter.key = root + ":" + String.join(",", paths);
+        return filter;
+    }
+
+    // selects paths from the top of the response as well, e.g. the paging fields beside the results
+    public JsonPathFilter include(final String... paths) {
+        for (final String path : paths) {
+            add(path);
+        }
+        key = key + "+" + String.join(",", paths);
+        return this;
+    }
+
+    // identifies the selection, so that requests with different filters are not shared
+    public String getKey() {
+        return key;
+    }
+
+    protected void add(final String path) {
+        JsonPathFilter node = this;
+        for (final String name : path.split("\\.")) {
+            node = node.children.computeIfAbsent(name, k -> new JsonPathFilter());
+        }
+        node.terminal = true;
+    }
+
+    @Override
+    public TokenFilter includeProperty(final String name) {
+        final JsonPathFilter child = children.get(name);
+        if (child == null) {
+            return null;
+        }
+        return child.terminal ? TokenFilter.INCLUDE_ALL : child;
+    }
+
+    @Override
+    public TokenFilter includeElement(final int index) {
+        return this;
+    }
+
+    @Override
+    public TokenFilter includeRootValue(final int index) {
+        return this;
+    }
+
+    @Override
+    protected boolean _includeScalar() {
+        // a scalar where an object is expected is not selected
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "JsonPathFilter " + children.keySet();
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.api;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+public class MetadataCache<K, V> {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    public static final long DEFAULT_TTL = 10L * 60L * 1000L;
+
+    protected final int maxSize;
+    protected final long ttl;
+    protected final Map<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    protected long hitCount = 0;
+    protected long loadCount = 0;
+
+    public MetadataCache(final int maxSize, final long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+    }
+
+    // concurrent callers of the same key wait for a single load instead of requesting it again
+    public V get(final K key, final Function<K, V> loader) {
+        final CompletableFuture<V> future;
+        boolean owner = false;
+        synchronized (this) {
+            final Entry<V> entry = entries.get(key);
+            if (entry != null && !entry.isExpired(ttl)) {
+                hitCount++;
+                future = entry.future;
+            } else {
+                loadCount++;
+                future = new CompletableFuture<>();
+                entries.put(key, new Entry<>(future));
+                owner = true;
+                evict();
+            }
+        }
+        if (owner) {
+            try {
+                future.complete(loader.apply(key));
+            } catch (final Throwable t) {
+                synchronized (this) {
+                    // failures are not cached
+                    final Entry<V> entry = entries.get(key);
+                    if (entry != null && entry.future == future) {
+                        entries.remove(key);
+                    }
+                }
+                // waiters must not block on a load that ended with an Error
+                future.completeExceptionally(t);
+                throw t;
+            }
+        }
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getLoadCount() {
+        return loadCount;
+    }
+
+    protected void evict() {
+        final Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    protected static class Entry<V> {
+        protected final CompletableFuture<V> future;
+        protected final long time = System.currentTimeMillis();
+
+        protected Entry(final CompletableFuture<V> future) {
+            this.future = future;
+        }
+
+        protected boolean isExpired(final long ttl) {
+            // a load in progress is never expired
+            return future.isDone() && System.currentTimeMillis() - time >= ttl;
+        }
+    }
+
+}
@@ -15,8 +15,18 @@
  */
 package org.codelibs.fess.ds.atlassian.api;
 
+import java.io.InputStream;
+import java.util.Scanner;
+
 public abstract class Request {
 
     public abstract Response execute();
 
+    protected static String readContent(final InputStream in) {
+        try (final Scanner s = new Scanner(in, "UTF-8")) {
+            s.useDelimiter("\\A");
+            return s.hasNext() ? s.next() : "";
+        }
+    }
+
 }
\ No newline at end of file
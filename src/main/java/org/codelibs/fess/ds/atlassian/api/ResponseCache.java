@@ -0,0 +1,258 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.api;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ResponseCache implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    protected static final int MAGIC = 0x41545243;
+    protected static final int FORMAT_VERSION = 1;
+    protected static final String SUFFIX = ".response";
+    // fields, projects and spaces; search results, contents and comments are too large and change too often
+    public static final String DEFAULT_PATH_PATTERN = ".*/rest/api/[^/]+/(field|project|space)(/[^/]+)?";
+
+    protected final Path directory;
+    protected final long maxSize;
+    protected final long maxEntrySize;
+    protected final Pattern pathPattern;
+    protected final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    protected long size = 0;
+    protected long hitCount = 0;
+    protected long missCount = 0;
+
+    public ResponseCache(final Path directory, final long maxSize, final long maxEntrySize) {
+        this(directory, maxSize, maxEntrySize, Pattern.compile(DEFAULT_PATH_PATTERN));
+    }
+
+    public ResponseCache(final Path directory, final long maxSize, final long maxEntrySize, final Pattern pathPattern) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.maxEntrySize = Math.min(maxSize, maxEntrySize);
+        this.pathPattern = pathPattern;
+        load();
+    }
+
+    public boolean isCacheable(final String path) {
+        return path != null && pathPattern.matcher(path).matches();
+    }
+
+    public synchronized Entry get(final String url) {
+        return entries.get(url);
+    }
+
+    // the body of an entry returned by get, or null if it was evicted
+    public synchronized byte[] getBody(final Entry entry) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry.path)))) {
+            readHeader(in);
+            final byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return body;
+        } catch (final IOException e) {
+            logger.warn("Failed to read " + entry.path, e);
+            remove(entry.url);
+            return null;
+        }
+    }
+
+    public synchronized void put(final String url, final String etag, final String lastModified, final byte[] body) {
+        if (body.length > maxEntrySize) {
+            return;
+        }
+        final Path path = directory.resolve(toFileName(url));
+        try {
+            Files.createDirectories(directory);
+            final Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(url);
+                out.writeUTF(etag != null ? etag : "");
+                out.writeUTF(lastModified != null ? lastModified : "");
+                out.writeInt(body.length);
+                out.write(body);
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            logger.warn("Failed to save " + path, e);
+            return;
+        }
+        final Entry old = entries.put(url, new Entry(url, etag, lastModified, body.length, path));
+        if (old != null) {
+            size -= old.size;
+        }
+        size += body.length;
+        evict();
+    }
+
+    public synchronized void hit() {
+        hitCount++;
+    }
+
+    public synchronized void miss() {
+        missCount++;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public long getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() {
+        logger.info("Response cache: " + directory + " (entries: " + entries.size() + ", size: " + size + ", hit: " + hitCount
+                + ", miss: " + missCount + ")");
+    }
+
+    protected void remove(final String url) {
+        final Entry entry = entries.remove(url);
+        if (entry != null) {
+            size -= entry.size;
+            delete(entry.path);
+        }
+    }
+
+    protected void evict() {
+        final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            final Entry entry = iterator.next().getValue();
+            size -= entry.size;
+            iterator.remove();
+            delete(entry.path);
+        }
+    }
+
+    protected void delete(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (final IOException e) {
+            logger.warn("Failed to delete " + path, e);
+        }
+    }
+
+    protected void load() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        final List<Entry> loaded = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (final Path path : stream) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                    final String[] header = readHeader(in);
+                    loaded.add(new Entry(header[0], header[1], header[2], in.readInt(), path));
+                } catch (final IOException e) {
+                    logger.warn("Ignore broken response cache: " + path, e);
+                    delete(path);
+                }
+            }
+        } catch (final IOException e) {
+            logger.warn("Failed to load " + directory, e);
+            return;
+        }
+        // least recently written first
+        loaded.sort((a, b) -> Long.compare(a.path.toFile().lastModified(), b.path.toFile().lastModified()));
+        for (final Entry entry : loaded) {
+            entries.put(entry.url, entry);
+            size += entry.size;
+        }
+        evict();
+    }
+
+    protected String[] readHeader(final DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unknown response cache format.");
+        }
+        final String url = in.readUTF();
+        final String etag = in.readUTF();
+        final String lastModified = in.readUTF();
+        return new String[] { url, etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified };
+    }
+
+    protected String toFileName(final String url) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder buf = new StringBuilder(digest.length * 2 + SUFFIX.length());
+            for (final byte b : digest) {
+                buf.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return buf.append(SUFFIX).toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    public static class Entry {
+        protected final String url;
+        protected final String etag;
+        protected final String lastModified;
+        protected final long size;
+        protected final Path path;
+
+        protected Entry(final String url, final String etag, final String lastModified, final long size, final Path path) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.path = path;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
+
+}
@@ -15,9 +15,16 @@
  */
 package org.codelibs.fess.ds.atlassian.api.confluence;
 
+import java.io.IOException;
+import java.util.Map;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpContent;
 import com.google.api.client.http.HttpRequestFactory;
 
 import org.codelibs.fess.ds.atlassian.api.AtlassianClient;
+import org.codelibs.fess.ds.atlassian.api.AtlassianClient.ResponseParser;
+import org.codelibs.fess.ds.atlassian.api.MetadataCache;
 import org.codelibs.fess.ds.atlassian.api.confluence.content.GetContentRequest;
 import org.codelibs.fess.ds.atlassian.api.confluence.content.GetContentsRequest;
 import org.codelibs.fess.ds.atlassian.api.confluence.content.child.GetAttachmentsOfContentRequest;
@@ -29,18 +36,42 @@ public class ConfluenceClient {
 
     private final AtlassianClient client;
 
+    private MetadataCache<String, Map<String, Object>> spaceCache =
+            new MetadataCache<>(MetadataCache.DEFAULT_MAX_SIZE, MetadataCache.DEFAULT_TTL);
+
     public ConfluenceClient(final AtlassianClient client) {
         this.client = client;
     }
 
+    public ConfluenceClient metadataCache(final int maxSize, final long ttl) {
+        spaceCache = new MetadataCache<>(maxSize, ttl);
+        return this;
+    }
+
     public String confluenceHome() {
         return client.appHome();
     }
 
+    public AtlassianClient client() {
+        return client;
+    }
+
     public HttpRequestFactory request() {
         return client.request();
     }
 
+    public <T> T get(final GenericUrl url, final ResponseParser<T> parser) throws IOException {
+        return client.get(url, null, parser);
+    }
+
+    public <T> T get(final GenericUrl url, final String variant, final ResponseParser<T> parser) throws IOException {
+        return client.get(url, variant, parser);
+    }
+
+    public <T> T post(final GenericUrl url, final HttpContent content, final ResponseParser<T> parser) throws IOException {
+        return client.post(url, content, parser);
+    }
+
     public GetSpacesRequest getSpaces() {
         return new GetSpacesRequest(this);
     }
@@ -49,6 +80,10 @@ public class ConfluenceClient {
         return new GetSpaceRequest(this, spaceKey);
     }
 
+    public Map<String, Object> getCachedSpace(final String spaceKey) {
+        return spaceCache.get(spaceKey, key -> getSpace(key).execute().getSpace());
+    }
+
     public GetContentsRequest getContents() {
         return new GetContentsRequest(this);
     }
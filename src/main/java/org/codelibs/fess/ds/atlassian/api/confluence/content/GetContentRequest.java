@@ -16,17 +16,15 @@
 package org.codelibs.fess.ds.atlassian.api.confluence.content;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
-import java.util.Scanner;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.http.GenericUrl;
-import com.google.api.client.http.HttpRequest;
-import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpResponseException;
 
 import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.codelibs.fess.ds.atlassian.api.JsonCodec;
+import org.codelibs.fess.ds.atlassian.api.JsonPathFilter;
 import org.codelibs.fess.ds.atlassian.api.confluence.ConfluenceClient;
 import org.codelibs.fess.ds.atlassian.api.confluence.ConfluenceRequest;
 
@@ -35,6 +33,7 @@ public class GetContentRequest extends ConfluenceRequest {
     private String id, status;
     private Integer version;
     private String[] expand;
+    private JsonPathFilter filter;
 
     public GetContentRequest(ConfluenceClient confluenceClient, String id) {
         super(confluenceClient);
@@ -43,18 +42,9 @@ public class GetContentRequest extends ConfluenceRequest {
 
     @Override
     public GetContentResponse execute() {
-        String result = "";
         final GenericUrl url = buildUrl(confluenceClient.confluenceHome(), id, status, version, expand);
         try {
-            final HttpRequest request = confluenceClient.request().buildGetRequest(url);
-            final HttpResponse response = request.execute();
-            if (response.getStatusCode() != 200) {
-                throw new HttpResponseException(response);
-            }
-            final Scanner s = new Scanner(response.getContent());
-            s.useDelimiter("\\A");
-            result = s.hasNext() ? s.next() : "";
-            s.close();
+            return confluenceClient.get(url, filter != null ? filter.getKey() : null, in -> fromJson(in, filter));
         } catch (HttpResponseException e) {
             if (e.getStatusCode() == 404) {
                 throw new AtlassianDataStoreException(
@@ -66,7 +56,6 @@ public class GetContentRequest extends ConfluenceRequest {
         } catch (IOException e) {
             throw new AtlassianDataStoreException("Failed to request: " + url, e);
         }
-        return fromJson(result);
     }
 
     public GetContentRequest status(String status) {
@@ -84,17 +73,28 @@ public class GetContentRequest extends ConfluenceRequest {
         return this;
     }
 
+    public GetContentRequest filter(String... paths) {
+        this.filter = paths == null ? null : JsonPathFilter.create(null, paths);
+        return this;
+    }
+
     public static GetContentResponse fromJson(String json) {
-        final ObjectMapper mapper = new ObjectMapper();
         try {
-            final Map<String, Object> content = mapper.readValue(json, new TypeReference<Map<String, Object>>() {
-            });
+            final Map<String, Object> content = JsonCodec.getInstance().readMap(json);
             return new GetContentResponse(content);
         } catch (IOException e) {
             throw new AtlassianDataStoreException("Failed to parse content from: " + json, e);
         }
     }
 
+    public static GetContentResponse fromJson(InputStream in, JsonPathFilter filter) {
+        try {
+            return new GetContentResponse(JsonCodec.getInstance().readMap(in, filter));
+        } catch (IOException e) {
+            throw new AtlassianDataStoreException("Failed to parse content from the response.", e);
+        }
+    }
+
     protected GenericUrl buildUrl(final String confluenceHome, final String id, final String status, final Integer version,
             final String[] expand) {
         final GenericUrl url = new GenericUrl(confluenceHome + "/rest/api/latest/content/" + id);
@@ -16,27 +16,29 @@
 package org.codelibs.fess.ds.atlassian.api.confluence.content;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.http.GenericUrl;
-import com.google.api.client.http.HttpRequest;
-import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpResponseException;
 
 import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.codelibs.fess.ds.atlassian.api.JsonCodec;
+import org.codelibs.fess.ds.atlassian.api.JsonPathFilter;
 import org.codelibs.fess.ds.atlassian.api.confluence.ConfluenceClient;
 import org.codelibs.fess.ds.atlassian.api.confluence.ConfluenceRequest;
 
 public class GetContentsRequest extends ConfluenceRequest {
 
+    // kept by the filter, as the end of the listing is decided from them
+    protected static final String[] PAGING_PATHS = { "start", "limit", "size", "_links.next" };
+
     private String type, spaceKey, title, status, postingDay;
     private String[] expand;
     private Integer start, limit;
+    private JsonPathFilter filter;
 
     public GetContentsRequest(ConfluenceClient confluenceClient) {
         super(confluenceClient);
@@ -44,18 +46,9 @@ public class GetContentsRequest extends ConfluenceRequest {
 
     @Override
     public GetContentsResponse execute() {
-        String result = "";
         final GenericUrl url = buildUrl(confluenceClient.confluenceHome(), type, spaceKey, title, status, postingDay, expand, start, limit);
         try {
-            final HttpRequest request = confluenceClient.request().buildGetRequest(url);
-            final HttpResponse response = request.execute();
-            if (response.getStatusCode() != 200) {
-                throw new HttpResponseException(response);
-            }
-            final Scanner s = new Scanner(response.getContent());
-            s.useDelimiter("\\A");
-            result = s.hasNext() ? s.next() : "";
-            s.close();
+            return confluenceClient.get(url, filter != null ? filter.getKey() : null, in -> fromJson(in, filter));
         } catch (HttpResponseException e) {
             if (e.getStatusCode() == 404) {
                 throw new AtlassianDataStoreException("You don't have permission to view the content.", e);
@@ -65,7 +58,6 @@ public class GetContentsRequest extends ConfluenceRequest {
         } catch (IOException e) {
             throw new AtlassianDataStoreException("Failed to request: " + url, e);
         }
-        return fromJson(result);
     }
 
     public GetContentsRequest type(String type) {
@@ -108,19 +100,49 @@ public class GetContentsRequest extends ConfluenceRequest {
         return this;
     }
 
+    public GetContentsRequest filter(String... paths) {
+        this.filter = paths == null ? null : JsonPathFilter.create("results", paths).include(PAGING_PATHS);
+        return this;
+    }
+
     public static GetContentsResponse fromJson(String json) {
-        final ObjectMapper mapper = new ObjectMapper();
         final List<Map<String, Object>> contents = new ArrayList<>();
         try {
-            final Map<String, Object> map = mapper.readValue(json, new TypeReference<Map<String, Object>>() {
-            });
+            final Map<String, Object> map = JsonCodec.getInstance().readMap(json);
             @SuppressWarnings("unchecked")
             final List<Map<String, Object>> results = (List<Map<String, Object>>) map.get("results");
             contents.addAll(results);
+            return newResponse(contents, map);
         } catch (IOException e) {
             throw new AtlassianDataStoreException("Failed to parse contents from: " + json, e);
         }
-        return new GetContentsResponse(contents);
+    }
+
+    public static GetContentsResponse fromJson(InputStream in, JsonPathFilter filter) {
+        final List<Map<String, Object>> contents = new ArrayList<>();
+        try {
+            final Map<String, Object> map = JsonCodec.getInstance().readMap(in, filter);
+            @SuppressWarnings("unchecked")
+            final List<Map<String, Object>> results = (List<Map<String, Object>>) map.get("results");
+            if (results != null) {
+                contents.addAll(results);
+            }
+            return newResponse(contents, map);
+        } catch (IOException e) {
+            throw new AtlassianDataStoreException("Failed to parse contents from the response.", e);
+        }
+    }
+
+    protected static GetContentsResponse newResponse(final List<Map<String, Object>> contents, final Map<String, Object> map) {
+        final Object links = map.get("_links");
+        final Object next = links instanceof Map ? ((Map<?, ?>) links).get("next") : null;
+        return new GetContentsResponse(contents, getInteger(map, "start"), getInteger(map, "limit"), getInteger(map, "size"),
+                next instanceof String ? (String) next : null);
+    }
+
+    protected static Integer getInteger(final Map<String, Object> map, final String key) {
+        final Object value = map.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : null;
     }
 
     protected GenericUrl buildUrl(final String confluenceHome, final String type, final String spaceKey, final String title, final String status,
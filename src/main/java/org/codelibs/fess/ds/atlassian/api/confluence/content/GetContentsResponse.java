@@ -24,12 +24,52 @@ public class GetContentsResponse extends Response {
 
     protected final List<Map<String, Object>> contents;
 
+    protected final Integer start, limit, size;
+
+    protected final String next;
+
     public GetContentsResponse(List<Map<String, Object>> contents) {
+        this(contents, null, null, null, null);
+    }
+
+    public GetContentsResponse(List<Map<String, Object>> contents, Integer start, Integer limit, Integer size, String next) {
         this.contents = contents;
+        this.start = start;
+        this.limit = limit;
+        this.size = size;
+        this.next = next;
     }
 
     public List<Map<String, Object>> getContents() {
         return contents;
     }
 
+    public Integer getStart() {
+        return start;
+    }
+
+    // the page size applied by the server, which may be smaller than the requested one
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public Integer getSize() {
+        return size;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    // the server links the next page while there is one, even when it caps the limit below the requested one
+    public boolean isLast(final int requested) {
+        if (contents.isEmpty()) {
+            return true;
+        }
+        if (size != null || next != null) {
+            return next == null;
+        }
+        return contents.size() < (limit != null ? limit : requested);
+    }
+
 }
\ No newline at end of file
@@ -19,16 +19,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.http.GenericUrl;
-import com.google.api.client.http.HttpRequest;
-import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpResponseException;
 
 import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.codelibs.fess.ds.atlassian.api.JsonCodec;
 import org.codelibs.fess.ds.atlassian.api.confluence.ConfluenceClient;
 import org.codelibs.fess.ds.atlassian.api.confluence.ConfluenceRequest;
 
@@ -46,18 +42,9 @@ public class GetAttachmentsOfContentRequest extends ConfluenceRequest {
 
     @Override
     public GetAttachmentsOfContentResponse execute() {
-        String result = "";
         final GenericUrl url = buildUrl(confluenceClient.confluenceHome(), id, start, limit, filename, mediaType, expand);
         try {
-            final HttpRequest request = confluenceClient.request().buildGetRequest(url);
-            final HttpResponse response = request.execute();
-            if (response.getStatusCode() != 200) {
-                throw new HttpResponseException(response);
-            }
-            final Scanner s = new Scanner(response.getContent());
-            s.useDelimiter("\\A");
-            result = s.hasNext() ? s.next() : "";
-            s.close();
+            return confluenceClient.get(url, in -> fromJson(readContent(in)));
         } catch (HttpResponseException e) {
             if (e.getStatusCode() == 404) {
                 throw new AtlassianDataStoreException(
@@ -69,7 +56,6 @@ public class GetAttachmentsOfContentRequest extends ConfluenceRequest {
         } catch (IOException e) {
             throw new AtlassianDataStoreException("Failed to request: " + url, e);
         }
-        return fromJson(result);
     }
 
     public GetAttachmentsOfContentRequest start(int start) {
@@ -98,11 +84,9 @@ public class GetAttachmentsOfContentRequest extends ConfluenceRequest {
     }
 
     public static GetAttachmentsOfContentResponse fromJson(String json) {
-        final ObjectMapper mapper = new ObjectMapper();
         final List<Map<String, Object>> attachments = new ArrayList<>();
         try {
-            final Map<String, Object> map = mapper.readValue(json, new TypeReference<Map<String, Object>>() {
-            });
+            final Map<String, Object> map = JsonCodec.getInstance().readMap(json);
             @SuppressWarnings("unchecked")
             final List<Map<String, Object>> results = (List<Map<String, Object>>) map.get("results");
             attachments.addAll(results);
@@ -16,19 +16,17 @@
 package org.codelibs.fess.ds.atlassian.api.confluence.content.child;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.http.GenericUrl;
-import com.google.api.client.http.HttpRequest;
-import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpResponseException;
 
 import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.codelibs.fess.ds.atlassian.api.JsonCodec;
+import org.codelibs.fess.ds.atlassian.api.JsonPathFilter;
 import org.codelibs.fess.ds.atlassian.api.confluence.ConfluenceClient;
 import org.codelibs.fess.ds.atlassian.api.confluence.ConfluenceRequest;
 
@@ -38,6 +36,7 @@ public class GetCommentsOfContentRequest extends ConfluenceRequest {
     private Integer parentVersion, start, limit;
     private String location, depth;
     private String[] expand;
+    private JsonPathFilter filter;
 
     public GetCommentsOfContentRequest(ConfluenceClient confluenceClient, String id) {
         super(confluenceClient);
@@ -46,18 +45,9 @@ public class GetCommentsOfContentRequest extends ConfluenceRequest {
 
     @Override
     public GetCommentsOfContentResponse execute() {
-        String result = "";
         final GenericUrl url = buildUrl(confluenceClient.confluenceHome(), id, parentVersion, start, limit, location, depth, expand);
         try {
-            final HttpRequest request = confluenceClient.request().buildGetRequest(url);
-            final HttpResponse response = request.execute();
-            if (response.getStatusCode() != 200) {
-                throw new HttpResponseException(response);
-            }
-            final Scanner s = new Scanner(response.getContent());
-            s.useDelimiter("\\A");
-            result = s.hasNext() ? s.next() : "";
-            s.close();
+            return confluenceClient.get(url, filter != null ? filter.getKey() : null, in -> fromJson(in, filter));
         } catch (HttpResponseException e) {
             if (e.getStatusCode() == 404) {
                 throw new AtlassianDataStoreException(
@@ -69,7 +59,6 @@ public class GetCommentsOfContentRequest extends ConfluenceRequest {
         } catch (IOException e) {
             throw new AtlassianDataStoreException("Failed to request: " + url, e);
         }
-        return fromJson(result);
     }
 
     public GetCommentsOfContentRequest parentVersion(int parentVersion) {
@@ -102,12 +91,15 @@ public class GetCommentsOfContentRequest extends ConfluenceRequest {
         return this;
     }
 
+    public GetCommentsOfContentRequest filter(String... paths) {
+        this.filter = paths == null ? null : JsonPathFilter.create("results", paths);
+        return this;
+    }
+
     public static GetCommentsOfContentResponse fromJson(String json) {
-        final ObjectMapper mapper = new ObjectMapper();
         final List<Map<String, Object>> comments = new ArrayList<>();
         try {
-            final Map<String, Object> map = mapper.readValue(json, new TypeReference<Map<String, Object>>() {
-            });
+            final Map<String, Object> map = JsonCodec.getInstance().readMap(json);
             @SuppressWarnings("unchecked")
             final List<Map<String, Object>> results = (List<Map<String, Object>>) map.get("results");
             comments.addAll(results);
@@ -117,6 +109,21 @@ public class GetCommentsOfContentRequest extends ConfluenceRequest {
         return new GetCommentsOfContentResponse(comments);
     }
 
+    public static GetCommentsOfContentResponse fromJson(InputStream in, JsonPathFilter filter) {
+        final List<Map<String, Object>> comments = new ArrayList<>();
+        try {
+            final Map<String, Object> map = JsonCodec.getInstance().readMap(in, filter);
+            @SuppressWarnings("unchecked")
+            final List<Map<String, Object>> results = (List<Map<String, Object>>) map.get("results");
+            if (results != null) {
+                comments.addAll(results);
+            }
+        } catch (IOException e) {
+            throw new AtlassianDataStoreException("Failed to parse comments from the response.", e);
+        }
+        return new GetCommentsOfContentResponse(comments);
+    }
+
     protected GenericUrl buildUrl(final String confluenceHome, final String id, final Integer parentVersion, final Integer start,
             final Integer limit, final String location, final String depth, final String[] expand) {
         final GenericUrl url = new GenericUrl(confluenceHome + "/rest/api/latest/content/" + id + "/child/comment");
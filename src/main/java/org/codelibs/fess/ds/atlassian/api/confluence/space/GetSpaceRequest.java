@@ -17,16 +17,12 @@ package org.codelibs.fess.ds.atlassian.api.confluence.space;
 
 import java.io.IOException;
 import java.util.Map;
-import java.util.Scanner;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.http.GenericUrl;
-import com.google.api.client.http.HttpRequest;
-import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpResponseException;
 
 import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.codelibs.fess.ds.atlassian.api.JsonCodec;
 import org.codelibs.fess.ds.atlassian.api.confluence.ConfluenceClient;
 import org.codelibs.fess.ds.atlassian.api.confluence.ConfluenceRequest;
 
@@ -42,18 +38,9 @@ public class GetSpaceRequest extends ConfluenceRequest {
 
     @Override
     public GetSpaceResponse execute() {
-        String result = "";
         final GenericUrl url = buildUrl(confluenceClient.confluenceHome(), spaceKey, expand);
         try {
-            final HttpRequest request = confluenceClient.request().buildGetRequest(url);
-            final HttpResponse response = request.execute();
-            if (response.getStatusCode() != 200) {
-                throw new HttpResponseException(response);
-            }
-            final Scanner s = new Scanner(response.getContent());
-            s.useDelimiter("\\A");
-            result = s.hasNext() ? s.next() : "";
-            s.close();
+            return confluenceClient.get(url, in -> fromJson(readContent(in)));
         } catch (HttpResponseException e) {
             if (e.getStatusCode() == 404) {
                 throw new AtlassianDataStoreException(
@@ -66,7 +53,6 @@ public class GetSpaceRequest extends ConfluenceRequest {
         } catch (IOException e) {
             throw new AtlassianDataStoreException("Failed to request: " + url, e);
         }
-        return fromJson(result);
     }
 
     public GetSpaceRequest expand(String... expand) {
@@ -75,10 +61,8 @@ public class GetSpaceRequest extends ConfluenceRequest {
     }
 
     public static GetSpaceResponse fromJson(String json) {
-        final ObjectMapper mapper = new ObjectMapper();
         try {
-            final Map<String, Object> space = mapper.readValue(json, new TypeReference<Map<String, Object>>() {
-            });
+            final Map<String, Object> space = JsonCodec.getInstance().readMap(json);
             return new GetSpaceResponse(space);
         } catch (IOException e) {
             throw new AtlassianDataStoreException("Failed to parse space from: " + json, e);
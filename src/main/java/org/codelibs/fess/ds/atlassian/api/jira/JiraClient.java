@@ -15,31 +15,78 @@
  */
 package org.codelibs.fess.ds.atlassian.api.jira;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Map;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpContent;
 import com.google.api.client.http.HttpRequestFactory;
 
+import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
 import org.codelibs.fess.ds.atlassian.api.AtlassianClient;
+import org.codelibs.fess.ds.atlassian.api.AtlassianClient.ResponseParser;
+import org.codelibs.fess.ds.atlassian.api.JsonCodec;
+import org.codelibs.fess.ds.atlassian.api.MetadataCache;
+import org.codelibs.fess.ds.atlassian.api.jira.field.GetFieldsRequest;
+import org.codelibs.fess.ds.atlassian.api.jira.field.GetFieldsResponse;
 import org.codelibs.fess.ds.atlassian.api.jira.issue.GetCommentsRequest;
 import org.codelibs.fess.ds.atlassian.api.jira.issue.GetIssueRequest;
+import org.codelibs.fess.ds.atlassian.api.jira.issue.GetIssuesRequest;
 import org.codelibs.fess.ds.atlassian.api.jira.project.GetProjectRequest;
 import org.codelibs.fess.ds.atlassian.api.jira.project.GetProjectsRequest;
 import org.codelibs.fess.ds.atlassian.api.jira.search.SearchRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class JiraClient {
+    private static final Logger logger = LoggerFactory.getLogger(JiraClient.class);
 
     private final AtlassianClient client;
 
+    // field metadata seen with the credentials of this client, never shared with another client
+    private volatile CachedFields cachedFields;
+
+    private MetadataCache<String, Map<String, Object>> projectCache =
+            new MetadataCache<>(MetadataCache.DEFAULT_MAX_SIZE, MetadataCache.DEFAULT_TTL);
+
     public JiraClient(final AtlassianClient client) {
         this.client = client;
     }
 
+    public JiraClient metadataCache(final int maxSize, final long ttl) {
+        projectCache = new MetadataCache<>(maxSize, ttl);
+        return this;
+    }
+
     public String jiraHome() {
         return client.appHome();
     }
 
+    public AtlassianClient client() {
+        return client;
+    }
+
     public HttpRequestFactory request() {
         return client.request();
     }
 
+    public <T> T get(final GenericUrl url, final ResponseParser<T> parser) throws IOException {
+        return client.get(url, null, parser);
+    }
+
+    public <T> T get(final GenericUrl url, final String variant, final ResponseParser<T> parser) throws IOException {
+        return client.get(url, variant, parser);
+    }
+
+    public <T> T post(final GenericUrl url, final HttpContent content, final ResponseParser<T> parser) throws IOException {
+        return client.post(url, content, parser);
+    }
+
     public GetProjectsRequest getProjects() {
         return new GetProjectsRequest(this);
     }
@@ -48,6 +95,10 @@ public class JiraClient {
         return new GetProjectRequest(this, projectIdOrKey);
     }
 
+    public Map<String, Object> getCachedProject(final String projectIdOrKey) {
+        return projectCache.get(projectIdOrKey, key -> getProject(key).execute().getProject());
+    }
+
     public SearchRequest search() {
         return new SearchRequest(this);
     }
@@ -56,8 +107,86 @@ public class JiraClient {
         return new GetIssueRequest(this, issueIdOrKey);
     }
 
+    public GetIssuesRequest getIssues(Collection<String> issueIdsOrKeys) {
+        return new GetIssuesRequest(this, issueIdsOrKeys);
+    }
+
     public GetCommentsRequest getComments(String issueIdOrKey) {
         return new GetCommentsRequest(this, issueIdOrKey);
     }
 
+    public GetFieldsRequest getFields() {
+        return new GetFieldsRequest(this);
+    }
+
+    // returns the field metadata fetched within ttl milliseconds, also from the file at path written by a previous run
+    public GetFieldsResponse getCachedFields(final long ttl, final Path path) {
+        CachedFields cached = cachedFields;
+        if (cached != null && !cached.isExpired(ttl)) {
+            return cached.response;
+        }
+        synchronized (this) {
+            cached = cachedFields;
+            if (cached == null || cached.isExpired(ttl)) {
+                cached = loadFields(path, ttl);
+                if (cached == null) {
+                    cached = new CachedFields(getFields().execute(), System.currentTimeMillis());
+                    saveFields(path, cached.response);
+                }
+                cachedFields = cached;
+            }
+            return cached.response;
+        }
+    }
+
+    public void clearFieldCache() {
+        cachedFields = null;
+    }
+
+    protected CachedFields loadFields(final Path path, final long ttl) {
+        if (path == null || !Files.exists(path)) {
+            return null;
+        }
+        try {
+            final long lastModified = Files.getLastModifiedTime(path).toMillis();
+            if (System.currentTimeMillis() - lastModified >= ttl) {
+                return null;
+            }
+            return new CachedFields(GetFieldsRequest.fromJson(new String(Files.readAllBytes(path), StandardCharsets.UTF_8)), lastModified);
+        } catch (final IOException | AtlassianDataStoreException e) {
+            logger.warn("Failed to load " + path, e);
+            return null;
+        }
+    }
+
+    protected void saveFields(final Path path, final GetFieldsResponse response) {
+        if (path == null) {
+            return;
+        }
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            final Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(tempPath, JsonCodec.getInstance().getMapper().writeValueAsBytes(response.getFields()));
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            logger.warn("Failed to save " + path, e);
+        }
+    }
+
+    protected static class CachedFields {
+        protected final GetFieldsResponse response;
+        protected final long time;
+
+        protected CachedFields(final GetFieldsResponse response, final long time) {
+            this.response = response;
+            this.time = time;
+        }
+
+        protected boolean isExpired(final long ttl) {
+            return System.currentTimeMillis() - time >= ttl;
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.api.jira.field;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpResponseException;
+
+import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.codelibs.fess.ds.atlassian.api.JsonCodec;
+import org.codelibs.fess.ds.atlassian.api.jira.JiraClient;
+import org.codelibs.fess.ds.atlassian.api.jira.JiraRequest;
+
+public class GetFieldsRequest extends JiraRequest {
+
+    public GetFieldsRequest(JiraClient jiraClient) {
+        super(jiraClient);
+    }
+
+    @Override
+    public GetFieldsResponse execute() {
+        final GenericUrl url = buildUrl(jiraClient.jiraHome());
+        try {
+            return jiraClient.get(url, in -> fromJson(readContent(in)));
+        } catch (HttpResponseException e) {
+            throw new AtlassianDataStoreException("Content is not found: " + e.getStatusCode(), e);
+        } catch (IOException e) {
+            throw new AtlassianDataStoreException("Failed to request: " + url, e);
+        }
+    }
+
+    public static GetFieldsResponse fromJson(String json) {
+        final List<Map<String, Object>> fields = new ArrayList<>();
+        try {
+            fields.addAll(JsonCodec.getInstance().readList(json));
+        } catch (IOException e) {
+            throw new AtlassianDataStoreException("Failed to parse fields from: \"" + json + "\"", e);
+        }
+        return new GetFieldsResponse(fields);
+    }
+
+    protected GenericUrl buildUrl(final String jiraHome) {
+        return new GenericUrl(jiraHome + "/rest/api/latest/field");
+    }
+
+}
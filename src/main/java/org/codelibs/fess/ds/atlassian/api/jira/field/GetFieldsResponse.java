@@ -0,0 +1,49 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.api.jira.field;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codelibs.fess.ds.atlassian.api.Response;
+
+public class GetFieldsResponse extends Response {
+
+    protected final List<Map<String, Object>> fields;
+
+    public GetFieldsResponse(List<Map<String, Object>> fields) {
+        this.fields = fields;
+    }
+
+    public List<Map<String, Object>> getFields() {
+        return fields;
+    }
+
+    // name -> id, e.g. "Story Points" -> "customfield_10002"
+    public Map<String, String> getFieldIds() {
+        final Map<String, String> fieldIds = new HashMap<>();
+        for (final Map<String, Object> field : fields) {
+            final Object id = field.get("id");
+            final Object name = field.get("name");
+            if (id != null && name != null) {
+                fieldIds.putIfAbsent(name.toString(), id.toString());
+            }
+        }
+        return fieldIds;
+    }
+
+}
@@ -16,19 +16,17 @@
 package org.codelibs.fess.ds.atlassian.api.jira.issue;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.http.GenericUrl;
-import com.google.api.client.http.HttpRequest;
-import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpResponseException;
 
 import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.codelibs.fess.ds.atlassian.api.JsonCodec;
+import org.codelibs.fess.ds.atlassian.api.JsonPathFilter;
 import org.codelibs.fess.ds.atlassian.api.jira.JiraClient;
 import org.codelibs.fess.ds.atlassian.api.jira.JiraRequest;
 
@@ -39,6 +37,7 @@ public class GetCommentsRequest extends JiraRequest {
     private Integer maxResults;
     private String orderBy;
     private String[] expand;
+    private JsonPathFilter filter;
 
     public GetCommentsRequest(JiraClient jiraClient, String issueIdOrKey) {
         super(jiraClient);
@@ -47,18 +46,9 @@ public class GetCommentsRequest extends JiraRequest {
 
     @Override
     public GetCommentsResponse execute() {
-        String result = "";
         final GenericUrl url = buildUrl(jiraClient.jiraHome(), issueIdOrKey, startAt, maxResults, orderBy, expand);
         try {
-            final HttpRequest request = jiraClient.request().buildGetRequest(url);
-            final HttpResponse response = request.execute();
-            if (response.getStatusCode() != 200) {
-                throw new HttpResponseException(response);
-            }
-            final Scanner s = new Scanner(response.getContent());
-            s.useDelimiter("\\A");
-            result = s.hasNext() ? s.next() : "";
-            s.close();
+            return jiraClient.get(url, filter != null ? filter.getKey() : null, in -> fromJson(in, filter));
         } catch (HttpResponseException e) {
             if (e.getStatusCode() == 404) {
                 throw new AtlassianDataStoreException(
@@ -71,7 +61,6 @@ public class GetCommentsRequest extends JiraRequest {
         } catch (IOException e) {
             throw new AtlassianDataStoreException("Failed to request: " + url, e);
         }
-        return fromJson(result);
     }
 
     public GetCommentsRequest startAt(long startAt) {
@@ -94,12 +83,15 @@ public class GetCommentsRequest extends JiraRequest {
         return this;
     }
 
+    public GetCommentsRequest filter(String... paths) {
+        this.filter = paths == null ? null : JsonPathFilter.create("comments", paths);
+        return this;
+    }
+
     public static GetCommentsResponse fromJson(String json) {
-        final ObjectMapper mapper = new ObjectMapper();
         final List<Map<String, Object>> comments = new ArrayList<>();
         try {
-            final Map<String, Object> map = mapper.readValue(json, new TypeReference<Map<String, Object>>() {
-            });
+            final Map<String, Object> map = JsonCodec.getInstance().readMap(json);
             @SuppressWarnings("unchecked")
             final List<Map<String, Object>> results = (List<Map<String, Object>>) map.get("comments");
             comments.addAll(results);
@@ -109,6 +101,21 @@ public class GetCommentsRequest extends JiraRequest {
         return new GetCommentsResponse(comments);
     }
 
+    public static GetCommentsResponse fromJson(InputStream in, JsonPathFilter filter) {
+        final List<Map<String, Object>> comments = new ArrayList<>();
+        try {
+            final Map<String, Object> map = JsonCodec.getInstance().readMap(in, filter);
+            @SuppressWarnings("unchecked")
+            final List<Map<String, Object>> results = (List<Map<String, Object>>) map.get("comments");
+            if (results != null) {
+                comments.addAll(results);
+            }
+        } catch (IOException e) {
+            throw new AtlassianDataStoreException("Failed to parse comments from the response.", e);
+        }
+        return new GetCommentsResponse(comments);
+    }
+
     protected GenericUrl buildUrl(final String jiraHome, final String issueIdOrKey, final Long startAt, final Integer maxResults,
             final String orderBy, final String[] expand) {
         final GenericUrl url = new GenericUrl(jiraHome + "/rest/api/latest/issue/" + issueIdOrKey + "/comment");
@@ -16,17 +16,15 @@
 package org.codelibs.fess.ds.atlassian.api.jira.issue;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
-import java.util.Scanner;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.http.GenericUrl;
-import com.google.api.client.http.HttpRequest;
-import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpResponseException;
 
 import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.codelibs.fess.ds.atlassian.api.JsonCodec;
+import org.codelibs.fess.ds.atlassian.api.JsonPathFilter;
 import org.codelibs.fess.ds.atlassian.api.jira.JiraClient;
 import org.codelibs.fess.ds.atlassian.api.jira.JiraRequest;
 
@@ -34,6 +32,7 @@ public class GetIssueRequest extends JiraRequest {
 
     private final String issueIdOrKey;
     private String[] fields, expand, properties;
+    private JsonPathFilter filter;
 
     public GetIssueRequest(JiraClient jiraClient, String issueIdOrKey) {
         super(jiraClient);
@@ -42,18 +41,9 @@ public class GetIssueRequest extends JiraRequest {
 
     @Override
     public GetIssueResponse execute() {
-        String result = "";
         final GenericUrl url = buildUrl(jiraClient.jiraHome(), issueIdOrKey, fields, expand, properties);
         try {
-            final HttpRequest request = jiraClient.request().buildGetRequest(url);
-            final HttpResponse response = request.execute();
-            if (response.getStatusCode() != 200) {
-                throw new HttpResponseException(response);
-            }
-            final Scanner s = new Scanner(response.getContent());
-            s.useDelimiter("\\A");
-            result = s.hasNext() ? s.next() : "";
-            s.close();
+            return jiraClient.get(url, filter != null ? filter.getKey() : null, in -> fromJson(in, filter));
         } catch (HttpResponseException e) {
             if (e.getStatusCode() == 404) {
                 throw new AtlassianDataStoreException("The requested issue is not found, or the user does not have permission to view it.",
@@ -64,7 +54,6 @@ public class GetIssueRequest extends JiraRequest {
         } catch (IOException e) {
             throw new AtlassianDataStoreException("Failed to request: " + url, e);
         }
-        return fromJson(result);
     }
 
     public GetIssueRequest fields(String... fields) {
@@ -82,17 +71,28 @@ public class GetIssueRequest extends JiraRequest {
         return this;
     }
 
+    public GetIssueRequest filter(String... paths) {
+        this.filter = paths == null ? null : JsonPathFilter.create(null, paths);
+        return this;
+    }
+
     public static GetIssueResponse fromJson(String json) {
-        final ObjectMapper mapper = new ObjectMapper();
         try {
-            final Map<String, Object> issue = mapper.readValue(json, new TypeReference<Map<String, Object>>() {
-            });
+            final Map<String, Object> issue = JsonCodec.getInstance().readMap(json);
             return new GetIssueResponse(issue);
         } catch (IOException e) {
             throw new AtlassianDataStoreException("Failed to parse issue from: \"" + json + "\"", e);
         }
     }
 
+    public static GetIssueResponse fromJson(InputStream in, JsonPathFilter filter) {
+        try {
+            return new GetIssueResponse(JsonCodec.getInstance().readMap(in, filter));
+        } catch (IOException e) {
+            throw new AtlassianDataStoreException("Failed to parse issue from the response.", e);
+        }
+    }
+
     protected GenericUrl buildUrl(final String jiraHome, final String issueIdOrKey, final String[] fields, final String[] expand,
             final String[] properties) {
         final GenericUrl url = new GenericUrl(jiraHome + "/rest/api/latest/issue/" + issueIdOrKey);
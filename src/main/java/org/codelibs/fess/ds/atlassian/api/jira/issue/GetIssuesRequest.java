@@ -0,0 +1,188 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.api.jira.issue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.codelibs.fess.ds.atlassian.api.jira.JiraClient;
+import org.codelibs.fess.ds.atlassian.api.jira.JiraRequest;
+import org.codelibs.fess.ds.atlassian.api.jira.search.SearchRequest;
+import org.codelibs.fess.ds.atlassian.api.jira.search.SearchResponse;
+
+public class GetIssuesRequest extends JiraRequest {
+
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+    // keeps the JQL well below the common 8KB request line / body limits
+    public static final int DEFAULT_MAX_JQL_LENGTH = 4000;
+    public static final int DEFAULT_MAX_CONCURRENCY = 4;
+
+    private final Collection<String> issueIdsOrKeys;
+    private String[] fields, expand, paths;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int maxJqlLength = DEFAULT_MAX_JQL_LENGTH;
+    private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+
+    public GetIssuesRequest(JiraClient jiraClient, Collection<String> issueIdsOrKeys) {
+        super(jiraClient);
+        this.issueIdsOrKeys = issueIdsOrKeys;
+    }
+
+    @Override
+    public GetIssuesResponse execute() {
+        final List<String> jqls = buildJqls(issueIdsOrKeys, chunkSize, maxJqlLength);
+        final List<Map<String, Object>> issues = new ArrayList<>(issueIdsOrKeys.size());
+        if (jqls.isEmpty()) {
+            return new GetIssuesResponse(issues);
+        }
+        if (jqls.size() == 1 || maxConcurrency <= 1) {
+            for (final String jql : jqls) {
+                issues.addAll(search(jql));
+            }
+            return new GetIssuesResponse(issues);
+        }
+        final ExecutorService executorService = Executors.newFixedThreadPool(Math.min(maxConcurrency, jqls.size()));
+        try {
+            final List<Future<List<Map<String, Object>>>> futures = new ArrayList<>(jqls.size());
+            for (final String jql : jqls) {
+                futures.add(executorService.submit(() -> search(jql)));
+            }
+            for (final Future<List<Map<String, Object>>> future : futures) {
+                issues.addAll(future.get());
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AtlassianDataStoreException("Interrupted while fetching issues.", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof AtlassianDataStoreException) {
+                throw (AtlassianDataStoreException) e.getCause();
+            }
+            throw new AtlassianDataStoreException("Failed to fetch issues.", e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+        return new GetIssuesResponse(issues);
+    }
+
+    public GetIssuesRequest fields(String... fields) {
+        this.fields = fields;
+        return this;
+    }
+
+    public GetIssuesRequest expand(String... expand) {
+        this.expand = expand;
+        return this;
+    }
+
+    public GetIssuesRequest filter(String... paths) {
+        this.paths = paths;
+        return this;
+    }
+
+    public GetIssuesRequest chunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public GetIssuesRequest maxJqlLength(int maxJqlLength) {
+        this.maxJqlLength = maxJqlLength;
+        return this;
+    }
+
+    public GetIssuesRequest maxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    // the server may return fewer issues than requested, e.g. with expand or many fields, so a chunk is paged until its last issue
+    protected List<Map<String, Object>> search(final String jql) {
+        final List<Map<String, Object>> issues = new ArrayList<>();
+        for (int startAt = 0;;) {
+            // validateQuery=false lets keys of deleted issues be ignored instead of failing the chunk
+            final SearchRequest request = jiraClient.search().jql(jql).startAt(startAt).maxResults(chunkSize).validateQuery(false);
+            if (fields != null) {
+                request.fields(fields);
+            }
+            if (expand != null) {
+                request.expand(expand);
+            }
+            if (paths != null) {
+                request.filter(paths);
+            }
+            final SearchResponse response = request.execute();
+            issues.addAll(response.getIssues());
+            if (response.isLast(chunkSize)) {
+                return issues;
+            }
+            startAt += response.getIssues().size();
+        }
+    }
+
+    protected static List<String> buildJqls(final Collection<String> issueIdsOrKeys, final int chunkSize, final int maxJqlLength) {
+        final List<String> ids = new ArrayList<>();
+        final List<String> keys = new ArrayList<>();
+        for (final String issueIdOrKey : issueIdsOrKeys) {
+            if (issueIdOrKey == null || issueIdOrKey.isEmpty()) {
+                continue;
+            }
+            if (isNumeric(issueIdOrKey)) {
+                ids.add(issueIdOrKey);
+            } else {
+                keys.add("\"" + issueIdOrKey.replace("\\", "\\\\").replace("\"", "\\\"") + "\"");
+            }
+        }
+        final List<String> jqls = new ArrayList<>();
+        appendJqls(jqls, "id", ids, chunkSize, maxJqlLength);
+        appendJqls(jqls, "key", keys, chunkSize, maxJqlLength);
+        return jqls;
+    }
+
+    protected static void appendJqls(final List<String> jqls, final String field, final List<String> values, final int chunkSize,
+            final int maxJqlLength) {
+        final String prefix = field + " in (";
+        final StringBuilder buf = new StringBuilder(Math.min(maxJqlLength, 1024));
+        int count = 0;
+        for (final String value : values) {
+            if (count > 0 && (count >= chunkSize || buf.length() + value.length() + 2 > maxJqlLength)) {
+                jqls.add(buf.append(')').toString());
+                buf.setLength(0);
+                count = 0;
+            }
+            buf.append(count == 0 ? prefix : ",").append(value);
+            count++;
+        }
+        if (count > 0) {
+            jqls.add(buf.append(')').toString());
+        }
+    }
+
+    protected static boolean isNumeric(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
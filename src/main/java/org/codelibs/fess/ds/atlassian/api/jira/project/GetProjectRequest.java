@@ -17,16 +17,12 @@ package org.codelibs.fess.ds.atlassian.api.jira.project;
 
 import java.io.IOException;
 import java.util.Map;
-import java.util.Scanner;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.http.GenericUrl;
-import com.google.api.client.http.HttpRequest;
-import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpResponseException;
 
 import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.codelibs.fess.ds.atlassian.api.JsonCodec;
 import org.codelibs.fess.ds.atlassian.api.jira.JiraClient;
 import org.codelibs.fess.ds.atlassian.api.jira.JiraRequest;
 
@@ -42,18 +38,9 @@ public class GetProjectRequest extends JiraRequest {
 
     @Override
     public GetProjectResponse execute() {
-        String result = "";
         final GenericUrl url = buildUrl(jiraClient.jiraHome(), projectIdOrKey, expand);
         try {
-            final HttpRequest request = jiraClient.request().buildGetRequest(url);
-            final HttpResponse response = request.execute();
-            if (response.getStatusCode() != 200) {
-                throw new HttpResponseException(response);
-            }
-            final Scanner s = new Scanner(response.getContent());
-            s.useDelimiter("\\A");
-            result = s.hasNext() ? s.next() : "";
-            s.close();
+            return jiraClient.get(url, in -> fromJson(readContent(in)));
         } catch (HttpResponseException e) {
             if (e.getStatusCode() == 404) {
                 throw new AtlassianDataStoreException(
@@ -64,7 +51,6 @@ public class GetProjectRequest extends JiraRequest {
         } catch (IOException e) {
             throw new AtlassianDataStoreException("Failed to request: " + url, e);
         }
-        return fromJson(result);
     }
 
     public GetProjectRequest expand(String... expand) {
@@ -73,10 +59,8 @@ public class GetProjectRequest extends JiraRequest {
     }
 
     public static GetProjectResponse fromJson(String json) {
-        final ObjectMapper mapper = new ObjectMapper();
         try {
-            final Map<String, Object> project = mapper.readValue(json, new TypeReference<Map<String, Object>>() {
-            });
+            final Map<String, Object> project = JsonCodec.getInstance().readMap(json);
             return new GetProjectResponse(project);
         } catch (IOException e) {
             throw new AtlassianDataStoreException("Failed to parse project from: \"" + json + "\"", e);
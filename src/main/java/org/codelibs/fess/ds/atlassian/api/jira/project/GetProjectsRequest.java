@@ -19,16 +19,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.http.GenericUrl;
-import com.google.api.client.http.HttpRequest;
-import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpResponseException;
 
 import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.codelibs.fess.ds.atlassian.api.JsonCodec;
 import org.codelibs.fess.ds.atlassian.api.jira.JiraClient;
 import org.codelibs.fess.ds.atlassian.api.jira.JiraRequest;
 
@@ -43,24 +39,14 @@ public class GetProjectsRequest extends JiraRequest {
 
     @Override
     public GetProjectsResponse execute() {
-        String result = "";
         final GenericUrl url = buildUrl(jiraClient.jiraHome(), expand, recent);
         try {
-            final HttpRequest request = jiraClient.request().buildGetRequest(url);
-            final HttpResponse response = request.execute();
-            if (response.getStatusCode() != 200) {
-                throw new HttpResponseException(response);
-            }
-            final Scanner s = new Scanner(response.getContent());
-            s.useDelimiter("\\A");
-            result = s.hasNext() ? s.next() : "";
-            s.close();
+            return jiraClient.get(url, in -> fromJson(readContent(in)));
         } catch (HttpResponseException e) {
             throw new AtlassianDataStoreException("Content is not found: " + e.getStatusCode(), e);
         } catch (IOException e) {
             throw new AtlassianDataStoreException("Failed to request: " + url, e);
         }
-        return fromJson(result);
     }
 
     public GetProjectsRequest expand(String... expand) {
@@ -74,11 +60,9 @@ public class GetProjectsRequest extends JiraRequest {
     }
 
     public static GetProjectsResponse fromJson(String json) {
-        final ObjectMapper mapper = new ObjectMapper();
         final List<Map<String, Object>> projects = new ArrayList<>();
         try {
-            projects.addAll(mapper.readValue(json, new TypeReference<List<Map<String, Object>>>() {
-            }));
+            projects.addAll(JsonCodec.getInstance().readList(json));
         } catch (IOException e) {
             throw new AtlassianDataStoreException("Failed to parse projects from: \"" + json + "\"", e);
         }
@@ -16,32 +16,34 @@
 package org.codelibs.fess.ds.atlassian.api.jira.search;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.http.GenericUrl;
 import com.google.api.client.http.HttpContent;
-import com.google.api.client.http.HttpRequest;
-import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.json.JsonHttpContent;
 import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.client.util.GenericData;
 
 import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.codelibs.fess.ds.atlassian.api.JsonCodec;
+import org.codelibs.fess.ds.atlassian.api.JsonPathFilter;
 import org.codelibs.fess.ds.atlassian.api.jira.JiraClient;
 import org.codelibs.fess.ds.atlassian.api.jira.JiraRequest;
 
 public class SearchRequest extends JiraRequest {
 
+    // kept by the filter, as the end of the listing is decided from them
+    protected static final String[] PAGING_PATHS = { "startAt", "maxResults", "total" };
+
     private String jql;
     private Integer startAt, maxResults;
     private Boolean validateQuery;
     private String[] fields, expand;
+    private JsonPathFilter filter;
 
     public SearchRequest(JiraClient jiraClient) {
         super(jiraClient);
@@ -49,20 +51,11 @@ public class SearchRequest extends JiraRequest {
 
     @Override
     public SearchResponse execute() {
-        String result = "";
         final GenericUrl url = buildUrl(jiraClient.jiraHome());
         final HttpContent content =
                 new JsonHttpContent(new JacksonFactory(), buildData(jql, startAt, maxResults, validateQuery, fields, expand));
         try {
-            final HttpRequest request = jiraClient.request().buildPostRequest(url, content);
-            final HttpResponse response = request.execute();
-            if (response.getStatusCode() != 200) {
-                throw new HttpResponseException(response);
-            }
-            final Scanner s = new Scanner(response.getContent());
-            s.useDelimiter("\\A");
-            result = s.hasNext() ? s.next() : "";
-            s.close();
+            return jiraClient.post(url, content, in -> fromJson(in, filter));
         } catch (HttpResponseException e) {
             if (e.getStatusCode() == 400) {
                 throw new AtlassianDataStoreException("There is a problem with the JQL query: " + jql, e);
@@ -72,7 +65,6 @@ public class SearchRequest extends JiraRequest {
         } catch (IOException e) {
             throw new AtlassianDataStoreException("Failed to request: " + url, e);
         }
-        return fromJson(result);
     }
 
     public SearchRequest jql(String jql) {
@@ -105,19 +97,42 @@ public class SearchRequest extends JiraRequest {
         return this;
     }
 
+    public SearchRequest filter(String... paths) {
+        this.filter = paths == null ? null : JsonPathFilter.create("issues", paths).include(PAGING_PATHS);
+        return this;
+    }
+
     public static SearchResponse fromJson(String json) {
-        final ObjectMapper mapper = new ObjectMapper();
         final List<Map<String, Object>> issues = new ArrayList<>();
         try {
-            final Map<String, Object> map = mapper.readValue(json, new TypeReference<Map<String, Object>>() {
-            });
+            final Map<String, Object> map = JsonCodec.getInstance().readMap(json);
             @SuppressWarnings("unchecked")
             final List<Map<String, Object>> list = (List<Map<String, Object>>) map.get("issues");
             issues.addAll(list);
+            return new SearchResponse(issues, getInteger(map, "startAt"), getInteger(map, "maxResults"), getInteger(map, "total"));
         } catch (IOException e) {
             throw new AtlassianDataStoreException("failed to parse issues from: \"" + json + "\"", e);
         }
-        return new SearchResponse(issues);
+    }
+
+    public static SearchResponse fromJson(InputStream in, JsonPathFilter filter) {
+        final List<Map<String, Object>> issues = new ArrayList<>();
+        try {
+            final Map<String, Object> map = JsonCodec.getInstance().readMap(in, filter);
+            @SuppressWarnings("unchecked")
+            final List<Map<String, Object>> results = (List<Map<String, Object>>) map.get("issues");
+            if (results != null) {
+                issues.addAll(results);
+            }
+            return new SearchResponse(issues, getInteger(map, "startAt"), getInteger(map, "maxResults"), getInteger(map, "total"));
+        } catch (IOException e) {
+            throw new AtlassianDataStoreException("Failed to parse issues from the response.", e);
+        }
+    }
+
+    protected static Integer getInteger(final Map<String, Object> map, final String key) {
+        final Object value = map.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : null;
     }
 
     protected GenericUrl buildUrl(final String jiraHome) {
@@ -24,12 +24,45 @@ public class SearchResponse extends Response {
 
     protected final List<Map<String, Object>> issues;
 
+    protected final Integer startAt, maxResults, total;
+
     public SearchResponse(List<Map<String, Object>> issues) {
+        this(issues, null, null, null);
+    }
+
+    public SearchResponse(List<Map<String, Object>> issues, Integer startAt, Integer maxResults, Integer total) {
         this.issues = issues;
+        this.startAt = startAt;
+        this.maxResults = maxResults;
+        this.total = total;
     }
 
     public List<Map<String, Object>> getIssues() {
         return issues;
     }
 
+    public Integer getStartAt() {
+        return startAt;
+    }
+
+    // the page size applied by the server, which may be smaller than the requested one
+    public Integer getMaxResults() {
+        return maxResults;
+    }
+
+    public Integer getTotal() {
+        return total;
+    }
+
+    // a page shorter than requested is not the last one when the server caps maxResults, so total decides it if present
+    public boolean isLast(final int requested) {
+        if (issues.isEmpty()) {
+            return true;
+        }
+        if (total != null) {
+            return (startAt != null ? startAt : 0) + issues.size() >= total;
+        }
+        return issues.size() < (maxResults != null ? maxResults : requested);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.callback;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.codelibs.fess.ds.callback.IndexUpdateCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// hands documents to the callback in batches from one thread at a time, instead of a store() per worker and document
+public class BatchingIndexUpdateCallback implements IndexUpdateCallback, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(BatchingIndexUpdateCallback.class);
+
+    protected final IndexUpdateCallback callback;
+    protected final int maxCount;
+    protected final long maxBytes;
+    protected final long maxDelay;
+    protected final ScheduledExecutorService scheduler;
+    protected final Object flushLock = new Object();
+
+    protected List<Document> documents = new ArrayList<>();
+    protected long bytes = 0;
+    protected long firstTime = 0;
+    protected long batchCount = 0;
+    protected RuntimeException failure;
+
+    public BatchingIndexUpdateCallback(final IndexUpdateCallback callback, final int maxCount, final long maxBytes, final long maxDelay) {
+        this.callback = callback;
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+        this.maxDelay = maxDelay;
+        if (maxDelay > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "BatchingIndexUpdateCallback");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final long interval = Math.max(1L, maxDelay / 2);
+            scheduler.scheduleWithFixedDelay(this::flushIfExpired, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    @Override
+    public void store(final Map<String, String> paramMap, final Map<String, Object> dataMap) {
+        store(paramMap, dataMap, null);
+    }
+
+    // onStored runs after the document is handed to the callback, not when it is buffered
+    public void store(final Map<String, String> paramMap, final Map<String, Object> dataMap, final Runnable onStored) {
+        throwIfFailed();
+        final boolean full;
+        synchronized (this) {
+            if (documents.isEmpty()) {
+                firstTime = System.currentTimeMillis();
+            }
+            documents.add(new Document(paramMap, dataMap, onStored));
+            bytes += estimateSize(dataMap);
+            full = documents.size() >= maxCount || bytes >= maxBytes;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        // the lock keeps the batches in order
+        synchronized (flushLock) {
+            final List<Document> batch;
+            synchronized (this) {
+                if (documents.isEmpty()) {
+                    return;
+                }
+                batch = documents;
+                documents = new ArrayList<>();
+                bytes = 0;
+                batchCount++;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Store " + batch.size() + " documents.");
+            }
+            for (final Document document : batch) {
+                callback.store(document.paramMap, document.dataMap);
+                if (document.onStored != null) {
+                    document.onStored.run();
+                }
+            }
+        }
+    }
+
+    @Override
+    public long getDocumentSize() {
+        return callback.getDocumentSize();
+    }
+
+    @Override
+    public long getExecuteTime() {
+        return callback.getExecuteTime();
+    }
+
+    @Override
+    public void commit() {
+        flush();
+        callback.commit();
+    }
+
+    public synchronized long getBatchCount() {
+        return batchCount;
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        // the buffered documents are stored even when an earlier batch failed
+        try {
+            flush();
+        } finally {
+            throwIfFailed();
+        }
+    }
+
+    protected void flushIfExpired() {
+        synchronized (this) {
+            if (documents.isEmpty() || System.currentTimeMillis() - firstTime < maxDelay) {
+                return;
+            }
+        }
+        try {
+            flush();
+        } catch (final RuntimeException e) {
+            logger.warn("Failed to store documents.", e);
+            synchronized (this) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    protected synchronized void throwIfFailed() {
+        if (failure != null) {
+            final RuntimeException e = failure;
+            failure = null;
+            throw new AtlassianDataStoreException("Failed to store documents.", e);
+        }
+    }
+
+    // a rough size of the document, 2 bytes per character
+    protected long estimateSize(final Map<String, Object> dataMap) {
+        long size = 0;
+        for (final Map.Entry<String, Object> entry : dataMap.entrySet()) {
+            size += entry.getKey().length() * 2L + estimateSize(entry.getValue());
+        }
+        return size;
+    }
+
+    protected long estimateSize(final Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() * 2L;
+        } else if (value instanceof Collection) {
+            long size = 0;
+            for (final Object element : (Collection<?>) value) {
+                size += estimateSize(element);
+            }
+            return size;
+        } else if (value instanceof Object[]) {
+            long size = 0;
+            for (final Object element : (Object[]) value) {
+                size += estimateSize(element);
+            }
+            return size;
+        }
+        return 16;
+    }
+
+    protected static class Document {
+        protected final Map<String, String> paramMap;
+        protected final Map<String, Object> dataMap;
+        protected final Runnable onStored;
+
+        protected Document(final Map<String, String> paramMap, final Map<String, Object> dataMap, final Runnable onStored) {
+            this.paramMap = paramMap;
+            this.dataMap = dataMap;
+            this.onStored = onStored;
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.callback;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codelibs.fess.es.client.FessEsClient;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// refreshes the segment of unchanged documents with bulk requests, instead of an update request per document
+public class SegmentUpdater implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentUpdater.class);
+
+    protected final int batchSize;
+
+    // doc id -> segment
+    protected Map<String, Object> documents = new LinkedHashMap<>();
+    protected long updateCount = 0;
+    protected long requestCount = 0;
+
+    public SegmentUpdater(final int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public void add(final String docId, final Object segment) {
+        final Map<String, Object> batch;
+        synchronized (this) {
+            documents.put(docId, segment);
+            if (documents.size() < batchSize) {
+                return;
+            }
+            batch = documents;
+            documents = new LinkedHashMap<>();
+        }
+        update(batch);
+    }
+
+    public void flush() {
+        final Map<String, Object> batch;
+        synchronized (this) {
+            if (documents.isEmpty()) {
+                return;
+            }
+            batch = documents;
+            documents = new LinkedHashMap<>();
+        }
+        update(batch);
+    }
+
+    public synchronized long getUpdateCount() {
+        return updateCount;
+    }
+
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    @Override
+    public void close() {
+        flush();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Updated the segment of " + getUpdateCount() + " documents with " + getRequestCount() + " requests.");
+        }
+    }
+
+    protected void update(final Map<String, Object> batch) {
+        execute(batch);
+        synchronized (this) {
+            updateCount += batch.size();
+            requestCount++;
+        }
+    }
+
+    protected void execute(final Map<String, Object> batch) {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final FessEsClient client = ComponentUtil.getFessEsClient();
+        final BulkRequestBuilder bulk = client.prepareBulk();
+        for (final Map.Entry<String, Object> entry : batch.entrySet()) {
+            bulk.add(client.prepareUpdate(fessConfig.getIndexDocumentUpdateIndex(), fessConfig.getIndexDocumentType(), entry.getKey())
+                    .setDoc(fessConfig.getIndexFieldSegment(), entry.getValue()));
+        }
+        final BulkResponse response = bulk.execute().actionGet(fessConfig.getIndexBulkTimeout());
+        if (response.hasFailures()) {
+            logger.warn("Failed to update the segment of unchanged documents: " + response.buildFailureMessage());
+        }
+    }
+
+}
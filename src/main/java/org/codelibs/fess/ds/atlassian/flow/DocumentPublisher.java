@@ -0,0 +1,189 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.flow;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.codelibs.fess.ds.callback.IndexUpdateCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// publishes the documents of one crawl; the crawl blocks in IndexUpdateCallback.store until the subscriber requests more
+public class DocumentPublisher implements Flow.Publisher<Map<String, Object>> {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentPublisher.class);
+
+    protected final Crawl crawl;
+    protected final Runnable stopper;
+    protected final Executor executor;
+    protected final AtomicBoolean subscribed = new AtomicBoolean();
+
+    public DocumentPublisher(final Crawl crawl, final Runnable stopper) {
+        this(crawl, stopper, task -> {
+            final Thread thread = new Thread(task, "DocumentPublisher");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    public DocumentPublisher(final Crawl crawl, final Runnable stopper, final Executor executor) {
+        this.crawl = crawl;
+        this.stopper = stopper;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super Map<String, Object>> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        if (!subscribed.compareAndSet(false, true)) {
+            // a crawl can be consumed only once
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(final long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("The documents are already subscribed."));
+            return;
+        }
+        final DocumentSubscription subscription = new DocumentSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        executor.execute(subscription::run);
+    }
+
+    public interface Crawl {
+        void run(IndexUpdateCallback callback);
+    }
+
+    protected class DocumentSubscription implements Flow.Subscription, IndexUpdateCallback {
+        protected final Flow.Subscriber<? super Map<String, Object>> subscriber;
+        protected final ReentrantLock lock = new ReentrantLock();
+        protected final Condition demanded = lock.newCondition();
+        protected final Object emitLock = new Object();
+        protected final AtomicLong documentSize = new AtomicLong();
+        protected final AtomicLong executeTime = new AtomicLong();
+        protected long demand = 0;
+        protected volatile boolean cancelled = false;
+        protected Throwable failure;
+
+        protected DocumentSubscription(final Flow.Subscriber<? super Map<String, Object>> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                failure = new IllegalArgumentException("non-positive request: " + n);
+                cancel();
+                return;
+            }
+            lock.lock();
+            try {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                demanded.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                demanded.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            stopper.run();
+        }
+
+        @Override
+        public void store(final Map<String, String> paramMap, final Map<String, Object> dataMap) {
+            final long startTime = System.currentTimeMillis();
+            lock.lock();
+            try {
+                while (demand == 0 && !cancelled) {
+                    demanded.await();
+                }
+                if (cancelled) {
+                    throw new CancellationException("The subscription is cancelled.");
+                }
+                demand--;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for the demand.");
+            } finally {
+                lock.unlock();
+            }
+            // tasks of a page may store from several threads, but onNext must be signaled serially
+            synchronized (emitLock) {
+                subscriber.onNext(dataMap);
+            }
+            documentSize.incrementAndGet();
+            executeTime.addAndGet(System.currentTimeMillis() - startTime);
+        }
+
+        @Override
+        public long getDocumentSize() {
+            return documentSize.get();
+        }
+
+        @Override
+        public long getExecuteTime() {
+            return executeTime.get();
+        }
+
+        @Override
+        public void commit() {
+            // the subscriber decides when the documents are indexed
+        }
+
+        protected void run() {
+            try {
+                crawl.run(this);
+            } catch (final Throwable t) {
+                if (!cancelled) {
+                    subscriber.onError(t);
+                    return;
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("The crawl is stopped by the cancellation.", t);
+                }
+            }
+            if (failure != null) {
+                subscriber.onError(failure);
+            } else if (!cancelled) {
+                subscriber.onComplete();
+            }
+        }
+    }
+
+}
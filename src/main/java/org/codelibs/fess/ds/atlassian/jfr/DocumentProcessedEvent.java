@@ -0,0 +1,49 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("org.codelibs.fess.ds.atlassian.DocumentProcessed")
+@Label("Document Processed")
+@Description("An issue or content converted and handed to the indexer")
+@Category({ "Fess", "Atlassian" })
+@StackTrace(false)
+public class DocumentProcessedEvent extends jdk.jfr.Event {
+
+    @Label("Type")
+    public String type;
+
+    @Label("Id")
+    public String id;
+
+    @Label("Extraction Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long extractionTime;
+
+    @Label("Comment Count")
+    public int commentCount;
+
+    @Label("Store Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long storeTime;
+
+}
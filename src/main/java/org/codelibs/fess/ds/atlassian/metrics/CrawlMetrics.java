@@ -0,0 +1,288 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// request and document measurements of a crawl, exposed via JMX and passed on to the MetricsListener services
+public class CrawlMetrics implements MetricsListener, CrawlMetricsMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(CrawlMetrics.class);
+
+    public static final String DOMAIN = "org.codelibs.fess.ds.atlassian";
+
+    // collections whose next path segment is an id or a key
+    protected static final Pattern ID_PATTERN = Pattern.compile("(/(?:issue|content|project|space|comment)/)[^/]+");
+    protected static final Pattern API_PATTERN = Pattern.compile("^.*?/rest/api/(?:latest|\\d+)/");
+
+    protected final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    protected final Map<String, LongAdder> documentCounts = new ConcurrentHashMap<>();
+    protected final LongAdder documentTime = new LongAdder();
+    protected final LongAdder extractionCount = new LongAdder();
+    protected final LongAdder extractionTime = new LongAdder();
+    protected final LongAdder compressedBytes = new LongAdder();
+    protected final LongAdder uncompressedBytes = new LongAdder();
+    protected final LongAdder plainBytes = new LongAdder();
+    protected final List<MetricsListener> listeners;
+    protected final long startTime = System.nanoTime();
+    protected volatile long endTime = 0L;
+    protected ObjectName objectName;
+
+    public CrawlMetrics() {
+        this(loadListeners());
+    }
+
+    public CrawlMetrics(final List<MetricsListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    public static List<MetricsListener> loadListeners() {
+        final List<MetricsListener> listeners = new ArrayList<>();
+        try {
+            for (final MetricsListener listener : ServiceLoader.load(MetricsListener.class, CrawlMetrics.class.getClassLoader())) {
+                listeners.add(listener);
+            }
+        } catch (final ServiceConfigurationError e) {
+            logger.warn("Failed to load " + MetricsListener.class.getName() + " services.", e);
+        }
+        return listeners;
+    }
+
+    // "/rest/api/latest/content/123/child/comment" -> "content/{id}/child/comment"
+    public static String getEndpoint(final String path) {
+        return API_PATTERN.matcher(ID_PATTERN.matcher(path).replaceAll("$1{id}")).replaceFirst("");
+    }
+
+    @Override
+    public void onRequest(final String endpoint, final int statusCode, final long bytes, final long durationNanos) {
+        endpoints.computeIfAbsent(endpoint, k -> new EndpointStats()).add(statusCode, bytes, durationNanos);
+        for (final MetricsListener listener : listeners) {
+            listener.onRequest(endpoint, statusCode, bytes, durationNanos);
+        }
+    }
+
+    @Override
+    public void onDocument(final String type, final long durationNanos) {
+        documentCounts.computeIfAbsent(type, k -> new LongAdder()).increment();
+        documentTime.add(durationNanos);
+        for (final MetricsListener listener : listeners) {
+            listener.onDocument(type, durationNanos);
+        }
+    }
+
+    @Override
+    public void onExtraction(final long durationNanos) {
+        extractionCount.increment();
+        extractionTime.add(durationNanos);
+        for (final MetricsListener listener : listeners) {
+            listener.onExtraction(durationNanos);
+        }
+    }
+
+    // bytes on the wire of gzip/deflate responses
+    public void addCompressedBytes(final long bytes) {
+        compressedBytes.add(bytes);
+    }
+
+    // decoded bytes of the responses counted in addCompressedBytes
+    public void addUncompressedBytes(final long bytes) {
+        uncompressedBytes.add(bytes);
+    }
+
+    public void addPlainBytes(final long bytes) {
+        plainBytes.add(bytes);
+    }
+
+    public void register(final String name) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName(DOMAIN + ":type=CrawlMetrics,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (final JMException e) {
+            logger.warn("Failed to register the crawl metrics of " + name, e);
+            objectName = null;
+        }
+    }
+
+    // stops the clock, unregisters the MBean and notifies the listeners
+    public void finish() {
+        endTime = System.nanoTime();
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (final JMException e) {
+                logger.warn("Failed to unregister " + objectName, e);
+            }
+            objectName = null;
+        }
+        for (final MetricsListener listener : listeners) {
+            listener.onCrawlFinished(this);
+        }
+    }
+
+    @Override
+    public long getDocumentCount() {
+        return documentCounts.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    @Override
+    public double getDocumentsPerSecond() {
+        final long elapsed = (endTime != 0L ? endTime : System.nanoTime()) - startTime;
+        return elapsed > 0 ? getDocumentCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed : 0d;
+    }
+
+    @Override
+    public long getExtractionCount() {
+        return extractionCount.sum();
+    }
+
+    @Override
+    public long getExtractionTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(extractionTime.sum());
+    }
+
+    @Override
+    public long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    @Override
+    public long getUncompressedBytes() {
+        return uncompressedBytes.sum();
+    }
+
+    @Override
+    public long getPlainBytes() {
+        return plainBytes.sum();
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        return collect(stats -> stats.count.sum());
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        return collect(stats -> stats.errors.sum());
+    }
+
+    @Override
+    public Map<String, Long> getBytes() {
+        return collect(stats -> stats.bytes.sum());
+    }
+
+    @Override
+    public Map<String, String> getLatencies() {
+        final Map<String, String> latencies = new TreeMap<>();
+        endpoints.forEach((endpoint, stats) -> latencies.put(endpoint, stats.getLatency()));
+        return latencies;
+    }
+
+    @Override
+    public String getSummary() {
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis((endTime != 0L ? endTime : System.nanoTime()) - startTime);
+        final StringBuilder buf = new StringBuilder();
+        buf.append("Crawled ").append(getDocumentCount()).append(" documents ").append(new TreeMap<>(collectDocuments())).append(" in ")
+                .append(elapsed).append("ms (").append(String.format(Locale.ROOT, "%.1f", getDocumentsPerSecond())).append(" docs/s");
+        final long count = getDocumentCount();
+        if (count > 0) {
+            buf.append(", ").append(TimeUnit.NANOSECONDS.toMillis(documentTime.sum()) / count).append("ms/doc");
+        }
+        buf.append("), extracted ").append(getExtractionCount()).append(" texts in ").append(getExtractionTimeMillis()).append("ms");
+        buf.append(", received ").append(getCompressedBytes()).append(" compressed bytes (").append(getUncompressedBytes())
+                .append(" decoded) and ").append(getPlainBytes()).append(" uncompressed bytes");
+        new TreeMap<>(endpoints).forEach((endpoint, stats) -> {
+            buf.append("\n  ").append(endpoint).append(": ").append(stats.count.sum()).append(" requests, ").append(stats.errors.sum())
+                    .append(" errors, ").append(stats.bytes.sum()).append(" bytes, ").append(stats.getLatency());
+        });
+        return buf.toString();
+    }
+
+    protected Map<String, Long> collectDocuments() {
+        final Map<String, Long> counts = new TreeMap<>();
+        documentCounts.forEach((type, adder) -> counts.put(type, adder.sum()));
+        return counts;
+    }
+
+    protected Map<String, Long> collect(final ToLongFunction<EndpointStats> value) {
+        final Map<String, Long> values = new TreeMap<>();
+        endpoints.forEach((endpoint, stats) -> values.put(endpoint, value.applyAsLong(stats)));
+        return values;
+    }
+
+    // bucket i counts the requests which took less than 2^i milliseconds
+    protected static class EndpointStats {
+        protected static final int BUCKETS = 20;
+
+        protected final LongAdder count = new LongAdder();
+        protected final LongAdder errors = new LongAdder();
+        protected final LongAdder bytes = new LongAdder();
+        protected final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+        protected final LongAccumulator max = new LongAccumulator(Long::max, 0L);
+
+        protected void add(final int statusCode, final long bytes, final long durationNanos) {
+            count.increment();
+            if (statusCode < 200 || statusCode >= 400) {
+                errors.increment();
+            }
+            this.bytes.add(bytes);
+            final long millis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+            histogram.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis)));
+            max.accumulate(millis);
+        }
+
+        protected long getPercentile(final double percentile) {
+            final long total = count.sum();
+            long sum = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                sum += histogram.get(i);
+                if (sum > 0 && sum >= total * percentile) {
+                    return Math.min(1L << i, max.get());
+                }
+            }
+            return max.get();
+        }
+
+        protected String getLatency() {
+            return "p50<=" + getPercentile(0.5d) + "ms, p90<=" + getPercentile(0.9d) + "ms, p99<=" + getPercentile(0.99d) + "ms, max="
+                    + max.get() + "ms";
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.metrics;
+
+import java.util.Map;
+
+public interface CrawlMetricsMXBean {
+
+    long getDocumentCount();
+
+    double getDocumentsPerSecond();
+
+    long getExtractionCount();
+
+    long getExtractionTimeMillis();
+
+    long getCompressedBytes();
+
+    long getUncompressedBytes();
+
+    long getPlainBytes();
+
+    Map<String, Long> getRequestCounts();
+
+    Map<String, Long> getErrorCounts();
+
+    Map<String, Long> getBytes();
+
+    Map<String, String> getLatencies();
+
+    String getSummary();
+
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.metrics;
+
+// receives the measurements of a crawl; implementations are found by ServiceLoader
+// (META-INF/services/org.codelibs.fess.ds.atlassian.metrics.MetricsListener) and called from the crawling threads
+public interface MetricsListener {
+
+    // statusCode is 0 when no response was received
+    void onRequest(String endpoint, int statusCode, long bytes, long durationNanos);
+
+    void onDocument(String type, long durationNanos);
+
+    void onExtraction(long durationNanos);
+
+    default void onCrawlFinished(final CrawlMetrics metrics) {
+    }
+
+}
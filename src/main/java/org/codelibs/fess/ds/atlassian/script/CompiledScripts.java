@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.script;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.exception.JobProcessingException;
+import org.lastaflute.di.core.factory.SingletonLaContainerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// scriptMap compiled once per crawl; same results as AbstractDataStore#convertValue, which compiles every script per document
+public class CompiledScripts {
+    private static final Logger logger = LoggerFactory.getLogger(CompiledScripts.class);
+
+    // bound by GroovyUtil as well
+    protected static final String CONTAINER = "container";
+
+    protected final Map<String, String> scriptMap;
+    protected final Map<String, Class<? extends Script>> scriptClasses = new HashMap<>();
+
+    public CompiledScripts(final Map<String, String> scriptMap) {
+        this.scriptMap = new LinkedHashMap<>(scriptMap);
+        final GroovyShell groovyShell = new GroovyShell();
+        for (final String template : this.scriptMap.values()) {
+            if (StringUtil.isEmpty(template) || scriptClasses.containsKey(template)) {
+                continue;
+            }
+            try {
+                scriptClasses.put(template, groovyShell.parse(template).getClass());
+            } catch (final Exception e) {
+                logger.warn("Failed to compile groovy script: " + template, e);
+                scriptClasses.put(template, null);
+            }
+        }
+    }
+
+    public boolean isCompiledFrom(final Map<String, String> scriptMap) {
+        return this.scriptMap.equals(scriptMap);
+    }
+
+    // field -> value of the non-null results, the variables shadow paramMap without copying it
+    public Map<String, Object> evaluate(final Map<String, String> paramMap, final Map<String, Object> variables) {
+        // a template which is a variable name is looked up without the container, as in convertValue
+        final Map<String, Object> valueMap = new LayeredMap(variables, paramMap);
+        final Map<String, Object> documentVariables = new HashMap<>(variables);
+        documentVariables.put(CONTAINER, SingletonLaContainerFactory.getContainer());
+        final Map<String, Object> dataMap = new LinkedHashMap<>();
+        for (final Map.Entry<String, String> entry : scriptMap.entrySet()) {
+            // each script gets its own binding, so that its assignments are not seen by the others
+            final Map<String, Object> bindingMap = new LayeredMap(new HashMap<>(documentVariables), paramMap);
+            final Object value = evaluate(entry.getValue(), valueMap, bindingMap);
+            if (value != null) {
+                dataMap.put(entry.getKey(), value);
+            }
+        }
+        return dataMap;
+    }
+
+    protected Object evaluate(final String template, final Map<String, Object> valueMap, final Map<String, Object> bindingMap) {
+        if (StringUtil.isEmpty(template)) {
+            return StringUtil.EMPTY;
+        }
+        if (valueMap.containsKey(template)) {
+            return valueMap.get(template);
+        }
+        final Class<? extends Script> scriptClass = scriptClasses.get(template);
+        if (scriptClass == null) {
+            return null;
+        }
+        try {
+            return InvokerHelper.createScript(scriptClass, new Binding(bindingMap)).run();
+        } catch (final JobProcessingException e) {
+            throw e;
+        } catch (final Exception e) {
+            logger.warn("Failed to evaluate groovy script: " + template + " => " + bindingMap, e);
+            return null;
+        }
+    }
+
+    // writes go to the per-document variables
+    protected static class LayeredMap extends AbstractMap<String, Object> {
+        protected final Map<String, Object> variables;
+        protected final Map<String, String> paramMap;
+
+        protected LayeredMap(final Map<String, Object> variables, final Map<String, String> paramMap) {
+            this.variables = variables;
+            this.paramMap = paramMap;
+        }
+
+        @Override
+        public Object get(final Object key) {
+            return variables.containsKey(key) ? variables.get(key) : paramMap.get(key);
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return variables.containsKey(key) || paramMap.containsKey(key);
+        }
+
+        @Override
+        public Object put(final String key, final Object value) {
+            final Object old = get(key);
+            variables.put(key, value);
+            return old;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            final Map<String, Object> merged = new HashMap<>(paramMap);
+            merged.putAll(variables);
+            return merged.entrySet();
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class CrawlCheckpoint {
+    private static final Logger logger = LoggerFactory.getLogger(CrawlCheckpoint.class);
+
+    protected static final String QUERY = "query";
+    protected static final String PARTITION = "partition";
+    protected static final String OFFSET = "offset";
+    protected static final String LAST_ID = "last_id";
+    protected static final String UPDATED = "updated";
+
+    protected final Path path;
+    protected final String query;
+    protected String partition;
+    protected int offset = 0;
+    protected String lastId;
+    protected boolean resumed = false;
+
+    public CrawlCheckpoint(final Path path, final String query) {
+        this.path = path;
+        this.query = query != null ? query : "";
+        load();
+    }
+
+    public synchronized boolean isResumed() {
+        return resumed;
+    }
+
+    public synchronized String getPartition() {
+        return partition;
+    }
+
+    public synchronized int getOffset() {
+        return offset;
+    }
+
+    public synchronized String getLastId() {
+        return lastId;
+    }
+
+    // Returns the offset to start from for the partition, or 0 if the checkpoint is for another one.
+    public synchronized int getOffset(final String partition) {
+        return resumed && partition.equals(this.partition) ? offset : 0;
+    }
+
+    public synchronized void update(final String partition, final int offset, final String lastId) {
+        this.partition = partition;
+        this.offset = offset;
+        this.lastId = lastId;
+        save();
+    }
+
+    public synchronized void clear() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (final IOException e) {
+            logger.warn("Failed to delete " + path, e);
+        }
+        partition = null;
+        offset = 0;
+        lastId = null;
+        resumed = false;
+    }
+
+    protected void load() {
+        if (!Files.exists(path)) {
+            return;
+        }
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+        } catch (final IOException e) {
+            logger.warn("Failed to load " + path, e);
+            return;
+        }
+        if (!query.equals(properties.getProperty(QUERY))) {
+            logger.info("Ignore the checkpoint for another query: " + path);
+            return;
+        }
+        try {
+            partition = properties.getProperty(PARTITION);
+            offset = Integer.parseInt(properties.getProperty(OFFSET, "0"));
+            lastId = properties.getProperty(LAST_ID);
+            resumed = partition != null;
+        } catch (final NumberFormatException e) {
+            logger.warn("Ignore the broken checkpoint: " + path, e);
+        }
+    }
+
+    protected void save() {
+        final Properties properties = new Properties();
+        properties.setProperty(QUERY, query);
+        properties.setProperty(PARTITION, partition);
+        properties.setProperty(OFFSET, Integer.toString(offset));
+        if (lastId != null) {
+            properties.setProperty(LAST_ID, lastId);
+        }
+        properties.setProperty(UPDATED, Long.toString(System.currentTimeMillis()));
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            final Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tempPath)) {
+                properties.store(out, null);
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            logger.warn("Failed to save " + path, e);
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ExtractedTextCache implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ExtractedTextCache.class);
+
+    protected static final int MAGIC = 0x41545843;
+    protected static final int FORMAT_VERSION = 1;
+
+    protected final Path path;
+    protected final long maxSize;
+    protected final Map<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    protected long size = 0;
+    protected long hitCount = 0;
+    protected long missCount = 0;
+    protected boolean modified = false;
+
+    public ExtractedTextCache(final Path path, final long maxSize) {
+        this.path = path;
+        this.maxSize = maxSize;
+        load();
+    }
+
+    public synchronized String get(final String id, final String version) {
+        if (id == null || version == null) {
+            return null;
+        }
+        final byte[] value = entries.get(toKey(id, version));
+        if (value == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return inflate(value);
+    }
+
+    public synchronized void put(final String id, final String version, final String text) {
+        if (id == null || version == null || text == null) {
+            return;
+        }
+        final byte[] value = deflate(text);
+        final byte[] old = entries.put(toKey(id, version), value);
+        if (old != null) {
+            size -= old.length;
+        }
+        size += value.length;
+        modified = true;
+        evict();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Extracted text cache: " + path + " (entries: " + entries.size() + ", size: " + size + ", hit: " + hitCount
+                    + ", miss: " + missCount + ")");
+        }
+        if (modified) {
+            save();
+        }
+    }
+
+    protected void evict() {
+        final Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            final Map.Entry<String, byte[]> entry = iterator.next();
+            size -= entry.getValue().length;
+            iterator.remove();
+        }
+    }
+
+    protected void load() {
+        if (path == null || !Files.exists(path)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                logger.warn("Ignore unknown cache format: " + path);
+                return;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String key = in.readUTF();
+                final byte[] value = new byte[in.readInt()];
+                in.readFully(value);
+                entries.put(key, value);
+                size += value.length;
+            }
+            evict();
+        } catch (final IOException e) {
+            logger.warn("Failed to load " + path, e);
+            entries.clear();
+            size = 0;
+        }
+    }
+
+    protected void save() {
+        if (path == null) {
+            return;
+        }
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            final Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(entries.size());
+                // eldest first, so that the access order survives a reload
+                for (final Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            modified = false;
+        } catch (final IOException e) {
+            logger.warn("Failed to save " + path, e);
+        }
+    }
+
+    protected String toKey(final String id, final String version) {
+        return id + "@" + version;
+    }
+
+    protected byte[] deflate(final String text) {
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+            final byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    protected String inflate(final byte[] value) {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(value);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(value.length * 4);
+            final byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                final int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (final DataFormatException e) {
+            logger.warn("Broken cache entry.", e);
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class FingerprintStore implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(FingerprintStore.class);
+
+    protected static final long MAGIC = 0x4154465052494e54L;
+    protected static final long FORMAT_VERSION = 1;
+    protected static final int HEADER_LONGS = 3;
+    protected static final int RECORD_LONGS = 3;
+    protected static final long EMPTY = Long.MIN_VALUE;
+
+    protected final Path path;
+    protected long[] ids;
+    protected long[] hashes;
+    protected long[] lastModifieds;
+    protected int size = 0;
+    protected boolean modified = false;
+
+    public FingerprintStore(final Path path) {
+        this.path = path;
+        allocate(1024);
+        load();
+    }
+
+    public synchronized boolean isUnchanged(final long id, final long hash) {
+        final int index = indexOf(id);
+        return ids[index] == id && hashes[index] == hash;
+    }
+
+    public synchronized long getLastModified(final long id) {
+        final int index = indexOf(id);
+        return ids[index] == id ? lastModifieds[index] : -1L;
+    }
+
+    public synchronized void put(final long id, final long hash, final long lastModified) {
+        if (id == EMPTY) {
+            return;
+        }
+        int index = indexOf(id);
+        if (ids[index] != id) {
+            if ((size + 1) * 4L > ids.length * 3L) {
+                rehash(ids.length * 2);
+                index = indexOf(id);
+            }
+            ids[index] = id;
+            size++;
+        }
+        hashes[index] = hash;
+        lastModifieds[index] = lastModified;
+        modified = true;
+    }
+
+    public synchronized void remove(final long id) {
+        int index = indexOf(id);
+        if (ids[index] != id) {
+            return;
+        }
+        // backward shift deletion keeps the probe sequences intact
+        final int mask = ids.length - 1;
+        int next = (index + 1) & mask;
+        while (ids[next] != EMPTY) {
+            final int home = Long.hashCode(ids[next] * 0x9E3779B97F4A7C15L) & mask;
+            if (((next - home) & mask) >= ((next - index) & mask)) {
+                ids[index] = ids[next];
+                hashes[index] = hashes[next];
+                lastModifieds[index] = lastModifieds[next];
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+        ids[index] = EMPTY;
+        size--;
+        modified = true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (modified) {
+            save();
+        }
+    }
+
+    public static long hash(final Map<String, Object> dataMap) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, dataMap);
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    // nested maps are digested in key order, since the iteration order of a HashMap is not stable across runs
+    protected static void update(final MessageDigest digest, final Object value) {
+        if (value instanceof Map) {
+            final Map<String, Object> sorted = new TreeMap<>();
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            digest.update((byte) '{');
+            for (final Map.Entry<String, Object> entry : sorted.entrySet()) {
+                digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                update(digest, entry.getValue());
+                digest.update((byte) 0);
+            }
+            digest.update((byte) '}');
+        } else if (value instanceof Collection) {
+            digest.update((byte) '[');
+            for (final Object element : (Collection<?>) value) {
+                update(digest, element);
+                digest.update((byte) 0);
+            }
+            digest.update((byte) ']');
+        } else if (value instanceof Object[]) {
+            update(digest, Arrays.asList((Object[]) value));
+        } else if (value instanceof Date) {
+            digest.update(Long.toString(((Date) value).getTime()).getBytes(StandardCharsets.UTF_8));
+        } else {
+            digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    protected int indexOf(final long id) {
+        final int mask = ids.length - 1;
+        int index = Long.hashCode(id * 0x9E3779B97F4A7C15L) & mask;
+        while (ids[index] != EMPTY && ids[index] != id) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    protected void allocate(final int capacity) {
+        ids = new long[capacity];
+        Arrays.fill(ids, EMPTY);
+        hashes = new long[capacity];
+        lastModifieds = new long[capacity];
+    }
+
+    protected void rehash(final int capacity) {
+        final long[] oldIds = ids;
+        final long[] oldHashes = hashes;
+        final long[] oldLastModifieds = lastModifieds;
+        allocate(capacity);
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != EMPTY) {
+                final int index = indexOf(oldIds[i]);
+                ids[index] = oldIds[i];
+                hashes[index] = oldHashes[i];
+                lastModifieds[index] = oldLastModifieds[i];
+            }
+        }
+    }
+
+    protected void load() {
+        if (path == null || !Files.exists(path)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final LongBuffer longs = buffer.asLongBuffer();
+            if (longs.remaining() < HEADER_LONGS || longs.get() != MAGIC || longs.get() != FORMAT_VERSION) {
+                logger.warn("Ignore unknown fingerprint format: " + path);
+                return;
+            }
+            final long count = longs.get();
+            if (count * RECORD_LONGS > longs.remaining()) {
+                logger.warn("Ignore truncated fingerprint file: " + path);
+                return;
+            }
+            int capacity = 1024;
+            while (capacity * 3L < count * 4L) {
+                capacity <<= 1;
+            }
+            allocate(capacity);
+            for (long i = 0; i < count; i++) {
+                put(longs.get(), longs.get(), longs.get());
+            }
+            modified = false;
+        } catch (final IOException e) {
+            logger.warn("Failed to load " + path, e);
+            allocate(1024);
+            size = 0;
+        }
+    }
+
+    protected void save() {
+        if (path == null) {
+            return;
+        }
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            final Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                final ByteBuffer buffer = ByteBuffer.allocate(RECORD_LONGS * Long.BYTES * 1024);
+                buffer.putLong(MAGIC).putLong(FORMAT_VERSION).putLong(size);
+                for (int i = 0; i < ids.length; i++) {
+                    if (ids[i] == EMPTY) {
+                        continue;
+                    }
+                    if (buffer.remaining() < RECORD_LONGS * Long.BYTES) {
+                        write(channel, buffer);
+                    }
+                    buffer.putLong(ids[i]).putLong(hashes[i]).putLong(lastModifieds[i]);
+                }
+                write(channel, buffer);
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            modified = false;
+        } catch (final IOException e) {
+            logger.warn("Failed to save " + path, e);
+        }
+    }
+
+    protected void write(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.store;
+
+import java.util.Arrays;
+
+public class LongHashSet {
+
+    protected static final long EMPTY = Long.MIN_VALUE;
+
+    protected long[] values;
+    protected int size = 0;
+    protected boolean containsEmpty = false;
+
+    public LongHashSet() {
+        this(1024);
+    }
+
+    public LongHashSet(final int expectedSize) {
+        int capacity = 16;
+        while (capacity * 3L < expectedSize * 4L) {
+            capacity <<= 1;
+        }
+        values = new long[capacity];
+        Arrays.fill(values, EMPTY);
+    }
+
+    public boolean add(final long value) {
+        if (value == EMPTY) {
+            if (containsEmpty) {
+                return false;
+            }
+            containsEmpty = true;
+            size++;
+            return true;
+        }
+        int index = indexOf(value);
+        if (values[index] == value) {
+            return false;
+        }
+        if ((size + 1) * 4L > values.length * 3L) {
+            rehash(values.length * 2);
+            index = indexOf(value);
+        }
+        values[index] = value;
+        size++;
+        return true;
+    }
+
+    public boolean contains(final long value) {
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+        return values[indexOf(value)] == value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long[] toArray() {
+        final long[] array = new long[size];
+        int i = 0;
+        if (containsEmpty) {
+            array[i++] = EMPTY;
+        }
+        for (final long value : values) {
+            if (value != EMPTY) {
+                array[i++] = value;
+            }
+        }
+        return array;
+    }
+
+    protected int indexOf(final long value) {
+        final int mask = values.length - 1;
+        int index = Long.hashCode(value * 0x9E3779B97F4A7C15L) & mask;
+        while (values[index] != EMPTY && values[index] != value) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    protected void rehash(final int capacity) {
+        final long[] oldValues = values;
+        values = new long[capacity];
+        Arrays.fill(values, EMPTY);
+        for (final long value : oldValues) {
+            if (value != EMPTY) {
+                values[indexOf(value)] = value;
+            }
+        }
+    }
+
+}
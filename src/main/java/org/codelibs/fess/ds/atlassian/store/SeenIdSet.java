@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class SeenIdSet implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SeenIdSet.class);
+
+    protected static final int MAGIC = 0x41545349;
+    protected static final int FORMAT_VERSION = 1;
+    protected static final long END_OF_RECORDS = Long.MIN_VALUE;
+
+    protected final Path path;
+    protected final Path tempPath;
+    protected final LongHashSet ids = new LongHashSet();
+    // ids seen without a url, which keep the url of the previous run
+    protected final LongHashSet carriedIds = new LongHashSet();
+    protected DataOutputStream out;
+
+    public SeenIdSet(final Path path) {
+        this.path = path;
+        this.tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    public synchronized void add(final long id, final String url) {
+        if (!ids.add(id) || id == END_OF_RECORDS) {
+            return;
+        }
+        if (url == null) {
+            carriedIds.add(id);
+            return;
+        }
+        try {
+            write(id, url);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to write " + tempPath, e);
+        }
+    }
+
+    public synchronized boolean contains(final long id) {
+        return ids.contains(id);
+    }
+
+    public synchronized int size() {
+        return ids.size();
+    }
+
+    // Call only after a complete crawl: ids of the previous run that were not seen in this run are passed to the handler.
+    public synchronized long commit(final RemovedIdHandler handler) {
+        long count = 0;
+        if (Files.exists(path)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(path))))) {
+                if (in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION) {
+                    for (long id = in.readLong(); id != END_OF_RECORDS; id = in.readLong()) {
+                        final String url = in.readUTF();
+                        if (!ids.contains(id)) {
+                            handler.removed(id, url);
+                            count++;
+                        } else if (carriedIds.contains(id)) {
+                            write(id, url);
+                        }
+                    }
+                } else {
+                    logger.warn("Ignore unknown seen id format: " + path);
+                }
+            } catch (final EOFException e) {
+                logger.warn("Ignore truncated seen id file: " + path);
+            } catch (final IOException e) {
+                logger.warn("Failed to read " + path, e);
+            }
+        }
+
+        try {
+            openOutput();
+            out.writeLong(END_OF_RECORDS);
+            out.close();
+            out = null;
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to write " + tempPath, e);
+        }
+
+        try {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            logger.warn("Failed to save " + path, e);
+        }
+        return count;
+    }
+
+    protected void write(final long id, final String url) throws IOException {
+        openOutput();
+        out.writeLong(id);
+        out.writeUTF(url);
+    }
+
+    protected void openOutput() throws IOException {
+        if (out != null) {
+            return;
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tempPath))));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (final IOException e) {
+                logger.warn("Failed to close " + tempPath, e);
+            }
+            out = null;
+        }
+        try {
+            Files.deleteIfExists(tempPath);
+        } catch (final IOException e) {
+            logger.warn("Failed to delete " + tempPath, e);
+        }
+    }
+
+    public interface RemovedIdHandler {
+        void removed(long id, String url);
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// keeps up to threshold bytes in memory and the larger ones in a temp file, which is read back memory-mapped
+public class SpillBuffer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SpillBuffer.class);
+
+    protected static final String PREFIX = "fess-ds-atlassian-";
+    protected static final String SUFFIX = ".spill";
+
+    protected final long threshold;
+    protected final Path directory;
+    protected ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    protected Path file;
+    protected OutputStream fileOut;
+    protected long size = 0;
+
+    public SpillBuffer(final long threshold, final Path directory) {
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    public static SpillBuffer spool(final InputStream in, final long threshold, final Path directory) throws IOException {
+        final SpillBuffer buffer = new SpillBuffer(threshold, directory);
+        try (OutputStream out = buffer.getOutputStream()) {
+            if (in != null) {
+                final byte[] bytes = new byte[8192];
+                int n;
+                while ((n = in.read(bytes)) != -1) {
+                    out.write(bytes, 0, n);
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            buffer.close();
+            throw e;
+        }
+        return buffer;
+    }
+
+    // encodes the text in chunks, so that no byte array of the whole text is created
+    public static SpillBuffer spool(final String text, final Charset charset, final long threshold, final Path directory)
+            throws IOException {
+        final SpillBuffer buffer = new SpillBuffer(threshold, directory);
+        try (Writer writer = new OutputStreamWriter(buffer.getOutputStream(), charset)) {
+            final int chunk = 8192;
+            for (int i = 0; i < text.length(); i += chunk) {
+                writer.write(text, i, Math.min(chunk, text.length() - i));
+            }
+        } catch (final IOException | RuntimeException e) {
+            buffer.close();
+            throw e;
+        }
+        return buffer;
+    }
+
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                if (fileOut == null && size + len > threshold) {
+                    spill();
+                }
+                if (fileOut != null) {
+                    fileOut.write(b, off, len);
+                } else {
+                    memory.write(b, off, len);
+                }
+                size += len;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (fileOut != null) {
+                    fileOut.close();
+                }
+            }
+        };
+    }
+
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public InputStream getInputStream() throws IOException {
+        if (file == null) {
+            return new ByteArrayInputStream(memory.toByteArray());
+        }
+        if (size > Integer.MAX_VALUE) {
+            return Files.newInputStream(file);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new MappedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    @Override
+    public void close() {
+        memory = new ByteArrayOutputStream();
+        if (file == null) {
+            return;
+        }
+        try {
+            if (fileOut != null) {
+                fileOut.close();
+            }
+            Files.deleteIfExists(file);
+        } catch (final IOException e) {
+            logger.warn("Failed to delete " + file, e);
+            file.toFile().deleteOnExit();
+        }
+        file = null;
+        fileOut = null;
+    }
+
+    protected void spill() throws IOException {
+        file = directory != null ? Files.createTempFile(directory, PREFIX, SUFFIX) : Files.createTempFile(PREFIX, SUFFIX);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Spill over " + threshold + " bytes to " + file);
+        }
+        fileOut = Files.newOutputStream(file);
+        memory.writeTo(fileOut);
+        memory = new ByteArrayOutputStream();
+    }
+
+    protected static class MappedInputStream extends InputStream {
+        protected final ByteBuffer buffer;
+
+        protected MappedInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+}
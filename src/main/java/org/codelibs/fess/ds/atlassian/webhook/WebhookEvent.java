@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.webhook;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.codelibs.fess.ds.atlassian.api.JsonCodec;
+
+public class WebhookEvent {
+
+    protected final String name;
+    protected final String id;
+    protected final boolean deleted;
+    protected final Map<String, Object> entity;
+
+    public WebhookEvent(final String name, final String id, final boolean deleted, final Map<String, Object> entity) {
+        this.name = name;
+        this.id = id;
+        this.deleted = deleted;
+        this.entity = entity;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    // The issue, page or blog post object of the payload
+    public Map<String, Object> getEntity() {
+        return entity;
+    }
+
+    @Override
+    public String toString() {
+        return "WebhookEvent [name=" + name + ", id=" + id + ", deleted=" + deleted + "]";
+    }
+
+    @SuppressWarnings("unchecked")
+    public static WebhookEvent fromJson(final String json) {
+        final Map<String, Object> map;
+        try {
+            map = JsonCodec.getInstance().readMap(json);
+        } catch (final IOException e) {
+            throw new AtlassianDataStoreException("Failed to parse webhook event from: " + json, e);
+        }
+
+        // Jira: {"webhookEvent": "jira:issue_updated", "issue": {...}}
+        // Confluence: {"event": "page_updated", "page": {...}} or {"event": "blog_removed", "blog": {...}}
+        final String name = map.containsKey("webhookEvent") ? (String) map.get("webhookEvent") : (String) map.get("event");
+        Map<String, Object> entity = null;
+        for (final String key : new String[] { "issue", "page", "blog" }) {
+            if (map.get(key) instanceof Map) {
+                entity = (Map<String, Object>) map.get(key);
+                break;
+            }
+        }
+        if (entity == null || entity.get("id") == null) {
+            throw new AtlassianDataStoreException("Unsupported webhook event: " + name);
+        }
+        return new WebhookEvent(name, entity.get("id").toString(), isDeletion(name), entity);
+    }
+
+    protected static boolean isDeletion(final String name) {
+        return name != null && (name.endsWith("_deleted") || name.endsWith("_removed") || name.endsWith("_trashed"));
+    }
+
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.webhook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class WebhookReceiver implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(WebhookReceiver.class);
+
+    public static final String TOKEN_HEADER = "X-Webhook-Token";
+
+    public static final int DEFAULT_MAX_BODY_SIZE = 1024 * 1024;
+
+    protected final Handler handler;
+    protected final long debounceMillis;
+    protected final long maxDelayMillis;
+    protected final int batchSize;
+    protected final int maxBodySize;
+    protected final Map<String, Pending> pendings = new LinkedHashMap<>();
+    protected final ScheduledExecutorService scheduler;
+    protected HttpServer server;
+
+    public WebhookReceiver(final Handler handler, final long debounceMillis, final long maxDelayMillis, final int batchSize) {
+        this(handler, debounceMillis, maxDelayMillis, batchSize, DEFAULT_MAX_BODY_SIZE);
+    }
+
+    public WebhookReceiver(final Handler handler, final long debounceMillis, final long maxDelayMillis, final int batchSize,
+            final int maxBodySize) {
+        this.handler = handler;
+        this.debounceMillis = debounceMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.batchSize = batchSize;
+        this.maxBodySize = maxBodySize;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "AtlassianWebhookReceiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long period = Math.max(10L, debounceMillis / 4);
+        scheduler.scheduleWithFixedDelay(() -> flush(false), period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public void start(final int port, final String path, final String token) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (final IOException e) {
+            throw new AtlassianDataStoreException("Failed to listen on " + port, e);
+        }
+        server.createContext(path, exchange -> handle(exchange, token));
+        server.start();
+        logger.info("Listening webhook events on " + server.getAddress() + path);
+    }
+
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : -1;
+    }
+
+    public void accept(final String json) {
+        accept(WebhookEvent.fromJson(json));
+    }
+
+    // A later event for the same id replaces the pending one and restarts its debounce window,
+    // but the id is not delayed for more than maxDelayMillis from its first pending event.
+    public void accept(final WebhookEvent event) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Received " + event);
+        }
+        final long now = System.currentTimeMillis();
+        synchronized (pendings) {
+            final Pending previous = pendings.remove(event.getId());
+            final long firstTime = previous != null ? previous.firstTime : now;
+            pendings.put(event.getId(), new Pending(event, firstTime, Math.min(now + debounceMillis, firstTime + maxDelayMillis)));
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (pendings) {
+            return pendings.size();
+        }
+    }
+
+    public void flush() {
+        flush(true);
+    }
+
+    protected void flush(final boolean all) {
+        final List<WebhookEvent> updates = new ArrayList<>();
+        final List<WebhookEvent> deletions = new ArrayList<>();
+        final long now = System.currentTimeMillis();
+        synchronized (pendings) {
+            final Iterator<Pending> iterator = pendings.values().iterator();
+            while (iterator.hasNext()) {
+                final Pending pending = iterator.next();
+                if (!all && pending.dueTime > now) {
+                    continue;
+                }
+                if (pending.event.isDeleted()) {
+                    deletions.add(pending.event);
+                } else {
+                    updates.add(pending.event);
+                }
+                iterator.remove();
+            }
+        }
+        try {
+            for (int i = 0; i < deletions.size(); i += batchSize) {
+                handler.delete(deletions.subList(i, Math.min(i + batchSize, deletions.size())));
+            }
+            for (int i = 0; i < updates.size(); i += batchSize) {
+                handler.update(updates.subList(i, Math.min(i + batchSize, updates.size())));
+            }
+        } catch (final Exception e) {
+            logger.warn("Failed to process webhook events.", e);
+        }
+    }
+
+    protected void handle(final HttpExchange exchange, final String token) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            // a header, since a token in the query string ends up in access logs
+            if (token != null && !token.isEmpty() && !isValidToken(exchange.getRequestHeaders().getFirst(TOKEN_HEADER), token)) {
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+            final String body = readBody(exchange);
+            if (body == null) {
+                exchange.sendResponseHeaders(413, -1);
+                return;
+            }
+            try {
+                accept(body);
+            } catch (final AtlassianDataStoreException e) {
+                logger.warn("Ignore webhook event: " + e.getMessage());
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(204, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    protected boolean isValidToken(final String value, final String token) {
+        return value != null
+                && MessageDigest.isEqual(value.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // null if the body is larger than maxBodySize
+    protected String readBody(final HttpExchange exchange) throws IOException {
+        final String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength != null) {
+            try {
+                if (Long.parseLong(contentLength.trim()) > maxBodySize) {
+                    return null;
+                }
+            } catch (final NumberFormatException e) {
+                return null;
+            }
+        }
+        try (InputStream in = exchange.getRequestBody()) {
+            final byte[] bytes = in.readNBytes(maxBodySize + 1);
+            if (bytes.length > maxBodySize) {
+                return null;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(60, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Interrupted.", e);
+            }
+        }
+        flush(true);
+    }
+
+    public interface Handler {
+        void update(List<WebhookEvent> events);
+
+        void delete(List<WebhookEvent> events);
+    }
+
+    protected static class Pending {
+        protected final WebhookEvent event;
+        protected final long firstTime;
+        protected final long dueTime;
+
+        protected Pending(final WebhookEvent event, final long firstTime, final long dueTime) {
+            this.event = event;
+            this.firstTime = firstTime;
+            this.dueTime = dueTime;
+        }
+    }
+
+}
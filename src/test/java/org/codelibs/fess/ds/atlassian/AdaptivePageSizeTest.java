@@ -0,0 +1,131 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpResponseException;
+import com.sun.net.httpserver.HttpServer;
+
+import org.codelibs.fess.ds.atlassian.api.JdkHttpTransport;
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class AdaptivePageSizeTest extends ContainerTestCase {
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    public void test_grow() {
+        final AdaptivePageSize pageSize = new AdaptivePageSize("search", 50, 5, 100, 1000L, 10000L);
+        assertEquals(50, pageSize.get());
+        pageSize.succeeded(100L, 1000L);
+        assertEquals(50, pageSize.getRequested());
+        assertEquals(62, pageSize.get());
+        pageSize.succeeded(2000L, 1000L);
+        assertEquals(62, pageSize.get());
+        pageSize.succeeded(100L, 20000L);
+        assertEquals(62, pageSize.get());
+        for (int i = 0; i < 10; i++) {
+            pageSize.succeeded(100L, 1000L);
+        }
+        assertEquals(100, pageSize.get());
+    }
+
+    public void test_failed() {
+        final AdaptivePageSize pageSize = new AdaptivePageSize("search", 50, 5, 100, 1000L, 10000L);
+        assertTrue(pageSize.failed(new AtlassianDataStoreException("timeout", new SocketTimeoutException("Read timed out"))));
+        assertEquals(25, pageSize.get());
+        assertTrue(pageSize.failed(new AtlassianDataStoreException("413", newHttpResponseException(413))));
+        assertEquals(12, pageSize.get());
+        assertTrue(pageSize.failed(new AtlassianDataStoreException("503", newHttpResponseException(503))));
+        assertEquals(6, pageSize.get());
+        assertFalse(pageSize.failed(new AtlassianDataStoreException("400", newHttpResponseException(400))));
+        assertFalse(pageSize.failed(new AtlassianDataStoreException("other")));
+        assertEquals(6, pageSize.get());
+        assertTrue(pageSize.failed(new AtlassianDataStoreException("500", newHttpResponseException(500))));
+        assertEquals(5, pageSize.get());
+        assertFalse(pageSize.failed(new AtlassianDataStoreException("500", newHttpResponseException(500))));
+        assertEquals(4, pageSize.getShrinkCount());
+    }
+
+    public void test_fixed() {
+        final AdaptivePageSize pageSize = new AdaptivePageSize("search", 50, 50, 50, 1000L, 10000L);
+        pageSize.succeeded(1L, 1L);
+        assertEquals(50, pageSize.get());
+        assertFalse(pageSize.failed(new AtlassianDataStoreException("500", newHttpResponseException(500))));
+        assertEquals(50, pageSize.get());
+    }
+
+    public void test_served() {
+        final AdaptivePageSize pageSize = new AdaptivePageSize("search", 50, 5, 200, 1000L, 10000L);
+        assertEquals(50, pageSize.get());
+        pageSize.served(null);
+        pageSize.served(50);
+        pageSize.succeeded(100L, 1000L);
+        assertEquals(62, pageSize.get());
+        pageSize.served(40);
+        assertEquals(40, pageSize.get());
+        for (int i = 0; i < 10; i++) {
+            pageSize.succeeded(100L, 1000L);
+        }
+        assertEquals(40, pageSize.get());
+    }
+
+    public void test_failed_jdkHttpTransport() throws Exception {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/rest/api/latest/search", exchange -> {
+            try {
+                Thread.sleep(2000L);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            final AdaptivePageSize pageSize = new AdaptivePageSize("search", 50, 5, 100, 1000L, 10000L);
+            final HttpRequestFactory requestFactory = new JdkHttpTransport().createRequestFactory(request -> request.setReadTimeout(200));
+            final GenericUrl url = new GenericUrl("http://localhost:" + server.getAddress().getPort() + "/rest/api/latest/search");
+            try {
+                requestFactory.buildGetRequest(url).execute();
+                fail();
+            } catch (final IOException e) {
+                assertTrue(pageSize.failed(new AtlassianDataStoreException("timeout", e)));
+            }
+            assertEquals(25, pageSize.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private HttpResponseException newHttpResponseException(final int statusCode) {
+        return new HttpResponseException.Builder(statusCode, null, new HttpHeaders()).build();
+    }
+
+}
@@ -15,15 +15,36 @@
  */
 package org.codelibs.fess.ds.atlassian;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import com.google.api.client.http.apache.ApacheHttpTransport;
+import com.sun.net.httpserver.HttpServer;
 
 import org.codelibs.fess.ds.atlassian.api.AtlassianClient;
 import org.codelibs.fess.ds.atlassian.api.AtlassianClientBuilder;
+import org.codelibs.fess.ds.atlassian.api.ResponseCache;
 import org.codelibs.fess.ds.atlassian.api.confluence.ConfluenceClient;
 import org.codelibs.fess.ds.atlassian.api.confluence.content.GetContentsRequest;
 import org.codelibs.fess.ds.atlassian.api.confluence.content.GetContentsResponse;
@@ -40,6 +61,7 @@ import org.codelibs.fess.ds.atlassian.api.jira.project.GetProjectsRequest;
 import org.codelibs.fess.ds.atlassian.api.jira.project.GetProjectsResponse;
 import org.codelibs.fess.ds.atlassian.api.jira.search.SearchRequest;
 import org.codelibs.fess.ds.atlassian.api.jira.search.SearchResponse;
+import org.codelibs.fess.ds.atlassian.metrics.CrawlMetrics;
 import org.codelibs.fess.util.ComponentUtil;
 import org.dbflute.utflute.lastadi.ContainerTestCase;
 
@@ -66,6 +88,242 @@ public class AtlassianClientTest extends ContainerTestCase {
         super.tearDown();
     }
 
+    public void test_coalesce() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/rest/api/latest/project/FESS", exchange -> {
+            count.incrementAndGet();
+            try {
+                latch.await(10, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            final byte[] body = "{\"key\": \"FESS\", \"name\": \"Fess\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        final ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            final AtlassianClient client =
+                    AtlassianClient.builder().basicAuth("http://localhost:" + server.getAddress().getPort(), "user", "password").build();
+            final JiraClient jiraClient = new JiraClient(client);
+            final List<Future<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executorService.submit(() -> jiraClient.getProject("FESS").execute().getProject()));
+            }
+            for (int i = 0; i < 100 && count.get() == 0; i++) {
+                Thread.sleep(10L);
+            }
+            Thread.sleep(100L);
+            latch.countDown();
+            for (final Future<Map<String, Object>> future : futures) {
+                assertEquals("Fess", future.get().get("name"));
+            }
+            assertEquals(8, count.get() + client.getCoalescedCount());
+            assertTrue(count.get() < 8);
+
+            // a finished request is not reused
+            jiraClient.getProject("FESS").execute();
+            assertEquals(9, count.get() + client.getCoalescedCount());
+        } finally {
+            executorService.shutdownNow();
+            server.stop(0);
+        }
+    }
+
+    public void test_responseCache() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicInteger notModifiedCount = new AtomicInteger();
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/rest/api/latest/project/FESS", exchange -> {
+            count.incrementAndGet();
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModifiedCount.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            final byte[] body = "{\"key\": \"FESS\", \"name\": \"Fess\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        final Path dir = Files.createTempDirectory("responses");
+        try {
+            final String home = "http://localhost:" + server.getAddress().getPort();
+            final ResponseCache responseCache = new ResponseCache(dir, 1024L * 1024L, 1024L);
+            final JiraClient jiraClient =
+                    new JiraClient(AtlassianClient.builder().basicAuth(home, "user", "password").responseCache(responseCache).build());
+            assertEquals("Fess", jiraClient.getProject("FESS").execute().getProject().get("name"));
+            assertEquals("Fess", jiraClient.getProject("FESS").execute().getProject().get("name"));
+            assertEquals(2, count.get());
+            assertEquals(1, notModifiedCount.get());
+            assertEquals(1, responseCache.getHitCount());
+            assertEquals(1, responseCache.getMissCount());
+
+            // reloaded from the directory
+            final ResponseCache reloaded = new ResponseCache(dir, 1024L * 1024L, 1024L);
+            assertEquals(1, reloaded.getEntryCount());
+            final JiraClient reloadedClient =
+                    new JiraClient(AtlassianClient.builder().basicAuth(home, "user", "password").responseCache(reloaded).build());
+            assertEquals("Fess", reloadedClient.getProject("FESS").execute().getProject().get("name"));
+            assertEquals(2, notModifiedCount.get());
+            assertEquals(1, reloaded.getHitCount());
+
+            // evicted when the cache is full
+            final ResponseCache small = new ResponseCache(dir, 10L, 10L);
+            assertEquals(0, small.getEntryCount());
+        } finally {
+            server.stop(0);
+            Files.walk(dir).sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    public void test_responseCache_evicted() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/rest/api/latest/", exchange -> {
+            count.incrementAndGet();
+            if (exchange.getRequestHeaders().getFirst("If-None-Match") != null) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            final byte[] body = "{\"key\": \"FESS\", \"name\": \"Fess\", \"issues\": []}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        final Path dir = Files.createTempDirectory("responses");
+        try {
+            final String home = "http://localhost:" + server.getAddress().getPort();
+            final ResponseCache responseCache = new ResponseCache(dir, 1024L * 1024L, 1024L);
+            final JiraClient jiraClient =
+                    new JiraClient(AtlassianClient.builder().basicAuth(home, "user", "password").responseCache(responseCache).build());
+            assertEquals("Fess", jiraClient.getProject("FESS").execute().getProject().get("name"));
+            assertEquals(1, responseCache.getEntryCount());
+
+            // a 304 for a body which is no longer readable is fetched again without the conditional headers
+            Files.walk(dir).filter(Files::isRegularFile).forEach(p -> p.toFile().delete());
+            count.set(0);
+            assertEquals("Fess", jiraClient.getProject("FESS").execute().getProject().get("name"));
+            assertEquals(2, count.get());
+            assertEquals(1, responseCache.getEntryCount());
+
+            // search results are not cached by default
+            jiraClient.search().execute();
+            assertEquals(1, responseCache.getEntryCount());
+            assertFalse(responseCache.isCacheable("/rest/api/latest/search"));
+            assertFalse(responseCache.isCacheable("/rest/api/latest/issue/10000/comment"));
+            assertTrue(responseCache.isCacheable("/rest/api/latest/field"));
+            assertTrue(responseCache.isCacheable("/rest/api/latest/space/FESS"));
+        } finally {
+            server.stop(0);
+            Files.walk(dir).sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    public void test_compression() throws Exception {
+        final StringBuilder buf = new StringBuilder("{\"key\": \"FESS\", \"name\": \"Fess\", \"description\": \"");
+        for (int i = 0; i < 1000; i++) {
+            buf.append("Enterprise Search Server. ");
+        }
+        final byte[] json = buf.append("\"}").toString().getBytes(StandardCharsets.UTF_8);
+        final List<String> acceptEncodings = new ArrayList<>();
+        final AtomicLong compressedSize = new AtomicLong();
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/rest/api/latest/project/", exchange -> {
+            acceptEncodings.add(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            final String path = exchange.getRequestURI().getPath().substring("/rest/api/latest/project/".length());
+            // a chunked response has no Content-Length
+            final boolean chunked = "chunked".equals(path);
+            final String encoding = chunked ? "gzip" : path;
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (OutputStream out = "gzip".equals(encoding) ? new GZIPOutputStream(bytes)
+                    : "deflate".equals(encoding) ? new DeflaterOutputStream(bytes)
+                            : "raw".equals(encoding) ? new DeflaterOutputStream(bytes, new Deflater(Deflater.DEFAULT_COMPRESSION, true))
+                                    : bytes) {
+                out.write(json);
+            }
+            if (!"identity".equals(encoding)) {
+                exchange.getResponseHeaders().add("Content-Encoding", "raw".equals(encoding) ? "deflate" : encoding);
+                compressedSize.addAndGet(bytes.size());
+            }
+            exchange.sendResponseHeaders(200, chunked ? 0 : bytes.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                bytes.writeTo(out);
+            }
+        });
+        server.start();
+        try {
+            final AtlassianClient client =
+                    AtlassianClient.builder().basicAuth("http://localhost:" + server.getAddress().getPort(), "user", "password").build();
+            final CrawlMetrics metrics = new CrawlMetrics(Collections.emptyList());
+            client.metrics(metrics);
+            final JiraClient jiraClient = new JiraClient(client);
+            for (final String encoding : new String[] { "gzip", "deflate", "raw", "chunked" }) {
+                assertEquals("Fess", jiraClient.getProject(encoding).execute().getProject().get("name"));
+            }
+            assertEquals(json.length * 4L, client.getUncompressedBytes());
+            assertEquals(compressedSize.get(), client.getCompressedBytes());
+            assertTrue(client.getCompressedBytes() * 10 < client.getUncompressedBytes());
+            assertEquals(0L, client.getPlainBytes());
+
+            assertEquals("Fess", jiraClient.getProject("identity").execute().getProject().get("name"));
+            assertEquals(json.length, client.getPlainBytes());
+            assertEquals(compressedSize.get(), metrics.getCompressedBytes());
+            assertEquals(json.length * 4L, metrics.getUncompressedBytes());
+            assertEquals(json.length, metrics.getPlainBytes());
+            for (final String acceptEncoding : acceptEncodings) {
+                assertEquals("gzip, deflate", acceptEncoding);
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    public void test_spill() throws Exception {
+        final StringBuilder buf = new StringBuilder("{\"issues\": [");
+        for (int i = 0; i < 100; i++) {
+            buf.append(i > 0 ? "," : "").append("{\"id\": \"").append(i).append("\", \"fields\": {\"summary\": \"Issue ").append(i)
+                    .append("\"}}");
+        }
+        final byte[] json = buf.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/rest/api/latest/search", exchange -> {
+            exchange.sendResponseHeaders(200, json.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(json);
+            }
+        });
+        server.start();
+        final Path directory = Files.createTempDirectory("spill");
+        try {
+            final JiraClient jiraClient = new JiraClient(AtlassianClient.builder()
+                    .basicAuth("http://localhost:" + server.getAddress().getPort(), "user", "password").spill(100L, directory).build());
+            final List<Map<String, Object>> issues = jiraClient.search().execute().getIssues();
+            assertEquals(100, issues.size());
+            assertEquals("99", issues.get(99).get("id"));
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(0L, files.count());
+            }
+        } finally {
+            server.stop(0);
+            Files.deleteIfExists(directory);
+        }
+    }
+
     public void test_production() {
         // doProductionTest();
     }
@@ -15,6 +15,7 @@
  */
 package org.codelibs.fess.ds.atlassian;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -48,6 +49,34 @@ public class ConfluenceDataStoreTest extends ContainerTestCase {
         super.tearDown();
     }
 
+    public void test_getContentExpand() {
+        final Map<String, String> paramMap = new HashMap<>();
+        final Map<String, String> scriptMap = new HashMap<>();
+        scriptMap.put("url", "content.view_url");
+        scriptMap.put("title", "content.title");
+        assertEquals(Arrays.asList("space", "version"), Arrays.asList(dataStore.getContentExpand(paramMap, scriptMap)));
+        assertFalse(newContext(scriptMap).isScriptReferenced("body"));
+        assertFalse(newContext(scriptMap).isScriptReferenced("comments"));
+
+        scriptMap.put("content", "content.body + content.comments");
+        scriptMap.put("author", "content.raw.history.createdBy.displayName");
+        paramMap.put("content.expand", "metadata.labels");
+        final String[] expand = dataStore.getContentExpand(paramMap, scriptMap);
+        assertEquals(Arrays.asList("space", "version", "body.view", "history", "metadata.labels"), Arrays.asList(expand));
+        assertTrue(newContext(scriptMap).isScriptReferenced("comments"));
+        assertEquals(Arrays.asList("id", "type", "title", "space.key", "version.number", "version.when", "body.view.value", "history",
+                "metadata.labels"), Arrays.asList(dataStore.getContentPaths(expand)));
+
+        // the whole content is referenced
+        scriptMap.put("raw", "content");
+        assertTrue(Arrays.asList(dataStore.getContentExpand(paramMap, scriptMap)).contains("body.view"));
+        assertTrue(newContext(scriptMap).isScriptReferenced("comments"));
+    }
+
+    private CrawlContext newContext(final Map<String, String> scriptMap) {
+        return dataStore.newCrawlContext(new DataConfig(), null, new HashMap<>(), scriptMap, new HashMap<>());
+    }
+
     public void test_storeData() {
         // doStoreDataTest();
     }
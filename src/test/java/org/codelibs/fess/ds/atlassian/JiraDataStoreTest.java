@@ -15,9 +15,33 @@
  */
 package org.codelibs.fess.ds.atlassian;
 
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.sun.net.httpserver.HttpServer;
+
+import org.codelibs.fess.ds.atlassian.api.AtlassianClient;
+import org.codelibs.fess.ds.atlassian.api.jira.JiraClient;
+import org.codelibs.fess.ds.atlassian.store.FingerprintStore;
 import org.codelibs.fess.ds.callback.IndexUpdateCallback;
 import org.codelibs.fess.es.config.exentity.DataConfig;
 import org.codelibs.fess.util.ComponentUtil;
@@ -48,6 +72,317 @@ public class JiraDataStoreTest extends ContainerTestCase {
         super.tearDown();
     }
 
+    public void test_getIssueFields() {
+        final Map<String, String> paramMap = new HashMap<>();
+        final Map<String, String> scriptMap = new HashMap<>();
+        scriptMap.put("url", "issue.view_url");
+        scriptMap.put("title", "issue.summary");
+        scriptMap.put("last_modified", "issue.last_modified");
+        assertEquals(Arrays.asList("updated", "summary"),
+                Arrays.asList(dataStore.getIssueFields(paramMap, scriptMap, Collections.emptySet())));
+        assertFalse(newContext(scriptMap).isScriptReferenced("comments"));
+
+        scriptMap.put("content", "issue.description + issue.comments");
+        scriptMap.put("assignee", "issue.fields.assignee?.displayName");
+        paramMap.put("issue.fields", "labels, priority");
+        assertEquals(new HashSet<>(Arrays.asList("updated", "summary", "description", "assignee", "labels", "priority")),
+                new HashSet<>(Arrays.asList(dataStore.getIssueFields(paramMap, scriptMap, Collections.emptySet()))));
+        assertTrue(newContext(scriptMap).isScriptReferenced("comments"));
+
+        scriptMap.put("raw", "issue.fields");
+        assertTrue(Arrays.asList(dataStore.getIssueFields(paramMap, scriptMap, Collections.emptySet())).contains("*all"));
+        assertTrue(Arrays.asList(dataStore.getIssuePaths(new String[] { "*all" })).contains("fields"));
+
+        // the whole issue is referenced
+        scriptMap.put("raw", "issue");
+        assertTrue(Arrays.asList(dataStore.getIssueFields(paramMap, scriptMap, Collections.emptySet()))
+                .containsAll(Arrays.asList("summary", "description", "updated")));
+        assertTrue(newContext(scriptMap).isScriptReferenced("comments"));
+    }
+
+    public void test_getCustomFields() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/rest/api/latest/field", exchange -> {
+            count.incrementAndGet();
+            final byte[] body = ("[{\"id\": \"summary\", \"name\": \"Summary\", \"custom\": false},"
+                    + " {\"id\": \"customfield_10002\", \"name\": \"Story Points\", \"custom\": true},"
+                    + " {\"id\": \"customfield_10003\", \"name\": \"Team\", \"custom\": true}]").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        final Path directory = Files.createTempDirectory("jira");
+        try {
+            final JiraClient client = new JiraClient(
+                    AtlassianClient.builder().basicAuth("http://localhost:" + server.getAddress().getPort(), "user", "password").build());
+            final DataConfig dataConfig = new DataConfig();
+            final Map<String, String> paramMap = new HashMap<>();
+            paramMap.put("store.directory", directory.toString());
+            paramMap.put("issue.custom_fields", "Story Points, customfield_10003, Unknown");
+
+            final Map<String, String> customFields = dataStore.getCustomFields(dataConfig, paramMap, client);
+            assertEquals(2, customFields.size());
+            assertEquals("Story Points", customFields.get("customfield_10002"));
+            assertEquals("customfield_10003", customFields.get("customfield_10003"));
+            assertEquals(1, count.get());
+
+            // cached in memory
+            dataStore.getCustomFields(dataConfig, paramMap, client);
+            assertEquals(1, count.get());
+
+            // cached on disk for the next run
+            client.clearFieldCache();
+            dataStore.getCustomFields(dataConfig, paramMap, client);
+            assertEquals(1, count.get());
+
+            // expired
+            client.clearFieldCache();
+            paramMap.put("field_cache.ttl", "0");
+            dataStore.getCustomFields(dataConfig, paramMap, client);
+            assertEquals(2, count.get());
+
+            // not shared with a client of other credentials
+            final JiraClient otherClient = new JiraClient(
+                    AtlassianClient.builder().basicAuth("http://localhost:" + server.getAddress().getPort(), "other", "password").build());
+            paramMap.remove("field_cache.ttl");
+            paramMap.remove("store.directory");
+            dataStore.getCustomFields(dataConfig, paramMap, otherClient);
+            assertEquals(3, count.get());
+
+            final Map<String, Object> fields = new HashMap<>();
+            fields.put("customfield_10002", 3.0);
+            final Map<String, Object> team = new HashMap<>();
+            team.put("id", "1");
+            team.put("value", "Search");
+            fields.put("customfield_10003", Arrays.asList(team));
+            final Map<String, Object> issue = new HashMap<>();
+            issue.put("fields", fields);
+            final Map<String, Object> values = dataStore.getIssueCustomFields(issue, customFields);
+            assertEquals(3.0, values.get("Story Points"));
+            assertEquals(Arrays.asList("Search"), values.get("customfield_10003"));
+        } finally {
+            server.stop(0);
+            Files.walk(directory).sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    public void test_getIssueComments() throws Exception {
+        final List<String> queries = Collections.synchronizedList(new ArrayList<>());
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/rest/api/latest/issue/10000/comment", exchange -> {
+            final Map<String, String> query = new HashMap<>();
+            for (final String param : exchange.getRequestURI().getQuery().split("&")) {
+                final String[] pair = param.split("=", 2);
+                query.put(pair[0], pair[1]);
+            }
+            queries.add(exchange.getRequestURI().getQuery());
+            final int startAt = Integer.parseInt(query.get("startAt"));
+            final int maxResults = Integer.parseInt(query.get("maxResults"));
+            final boolean newestFirst = "-created".equals(query.get("orderBy"));
+            final StringBuilder buf = new StringBuilder("{\"total\": 5000, \"comments\": [");
+            for (int i = startAt; i < Math.min(startAt + maxResults, 5000); i++) {
+                buf.append(i > startAt ? "," : "").append("{\"body\": \"Comment ").append(newestFirst ? 4999 - i : i).append("\"}");
+            }
+            final byte[] body = buf.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        try {
+            final JiraClient client = new JiraClient(
+                    AtlassianClient.builder().basicAuth("http://localhost:" + server.getAddress().getPort(), "user", "password").build());
+            final Map<String, Object> issue = new HashMap<>();
+            issue.put("id", "10000");
+            issue.put("fields", Collections.singletonMap("updated", "2019-01-01T00:00:00.000+0000"));
+            final Map<String, String> paramMap = new HashMap<>();
+            final CrawlContext context = new CrawlContext(new DataConfig(), null, paramMap, new HashMap<>(), new HashMap<>());
+            paramMap.put("comment.max_count", "3");
+            paramMap.put("comment.newest_first", "true");
+            assertEquals("\n\nComment 4999\n\nComment 4998\n\nComment 4997", dataStore.getIssueComments(context, client, issue));
+            assertEquals(1, queries.size());
+            assertTrue(queries.get(0), queries.get(0).contains("maxResults=4"));
+            assertEquals(1, context.getTruncatedCommentCount());
+
+            queries.clear();
+            paramMap.clear();
+            paramMap.put("comment.max_chars", "100");
+            final String text = dataStore.getIssueComments(context, client, issue);
+            assertEquals(100, text.length());
+            assertTrue(text.startsWith("\n\nComment 0\n\nComment 1"));
+            assertEquals(1, queries.size());
+            assertEquals(2, context.getTruncatedCommentCount());
+
+            queries.clear();
+            paramMap.clear();
+            paramMap.put("comment.max_count", "120");
+            assertEquals(120, dataStore.getIssueComments(context, client, issue).split("\n\n").length - 1);
+            assertEquals(3, queries.size());
+            assertEquals(3, context.getTruncatedCommentCount());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    public void test_runTasks() {
+        final Map<String, String> paramMap = new HashMap<>();
+        paramMap.put("number_of_threads", "4");
+        paramMap.put("virtual_threads.enabled", "true");
+        final ExecutorService executorService = dataStore.newExecutorService(paramMap);
+        try {
+            final Set<String> threads = ConcurrentHashMap.newKeySet();
+            final AtomicInteger count = new AtomicInteger();
+            final List<Runnable> tasks = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                tasks.add(() -> {
+                    threads.add(Thread.currentThread().toString());
+                    count.incrementAndGet();
+                });
+            }
+            dataStore.runTasks(executorService, tasks);
+            assertEquals(50, count.get());
+            assertFalse(threads.isEmpty());
+
+            tasks.add(() -> {
+                throw new AtlassianDataStoreException("failed");
+            });
+            try {
+                dataStore.runTasks(executorService, tasks);
+                fail();
+            } catch (final AtlassianDataStoreException e) {
+                assertEquals("failed", e.getMessage());
+            }
+            // the other tasks still ran
+            assertEquals(100, count.get());
+        } finally {
+            dataStore.shutdown(executorService);
+        }
+    }
+
+    public void test_getKeysetJql() {
+        assertEquals("ORDER BY id ASC", dataStore.getKeysetJql("", null));
+        assertEquals("id > 10150 ORDER BY id ASC", dataStore.getKeysetJql("", "10150"));
+        assertEquals("(project = FESS) AND id > 10150 ORDER BY id ASC", dataStore.getKeysetJql("project = FESS", "10150"));
+        assertEquals("(project = FESS) ORDER BY id ASC", dataStore.getKeysetJql("project = FESS order by updated DESC", null));
+    }
+
+    public void test_storeIfChanged() throws Exception {
+        final List<Map<String, Object>> stored = new ArrayList<>();
+        final List<Object> segments = new ArrayList<>();
+        final JiraDataStore dataStore = new JiraDataStore() {
+            @Override
+            protected void updateSegment(final CrawlContext context, final Map<String, Object> dataMap) {
+                segments.add(dataMap.get("segment"));
+            }
+        };
+        final IndexUpdateCallback callback = new IndexUpdateCallback() {
+            @Override
+            public void store(Map<String, String> paramMap, Map<String, Object> dataMap) {
+                stored.add(dataMap);
+            }
+
+            @Override
+            public long getExecuteTime() {
+                return 0;
+            }
+
+            @Override
+            public long getDocumentSize() {
+                return 0;
+            }
+
+            @Override
+            public void commit() {
+            }
+        };
+        final Path directory = Files.createTempDirectory("jira");
+        try (FingerprintStore fingerprintStore = new FingerprintStore(directory.resolve("fingerprints"))) {
+            final Map<String, Object> issueMap = new HashMap<>();
+            issueMap.put("summary", "Summary");
+            for (final String segment : new String[] { "20180101000000", "20180102000000" }) {
+                final Map<String, Object> defaultDataMap = new HashMap<>();
+                defaultDataMap.put("segment", segment);
+                defaultDataMap.put("created", new Date());
+                final CrawlContext context = new CrawlContext(new DataConfig(), callback, new HashMap<>(), new HashMap<>(), defaultDataMap);
+                context.setFingerprintStore(fingerprintStore);
+                final Map<String, Object> dataMap = new HashMap<>(defaultDataMap);
+                dataMap.put("title", "Summary");
+                dataStore.storeIfChanged(context, dataMap, issueMap, "1", null);
+            }
+            // the second crawl only moves the indexed document to the new segment
+            assertEquals(1, stored.size());
+            assertEquals(Arrays.asList("20180102000000"), segments);
+
+            final Map<String, Object> defaultDataMap = new HashMap<>();
+            defaultDataMap.put("segment", "20180103000000");
+            final CrawlContext context = new CrawlContext(new DataConfig(), callback, new HashMap<>(), new HashMap<>(), defaultDataMap);
+            context.setFingerprintStore(fingerprintStore);
+            issueMap.put("summary", "Changed");
+            final Map<String, Object> dataMap = new HashMap<>(defaultDataMap);
+            dataMap.put("title", "Summary");
+            dataStore.storeIfChanged(context, dataMap, issueMap, "1", null);
+            assertEquals(2, stored.size());
+            assertEquals(1, segments.size());
+        }
+    }
+
+    private CrawlContext newContext(final Map<String, String> scriptMap) {
+        return dataStore.newCrawlContext(new DataConfig(), null, new HashMap<>(), scriptMap, new HashMap<>());
+    }
+
+    public void test_publish_cancel() throws Exception {
+        final List<AtomicBoolean> flags = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch finished = new CountDownLatch(1);
+        final JiraDataStore dataStore = new JiraDataStore() {
+            @Override
+            protected void storeData(final DataConfig dataConfig, final IndexUpdateCallback callback, final Map<String, String> paramMap,
+                    final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap, final AtomicBoolean cancelled) {
+                flags.add(cancelled);
+                try {
+                    while (!cancelled.get()) {
+                        callback.store(paramMap, new HashMap<>());
+                    }
+                } finally {
+                    finished.countDown();
+                }
+            }
+        };
+        dataStore.publish(new DataConfig(), new HashMap<>(), new HashMap<>(), new HashMap<>()).subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(final Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(final Map<String, Object> item) {
+                subscription.cancel();
+            }
+
+            @Override
+            public void onError(final Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertTrue(flags.get(0).get());
+
+        // the data store itself is not stopped by the cancellation
+        final CrawlContext context = dataStore.newCrawlContext(new DataConfig(), null, new HashMap<>(), new HashMap<>(), new HashMap<>());
+        assertTrue(dataStore.isRunning(context));
+        context.setCancelled(flags.get(0));
+        assertFalse(dataStore.isRunning(context));
+    }
+
     public void test_storeData() {
         // doStoreDataTest();
     }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class MemoryGovernorTest extends ContainerTestCase {
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    public void test_awaitPage() throws Exception {
+        final TestMemoryGovernor governor = new TestMemoryGovernor(0.8d, 0.6d, 60000L, 4);
+        governor.awaitPage();
+        assertEquals(0, governor.getPauseCount());
+
+        governor.ratio = 0.9d;
+        governor.press();
+        assertTrue(governor.isUnderPressure());
+        final CountDownLatch resumed = new CountDownLatch(1);
+        final Thread thread = new Thread(() -> {
+            governor.awaitPage();
+            resumed.countDown();
+        });
+        thread.start();
+        assertFalse(resumed.await(300L, TimeUnit.MILLISECONDS));
+        governor.ratio = 0.5d;
+        assertTrue(resumed.await(5L, TimeUnit.SECONDS));
+        assertFalse(governor.isUnderPressure());
+        assertEquals(1, governor.getPauseCount());
+        assertTrue(governor.getPausedTime() >= 300L);
+        governor.close();
+    }
+
+    public void test_maxPause() {
+        final TestMemoryGovernor governor = new TestMemoryGovernor(0.8d, 0.6d, 200L, 1);
+        governor.ratio = 0.9d;
+        governor.press();
+        governor.awaitPage();
+        assertFalse(governor.isUnderPressure());
+        assertEquals(1, governor.getPauseCount());
+        governor.close();
+    }
+
+    public void test_limit() throws Exception {
+        final TestMemoryGovernor governor = new TestMemoryGovernor(0.8d, 0.6d, 60000L, 4);
+        assertEquals(4, runTasks(governor));
+        governor.ratio = 0.9d;
+        governor.press();
+        assertEquals(1, runTasks(governor));
+        governor.ratio = 0.5d;
+        governor.awaitPage();
+        assertEquals(4, runTasks(governor));
+        governor.close();
+    }
+
+    public void test_permits() {
+        final Map<String, String> paramMap = new HashMap<>();
+        paramMap.put("memory.high_water", "0.99");
+        paramMap.put("virtual_threads.enabled", "true");
+        paramMap.put("number_of_threads", "4");
+        final MemoryGovernor created = new JiraDataStore().createMemoryGovernor(paramMap, 100);
+        try {
+            assertEquals(4, created.permits.availablePermits());
+        } finally {
+            created.close();
+        }
+
+        final TestMemoryGovernor governor = new TestMemoryGovernor(0.8d, 0.6d, 60000L, 4);
+        assertEquals(4, governor.permits.availablePermits());
+        governor.press();
+        assertEquals(1, governor.permits.availablePermits());
+        governor.relieve();
+        assertEquals(4, governor.permits.availablePermits());
+        governor.close();
+    }
+
+    public void test_start() {
+        final MemoryGovernor governor = new MemoryGovernor(0.99d, 0.9d, 1000L, 2).start();
+        try {
+            governor.awaitPage();
+            assertEquals(0, governor.getPauseCount());
+        } finally {
+            governor.close();
+        }
+    }
+
+    private int runTasks(final MemoryGovernor governor) throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executorService.submit(governor.limit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(50L);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                })));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        return maxRunning.get();
+    }
+
+    static class TestMemoryGovernor extends MemoryGovernor {
+        volatile double ratio = 0d;
+
+        TestMemoryGovernor(final double highWater, final double lowWater, final long maxPause, final int maxConcurrency) {
+            super(highWater, lowWater, maxPause, maxConcurrency);
+        }
+
+        @Override
+        protected double getUsedRatio() {
+            return ratio;
+        }
+    }
+
+}
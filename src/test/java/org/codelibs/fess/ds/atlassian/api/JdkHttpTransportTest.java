@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.api;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpResponseException;
+import com.sun.net.httpserver.HttpServer;
+
+import org.codelibs.fess.ds.atlassian.api.jira.JiraClient;
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class JdkHttpTransportTest extends ContainerTestCase {
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    public void test_request() throws Exception {
+        final List<String> requests = new ArrayList<>();
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/rest/api/latest/", exchange -> {
+            final String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI() + " "
+                    + exchange.getRequestHeaders().getFirst("Authorization") + " " + body);
+            if (exchange.getRequestURI().getPath().endsWith("/MISSING")) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            final byte[] bytes = "{\"key\": \"FESS\", \"name\": \"Fess\", \"issues\": []}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        try {
+            final String home = "http://localhost:" + server.getAddress().getPort();
+            final AtlassianClient client =
+                    AtlassianClient.builder().basicAuth(home, "user", "password").httpTransport(new JdkHttpTransport()).build();
+            final JiraClient jiraClient = new JiraClient(client);
+            final String authorization = "Basic " + Base64.getEncoder().encodeToString("user:password".getBytes(StandardCharsets.UTF_8));
+
+            assertEquals("Fess", jiraClient.getProject("FESS").execute().getProject().get("name"));
+            assertEquals("GET /rest/api/latest/project/FESS " + authorization + " ", requests.get(0));
+
+            jiraClient.search().jql("project = FESS").execute();
+            assertTrue(requests.get(1), requests.get(1).startsWith("POST /rest/api/latest/search " + authorization + " {"));
+            assertTrue(requests.get(1), requests.get(1).contains("\"jql\":\"project = FESS\""));
+
+            try {
+                client.get(new GenericUrl(home + "/rest/api/latest/project/MISSING"), null, in -> null);
+                fail();
+            } catch (final HttpResponseException e) {
+                assertEquals(404, e.getStatusCode());
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+}
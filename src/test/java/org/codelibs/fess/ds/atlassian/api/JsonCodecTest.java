@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.api;
+
+import java.util.List;
+import java.util.Map;
+
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class JsonCodecTest extends ContainerTestCase {
+
+    private static final String ISSUES_JSON = "{\"issues\": [{\"id\": \"10001\", \"key\": \"FESS-1\", \"fields\": {\"summary\": \"a\"}}]}";
+
+    private static final String PROJECTS_JSON = "[{\"id\": \"1\", \"key\": \"FESS\"}, {\"id\": \"2\", \"key\": \"DS\"}]";
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        JsonCodec.setMode(JsonCodec.Mode.SHARED);
+        super.tearDown();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void test_modes() throws Exception {
+        for (final JsonCodec.Mode mode : JsonCodec.Mode.values()) {
+            JsonCodec.setMode(mode);
+            final JsonCodec codec = JsonCodec.getInstance();
+            // Afterburner falls back to the shared mapper when the module is missing
+            assertTrue(codec.getMode() == mode || mode == JsonCodec.Mode.AFTERBURNER);
+
+            final Map<String, Object> map = codec.readMap(ISSUES_JSON);
+            final List<Map<String, Object>> issues = (List<Map<String, Object>>) map.get("issues");
+            assertEquals(1, issues.size());
+            assertEquals("FESS-1", issues.get(0).get("key"));
+            assertEquals("a", ((Map<String, Object>) issues.get(0).get("fields")).get("summary"));
+
+            final List<Map<String, Object>> projects = codec.readList(PROJECTS_JSON);
+            assertEquals(2, projects.size());
+            assertEquals("DS", projects.get(1).get("key"));
+        }
+    }
+
+    public void test_invalid() {
+        try {
+            JsonCodec.getInstance().readMap("{\"issues\": [");
+            fail();
+        } catch (final Exception e) {
+            // expected
+        }
+    }
+
+}
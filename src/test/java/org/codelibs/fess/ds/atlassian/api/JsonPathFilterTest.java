@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.codelibs.fess.ds.atlassian.api.confluence.content.GetContentsRequest;
+import org.codelibs.fess.ds.atlassian.api.confluence.content.GetContentsResponse;
+import org.codelibs.fess.ds.atlassian.api.jira.search.SearchRequest;
+import org.codelibs.fess.ds.atlassian.api.jira.search.SearchResponse;
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class JsonPathFilterTest extends ContainerTestCase {
+
+    private static final String CONTENTS_JSON = "{\"results\": [" //
+            + "{\"id\": \"1\", \"type\": \"page\", \"title\": \"Page 1\", \"space\": {\"key\": \"FESS\", \"name\": \"Fess\", \"_links\": {}},"
+            + " \"version\": {\"number\": 3, \"when\": \"2019-01-01T00:00:00.000Z\", \"by\": {\"username\": \"admin\", \"profilePicture\": {\"path\": \"/a.png\"}}},"
+            + " \"body\": {\"view\": {\"value\": \"<p>body</p>\", \"representation\": \"view\"}, \"_expandable\": {\"storage\": \"\"}},"
+            + " \"_links\": {\"webui\": \"/x\"}, \"_expandable\": {\"children\": \"\"}},"
+            + "{\"id\": \"2\", \"type\": \"page\", \"title\": \"Page 2\", \"space\": \"unexpected\", \"body\": {\"view\": {\"value\": \"<p>2</p>\"}}}"
+            + "], \"start\": 0, \"limit\": 25, \"size\": 2, \"_links\": {\"self\": \"/rest\"}}";
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void test_readMap() throws Exception {
+        final JsonPathFilter filter = JsonPathFilter.create("results", "id", "title", "space.key", "version.number", "body.view.value");
+        final Map<String, Object> map = JsonCodec.getInstance().readMap(toStream(CONTENTS_JSON), filter);
+        assertEquals(1, map.size());
+        final List<Map<String, Object>> results = (List<Map<String, Object>>) map.get("results");
+        assertEquals(2, results.size());
+
+        final Map<String, Object> first = results.get(0);
+        assertEquals(5, first.size());
+        assertEquals("1", first.get("id"));
+        assertEquals("Page 1", first.get("title"));
+        final Map<String, Object> space = (Map<String, Object>) first.get("space");
+        assertEquals(1, space.size());
+        assertEquals("FESS", space.get("key"));
+        final Map<String, Object> version = (Map<String, Object>) first.get("version");
+        assertEquals(1, version.size());
+        assertEquals(3, version.get("number"));
+        assertEquals("<p>body</p>", ((Map<String, Object>) ((Map<String, Object>) first.get("body")).get("view")).get("value"));
+        assertFalse(first.containsKey("_links"));
+
+        // a scalar where an object is selected is skipped
+        final Map<String, Object> second = results.get(1);
+        assertEquals("2", second.get("id"));
+        assertFalse(second.containsKey("space"));
+        assertFalse(second.containsKey("version"));
+    }
+
+    public void test_subtree() throws Exception {
+        final JsonPathFilter filter = JsonPathFilter.create(null, "results.version");
+        @SuppressWarnings("unchecked")
+        final List<Map<String, Object>> results =
+                (List<Map<String, Object>>) JsonCodec.getInstance().readMap(toStream(CONTENTS_JSON), filter).get("results");
+        assertEquals(1, results.size());
+        @SuppressWarnings("unchecked")
+        final Map<String, Object> version = (Map<String, Object>) results.get(0).get("version");
+        assertEquals(3, version.size());
+        assertTrue(version.containsKey("by"));
+    }
+
+    public void test_nothingSelected() throws Exception {
+        final JsonPathFilter filter = JsonPathFilter.create("issues", "id");
+        assertTrue(JsonCodec.getInstance().readMap(toStream(CONTENTS_JSON), filter).isEmpty());
+        assertTrue(SearchRequest.fromJson(toStream(CONTENTS_JSON), filter).getIssues().isEmpty());
+    }
+
+    public void test_fromJson() {
+        final List<Map<String, Object>> contents =
+                GetContentsRequest.fromJson(toStream(CONTENTS_JSON), JsonPathFilter.create("results", "id")).getContents();
+        assertEquals(2, contents.size());
+        assertEquals(1, contents.get(0).size());
+        assertEquals("2", contents.get(1).get("id"));
+    }
+
+    public void test_paging() {
+        final GetContentsResponse contents = GetContentsRequest.fromJson(toStream(CONTENTS_JSON),
+                JsonPathFilter.create("results", "id").include("start", "limit", "size", "_links.next"));
+        assertEquals(2, contents.getContents().size());
+        assertEquals(25, contents.getLimit().intValue());
+        assertEquals(2, contents.getSize().intValue());
+        assertNull(contents.getNext());
+        assertTrue(contents.isLast(25));
+
+        final String next = CONTENTS_JSON.replace("\"self\": \"/rest\"", "\"self\": \"/rest\", \"next\": \"/rest?start=2\"");
+        final GetContentsResponse capped = GetContentsRequest.fromJson(toStream(next),
+                JsonPathFilter.create("results", "id").include("start", "limit", "size", "_links.next"));
+        assertEquals("/rest?start=2", capped.getNext());
+        assertFalse(capped.isLast(100));
+
+        // the server returns 100 issues for maxResults 200
+        final String issues = "{\"startAt\": 100, \"maxResults\": 100, \"total\": 250, \"issues\": [{\"id\": \"1\", \"key\": \"A-1\"}]}";
+        final SearchResponse search =
+                SearchRequest.fromJson(toStream(issues), JsonPathFilter.create("issues", "id").include("startAt", "maxResults", "total"));
+        assertEquals(1, search.getIssues().get(0).size());
+        assertEquals(100, search.getMaxResults().intValue());
+        assertEquals(250, search.getTotal().intValue());
+        assertFalse(search.isLast(200));
+        assertTrue(SearchRequest.fromJson(toStream(issues.replace("250", "101")), null).isLast(200));
+    }
+
+    private InputStream toStream(final String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
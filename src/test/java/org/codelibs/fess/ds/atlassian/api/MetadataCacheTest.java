@@ -0,0 +1,140 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class MetadataCacheTest extends ContainerTestCase {
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    public void test_singleFlight() throws Exception {
+        final MetadataCache<String, String> cache = new MetadataCache<>(10, 60000L);
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executorService.submit(() -> cache.get("FESS", key -> {
+                    count.incrementAndGet();
+                    try {
+                        latch.await(10, TimeUnit.SECONDS);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "Fess " + key;
+                })));
+            }
+            Thread.sleep(100L);
+            latch.countDown();
+            for (final Future<String> future : futures) {
+                assertEquals("Fess FESS", future.get());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(1, count.get());
+        assertEquals(1, cache.getLoadCount());
+        assertEquals(7, cache.getHitCount());
+    }
+
+    public void test_lruAndTtl() throws Exception {
+        final MetadataCache<String, String> cache = new MetadataCache<>(2, 60000L);
+        final AtomicInteger count = new AtomicInteger();
+        cache.get("a", key -> key + count.incrementAndGet());
+        cache.get("b", key -> key + count.incrementAndGet());
+        assertEquals("a1", cache.get("a", key -> key + count.incrementAndGet()));
+        cache.get("c", key -> key + count.incrementAndGet());
+        assertEquals(2, cache.size());
+        // "b" was the least recently used
+        assertEquals("b4", cache.get("b", key -> key + count.incrementAndGet()));
+
+        final MetadataCache<String, String> expired = new MetadataCache<>(2, 0L);
+        expired.get("a", key -> key + count.incrementAndGet());
+        assertEquals("a6", expired.get("a", key -> key + count.incrementAndGet()));
+    }
+
+    public void test_failure() {
+        final MetadataCache<String, String> cache = new MetadataCache<>(10, 60000L);
+        try {
+            cache.get("a", key -> {
+                throw new AtlassianDataStoreException("Content is not found: 404");
+            });
+            fail();
+        } catch (final AtlassianDataStoreException e) {
+            // expected
+        }
+        assertEquals(0, cache.size());
+        assertEquals("a", cache.get("a", key -> key));
+    }
+
+    public void test_error() throws Exception {
+        final MetadataCache<String, String> cache = new MetadataCache<>(10, 60000L);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> owner = executorService.submit(() -> cache.get("a", key -> {
+                try {
+                    latch.await(10, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new OutOfMemoryError("load");
+            }));
+            Thread.sleep(100L);
+            final Future<String> waiter = executorService.submit(() -> cache.get("a", key -> "b"));
+            Thread.sleep(100L);
+            latch.countDown();
+            try {
+                owner.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof OutOfMemoryError);
+            }
+            try {
+                waiter.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof OutOfMemoryError);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(0, cache.size());
+        assertEquals("a", cache.get("a", key -> key));
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.api.jira.issue;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.codelibs.fess.ds.atlassian.api.AtlassianClient;
+import org.codelibs.fess.ds.atlassian.api.jira.JiraClient;
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class GetIssuesRequestTest extends ContainerTestCase {
+
+    private HttpServer jiraServer;
+    private List<String> jqls;
+    private volatile int maxResultsCap;
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        jqls = Collections.synchronizedList(new ArrayList<>());
+        maxResultsCap = Integer.MAX_VALUE;
+        // local stand-in for the Jira search API, returns one issue per id in "id in (...)" up to maxResultsCap per page
+        jiraServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        jiraServer.createContext("/rest/api/latest/search", exchange -> {
+            final Scanner s = new Scanner(exchange.getRequestBody(), "UTF-8");
+            s.useDelimiter("\\A");
+            final String request = s.hasNext() ? s.next() : "";
+            s.close();
+            final Matcher jqlMatcher = Pattern.compile("\"jql\":\"([^\"]*)\"").matcher(request);
+            final String jql = jqlMatcher.find() ? jqlMatcher.group(1) : "";
+            jqls.add(jql);
+            final int startAt = getInt(request, "startAt");
+            final int maxResults = Math.min(getInt(request, "maxResults"), maxResultsCap);
+            final List<String> ids = new ArrayList<>();
+            final Matcher idMatcher = Pattern.compile("\\d+").matcher(jql);
+            while (idMatcher.find()) {
+                ids.add(idMatcher.group());
+            }
+            final StringBuilder buf = new StringBuilder("{\"startAt\": " + startAt + ", \"maxResults\": " + maxResults + ", \"total\": "
+                    + ids.size() + ", \"issues\": [");
+            for (int i = startAt; i < Math.min(ids.size(), startAt + maxResults); i++) {
+                if (i > startAt) {
+                    buf.append(',');
+                }
+                buf.append("{\"id\": \"").append(ids.get(i)).append("\"}");
+            }
+            final byte[] body = buf.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        jiraServer.start();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        jiraServer.stop(0);
+        super.tearDown();
+    }
+
+    public void test_buildJqls() {
+        final List<String> result =
+                GetIssuesRequest.buildJqls(Arrays.asList("1", "FESS-1", "2", "3", "FESS-\"2", ""), 2, GetIssuesRequest.DEFAULT_MAX_JQL_LENGTH);
+        assertEquals(3, result.size());
+        assertEquals("id in (1,2)", result.get(0));
+        assertEquals("id in (3)", result.get(1));
+        assertEquals("key in (\"FESS-1\",\"FESS-\\\"2\")", result.get(2));
+
+        final List<String> limited = GetIssuesRequest.buildJqls(Arrays.asList("10000", "20000", "30000"), 100, 20);
+        assertEquals(2, limited.size());
+        assertEquals("id in (10000,20000)", limited.get(0));
+        assertEquals("id in (30000)", limited.get(1));
+
+        assertTrue(GetIssuesRequest.buildJqls(Collections.emptyList(), 100, 100).isEmpty());
+    }
+
+    public void test_execute_cappedByServer() {
+        maxResultsCap = 30;
+        final List<String> ids = new ArrayList<>();
+        for (int i = 1; i <= 250; i++) {
+            ids.add(Integer.toString(i));
+        }
+        final JiraClient client =
+                new JiraClient(AtlassianClient.builder().basicAuth("http://localhost:" + jiraServer.getAddress().getPort(), "user", "password")
+                        .build());
+        final List<Map<String, Object>> issues = client.getIssues(ids).fields("summary").filter("id").execute().getIssues();
+        assertEquals(250, issues.size());
+        for (int i = 0; i < issues.size(); i++) {
+            assertEquals(Integer.toString(i + 1), issues.get(i).get("id"));
+        }
+        // 100 + 100 + 50 ids, 30 per page
+        assertEquals(4 + 4 + 2, jqls.size());
+    }
+
+    public void test_execute() {
+        final List<String> ids = new ArrayList<>();
+        for (int i = 1; i <= 250; i++) {
+            ids.add(Integer.toString(i));
+        }
+        final JiraClient client =
+                new JiraClient(AtlassianClient.builder().basicAuth("http://localhost:" + jiraServer.getAddress().getPort(), "user", "password")
+                        .build());
+        final List<Map<String, Object>> issues = client.getIssues(ids).fields("summary").execute().getIssues();
+        assertEquals(3, jqls.size());
+        assertEquals(250, issues.size());
+        // results keep the chunk order regardless of the concurrency
+        for (int i = 0; i < issues.size(); i++) {
+            assertEquals(Integer.toString(i + 1), issues.get(i).get("id"));
+        }
+    }
+
+    private int getInt(final String request, final String name) {
+        final Matcher matcher = Pattern.compile("\"" + name + "\":(\\d+)").matcher(request);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.callback;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.codelibs.fess.ds.callback.IndexUpdateCallback;
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class BatchingIndexUpdateCallbackTest extends ContainerTestCase {
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    public void test_count() {
+        final List<Object> stored = Collections.synchronizedList(new ArrayList<>());
+        final BatchingIndexUpdateCallback callback = new BatchingIndexUpdateCallback(newCallback(stored), 3, Long.MAX_VALUE, 0L);
+        for (int i = 0; i < 7; i++) {
+            callback.store(Collections.emptyMap(), Collections.singletonMap("id", i));
+        }
+        assertEquals(6, stored.size());
+        assertEquals(2, callback.getBatchCount());
+        callback.close();
+        assertEquals(7, stored.size());
+        for (int i = 0; i < 7; i++) {
+            assertEquals(i, stored.get(i));
+        }
+    }
+
+    public void test_bytes() {
+        final List<Object> stored = Collections.synchronizedList(new ArrayList<>());
+        final BatchingIndexUpdateCallback callback = new BatchingIndexUpdateCallback(newCallback(stored), 100, 100L, 0L);
+        callback.store(Collections.emptyMap(), Map.of("id", 0, "content", "0123456789"));
+        assertEquals(0, stored.size());
+        callback.store(Collections.emptyMap(), Map.of("id", 1, "content", "01234567890123456789012345678901234567890123456789"));
+        assertEquals(2, stored.size());
+        callback.close();
+        assertEquals(2, stored.size());
+    }
+
+    public void test_delay() throws Exception {
+        final List<Object> stored = Collections.synchronizedList(new ArrayList<>());
+        final BatchingIndexUpdateCallback callback = new BatchingIndexUpdateCallback(newCallback(stored), 100, Long.MAX_VALUE, 50L);
+        try {
+            callback.store(Collections.emptyMap(), Collections.singletonMap("id", 0));
+            assertEquals(0, stored.size());
+            for (int i = 0; i < 100 && stored.isEmpty(); i++) {
+                Thread.sleep(10L);
+            }
+            assertEquals(1, stored.size());
+        } finally {
+            callback.close();
+        }
+    }
+
+    public void test_onStored() {
+        final List<Object> stored = Collections.synchronizedList(new ArrayList<>());
+        final List<Object> notified = Collections.synchronizedList(new ArrayList<>());
+        final BatchingIndexUpdateCallback callback = new BatchingIndexUpdateCallback(newCallback(stored), 3, Long.MAX_VALUE, 0L);
+        for (int i = 0; i < 4; i++) {
+            final int id = i;
+            callback.store(Collections.emptyMap(), Collections.singletonMap("id", i), () -> notified.add(id));
+        }
+        // the last document is only buffered
+        assertEquals(3, notified.size());
+        callback.close();
+        assertEquals(stored, notified);
+
+        // without a list, every store fails
+        notified.clear();
+        final BatchingIndexUpdateCallback failing = new BatchingIndexUpdateCallback(newCallback(null), 3, Long.MAX_VALUE, 0L);
+        failing.store(Collections.emptyMap(), Collections.singletonMap("id", 0), () -> notified.add(0));
+        try {
+            failing.close();
+            fail();
+        } catch (final RuntimeException e) {
+            // the document is not stored
+        }
+        assertEquals(0, notified.size());
+    }
+
+    public void test_closeAfterFailure() {
+        final List<Object> stored = Collections.synchronizedList(new ArrayList<>());
+        final BatchingIndexUpdateCallback callback = new BatchingIndexUpdateCallback(newCallback(stored), 3, Long.MAX_VALUE, 0L);
+        callback.store(Collections.emptyMap(), Collections.singletonMap("id", 0));
+        // as left by a failed timed flush
+        callback.failure = new IllegalStateException("timed flush");
+        try {
+            callback.close();
+            fail();
+        } catch (final AtlassianDataStoreException e) {
+            assertEquals("timed flush", e.getCause().getMessage());
+        }
+        assertEquals(Collections.singletonList(0), stored);
+    }
+
+    public void test_concurrent() throws Exception {
+        final List<Object> stored = Collections.synchronizedList(new ArrayList<>());
+        final BatchingIndexUpdateCallback callback = new BatchingIndexUpdateCallback(newCallback(stored), 10, Long.MAX_VALUE, 10L);
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t * 1000;
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    callback.store(Collections.emptyMap(), Collections.singletonMap("id", offset + i));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        callback.close();
+        assertEquals(4000, stored.size());
+        assertEquals(4000, stored.stream().distinct().count());
+    }
+
+    protected IndexUpdateCallback newCallback(final List<Object> stored) {
+        return new IndexUpdateCallback() {
+            @Override
+            public void store(final Map<String, String> paramMap, final Map<String, Object> dataMap) {
+                stored.add(dataMap.get("id"));
+            }
+
+            @Override
+            public long getDocumentSize() {
+                return stored.size();
+            }
+
+            @Override
+            public long getExecuteTime() {
+                return 0;
+            }
+
+            @Override
+            public void commit() {
+            }
+        };
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.callback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class SegmentUpdaterTest extends ContainerTestCase {
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    public void test_batch() {
+        final List<Map<String, Object>> requests = new ArrayList<>();
+        final SegmentUpdater updater = new SegmentUpdater(3) {
+            @Override
+            protected void execute(final Map<String, Object> batch) {
+                requests.add(batch);
+            }
+        };
+        for (int i = 0; i < 7; i++) {
+            updater.add("doc" + i, "20190101");
+        }
+        assertEquals(2, requests.size());
+        assertEquals(3, requests.get(0).size());
+        assertEquals("20190101", requests.get(1).get("doc5"));
+        updater.close();
+        assertEquals(3, requests.size());
+        assertTrue(requests.get(2).containsKey("doc6"));
+        assertEquals(7L, updater.getUpdateCount());
+        assertEquals(3L, updater.getRequestCount());
+        updater.close();
+        assertEquals(3, requests.size());
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.flow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class DocumentPublisherTest extends ContainerTestCase {
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    public void test_request() throws Exception {
+        final AtomicInteger stored = new AtomicInteger();
+        final DocumentPublisher publisher = new DocumentPublisher(callback -> {
+            for (int i = 0; i < 10; i++) {
+                callback.store(Collections.emptyMap(), Collections.singletonMap("id", i));
+                stored.incrementAndGet();
+            }
+        }, () -> {});
+        final TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+        assertTrue(subscriber.subscribed.await(10, TimeUnit.SECONDS));
+
+        Thread.sleep(100L);
+        assertEquals(0, stored.get());
+
+        subscriber.subscription.request(3);
+        for (int i = 0; i < 100 && stored.get() < 3; i++) {
+            Thread.sleep(10L);
+        }
+        Thread.sleep(100L);
+        assertEquals(3, stored.get());
+        assertEquals(3, subscriber.items.size());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(10, subscriber.items.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, subscriber.items.get(i).get("id"));
+        }
+        assertNull(subscriber.error.get());
+
+        // a crawl can be subscribed only once
+        final TestSubscriber second = new TestSubscriber();
+        publisher.subscribe(second);
+        assertTrue(second.error.get() instanceof IllegalStateException);
+    }
+
+    public void test_cancel() throws Exception {
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final CountDownLatch finished = new CountDownLatch(1);
+        final DocumentPublisher publisher = new DocumentPublisher(callback -> {
+            try {
+                for (int i = 0; !stopped.get(); i++) {
+                    callback.store(Collections.emptyMap(), Collections.singletonMap("id", i));
+                }
+            } finally {
+                finished.countDown();
+            }
+        }, () -> stopped.set(true));
+        final TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(2);
+        for (int i = 0; i < 100 && subscriber.items.size() < 2; i++) {
+            Thread.sleep(10L);
+        }
+        subscriber.subscription.cancel();
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertTrue(stopped.get());
+        assertEquals(2, subscriber.items.size());
+        assertEquals(1, subscriber.completed.getCount());
+        assertNull(subscriber.error.get());
+    }
+
+    public void test_error() throws Exception {
+        final DocumentPublisher publisher = new DocumentPublisher(callback -> {
+            throw new IllegalStateException("failed");
+        }, () -> {});
+        final TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+        for (int i = 0; i < 100 && subscriber.error.get() == null; i++) {
+            Thread.sleep(10L);
+        }
+        assertEquals("failed", subscriber.error.get().getMessage());
+    }
+
+    static class TestSubscriber implements Flow.Subscriber<Map<String, Object>> {
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(1);
+        final List<Map<String, Object>> items = Collections.synchronizedList(new ArrayList<>());
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscribed.countDown();
+        }
+
+        @Override
+        public void onNext(final Map<String, Object> item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            error.set(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+
+}
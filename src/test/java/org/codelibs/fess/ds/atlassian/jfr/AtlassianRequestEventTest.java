@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.jfr;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.codelibs.fess.ds.atlassian.api.AtlassianClient;
+import org.codelibs.fess.ds.atlassian.api.jira.JiraClient;
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class AtlassianRequestEventTest extends ContainerTestCase {
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    public void test_recording() throws Exception {
+        final byte[] json = "{\"key\": \"FESS\", \"name\": \"Fess\"}".getBytes(StandardCharsets.UTF_8);
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/rest/api/latest/project/", exchange -> {
+            exchange.sendResponseHeaders(200, json.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(json);
+            }
+        });
+        server.start();
+        final Path file = Files.createTempFile("atlassian", ".jfr");
+        try {
+            final JiraClient client = new JiraClient(
+                    AtlassianClient.builder().basicAuth("http://localhost:" + server.getAddress().getPort(), "user", "password").build());
+            assertFalse(new AtlassianRequestEvent().isEnabled());
+            assertEquals("Fess", client.getProject("FESS").execute().getProject().get("name"));
+
+            try (Recording recording = new Recording()) {
+                recording.enable(AtlassianRequestEvent.class).withThreshold(Duration.ZERO);
+                recording.start();
+                assertEquals("Fess", client.getProject("FESS").execute().getProject().get("name"));
+                recording.stop();
+                recording.dump(file);
+            }
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> "org.codelibs.fess.ds.atlassian.AtlassianRequest".equals(e.getEventType().getName()))
+                    .collect(Collectors.toList());
+            assertEquals(1, events.size());
+            assertEquals("project/{id}", events.get(0).getString("endpoint"));
+            assertEquals(200, events.get(0).getInt("statusCode"));
+            assertEquals(json.length, events.get(0).getLong("bytes"));
+            assertTrue(events.get(0).getDuration().toNanos() > 0);
+        } finally {
+            server.stop(0);
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
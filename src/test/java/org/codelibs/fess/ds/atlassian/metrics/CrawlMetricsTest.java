@@ -0,0 +1,142 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.metrics;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.codelibs.fess.ds.atlassian.AtlassianDataStoreException;
+import org.codelibs.fess.ds.atlassian.api.AtlassianClient;
+import org.codelibs.fess.ds.atlassian.api.jira.JiraClient;
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class CrawlMetricsTest extends ContainerTestCase {
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    public void test_getEndpoint() {
+        assertEquals("search", CrawlMetrics.getEndpoint("/rest/api/latest/search"));
+        assertEquals("issue/{id}/comment", CrawlMetrics.getEndpoint("/rest/api/2/issue/FESS-123/comment"));
+        assertEquals("content", CrawlMetrics.getEndpoint("/wiki/rest/api/latest/content"));
+        assertEquals("content/{id}/child/comment", CrawlMetrics.getEndpoint("/rest/api/latest/content/12345/child/comment"));
+        assertEquals("project/{id}", CrawlMetrics.getEndpoint("/rest/api/latest/project/FESS"));
+    }
+
+    public void test_onRequest() {
+        final List<String> events = new ArrayList<>();
+        final CrawlMetrics metrics = new CrawlMetrics(Collections.singletonList(new MetricsListener() {
+            @Override
+            public void onRequest(final String endpoint, final int statusCode, final long bytes, final long durationNanos) {
+                events.add(endpoint + ":" + statusCode);
+            }
+
+            @Override
+            public void onDocument(final String type, final long durationNanos) {
+                events.add(type);
+            }
+
+            @Override
+            public void onExtraction(final long durationNanos) {
+                events.add("extraction");
+            }
+        }));
+        for (int i = 0; i < 98; i++) {
+            metrics.onRequest("search", 200, 100L, TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        metrics.onRequest("search", 500, 10L, TimeUnit.MILLISECONDS.toNanos(300));
+        metrics.onRequest("search", 0, 0L, TimeUnit.MILLISECONDS.toNanos(3000));
+        metrics.onRequest("issue/{id}/comment", 304, 50L, TimeUnit.MILLISECONDS.toNanos(1));
+        metrics.onDocument("issue", TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.onExtraction(TimeUnit.MILLISECONDS.toNanos(7));
+
+        assertEquals(100L, metrics.getRequestCounts().get("search").longValue());
+        assertEquals(2L, metrics.getErrorCounts().get("search").longValue());
+        assertEquals(0L, metrics.getErrorCounts().get("issue/{id}/comment").longValue());
+        assertEquals(9810L, metrics.getBytes().get("search").longValue());
+        assertEquals("p50<=16ms, p90<=16ms, p99<=512ms, max=3000ms", metrics.getLatencies().get("search"));
+        assertEquals(1L, metrics.getDocumentCount());
+        assertEquals(1L, metrics.getExtractionCount());
+        assertEquals(7L, metrics.getExtractionTimeMillis());
+        assertEquals(103, events.size());
+        assertEquals("search:500", events.get(98));
+        assertEquals("extraction", events.get(102));
+        assertTrue(metrics.getSummary(), metrics.getSummary().contains("\n  search: 100 requests, 2 errors, 9810 bytes"));
+    }
+
+    public void test_register() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(CrawlMetrics.DOMAIN + ":type=CrawlMetrics,name=" + ObjectName.quote("test_1"));
+        final CrawlMetrics metrics = new CrawlMetrics(Collections.emptyList());
+        metrics.register("test_1");
+        metrics.onDocument("issue", 1L);
+        assertTrue(server.isRegistered(name));
+        assertEquals(1L, ((Long) server.getAttribute(name, "DocumentCount")).longValue());
+        metrics.finish();
+        assertFalse(server.isRegistered(name));
+    }
+
+    public void test_client() throws Exception {
+        final byte[] json = "{\"key\": \"FESS\", \"name\": \"Fess\"}".getBytes(StandardCharsets.UTF_8);
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/rest/api/latest/project/", exchange -> {
+            final boolean found = exchange.getRequestURI().getPath().endsWith("/FESS");
+            exchange.sendResponseHeaders(found ? 200 : 404, found ? json.length : -1);
+            try (OutputStream out = exchange.getResponseBody()) {
+                if (found) {
+                    out.write(json);
+                }
+            }
+        });
+        server.start();
+        try {
+            final CrawlMetrics metrics = new CrawlMetrics(Collections.emptyList());
+            final JiraClient client = new JiraClient(AtlassianClient.builder()
+                    .basicAuth("http://localhost:" + server.getAddress().getPort(), "user", "password").metrics(metrics).build());
+            assertEquals("Fess", client.getProject("FESS").execute().getProject().get("name"));
+            try {
+                client.getProject("NONE").execute();
+                fail();
+            } catch (final AtlassianDataStoreException e) {
+                // expected
+            }
+            assertEquals(2L, metrics.getRequestCounts().get("project/{id}").longValue());
+            assertEquals(1L, metrics.getErrorCounts().get("project/{id}").longValue());
+            assertEquals(json.length, metrics.getBytes().get("project/{id}").longValue());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.script;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codelibs.fess.ds.atlassian.JiraDataStore;
+import org.codelibs.fess.exception.JobProcessingException;
+import org.codelibs.fess.util.GroovyUtil;
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class CompiledScriptsTest extends ContainerTestCase {
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    public void test_evaluate() {
+        final Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("url", "issue.view_url");
+        scriptMap.put("title", "issue.summary");
+        scriptMap.put("content", "issue.description + \"\\n\" + issue.comments");
+        scriptMap.put("home", "home");
+        scriptMap.put("empty", "");
+        scriptMap.put("missing", "issue.summary == null ? null : null");
+        scriptMap.put("broken", "issue.");
+        final Map<String, String> paramMap = new HashMap<>();
+        paramMap.put("home", "https://example.atlassian.net");
+        final CompiledScripts scripts = new CompiledScripts(scriptMap);
+        assertTrue(scripts.isCompiledFrom(new HashMap<>(scriptMap)));
+
+        for (int i = 0; i < 3; i++) {
+            final Map<String, Object> issue = new HashMap<>();
+            issue.put("view_url", "https://example.atlassian.net/browse/FESS-" + i);
+            issue.put("summary", "Summary " + i);
+            issue.put("description", "Description " + i);
+            issue.put("comments", "Comment " + i);
+            final Map<String, Object> variables = new HashMap<>();
+            variables.put("issue", issue);
+
+            final Map<String, Object> dataMap = scripts.evaluate(paramMap, variables);
+            assertEquals("https://example.atlassian.net/browse/FESS-" + i, dataMap.get("url"));
+            assertEquals("Summary " + i, dataMap.get("title"));
+            assertEquals("Description " + i + "\nComment " + i, dataMap.get("content"));
+            assertEquals("https://example.atlassian.net", dataMap.get("home"));
+            assertEquals("", dataMap.get("empty"));
+            assertFalse(dataMap.containsKey("missing"));
+            assertFalse(dataMap.containsKey("broken"));
+
+            // same as evaluating the scripts one by one
+            final Map<String, Object> resultMap = new HashMap<>(paramMap);
+            resultMap.putAll(variables);
+            assertEquals(GroovyUtil.evaluate(scriptMap.get("content"), resultMap), dataMap.get("content"));
+        }
+    }
+
+    public void test_convertValue() {
+        final ConvertingDataStore dataStore = new ConvertingDataStore();
+        final Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("title", "issue.summary");
+        scriptMap.put("home", "home");
+        scriptMap.put("container", "container != null");
+        scriptMap.put("param", "container");
+        scriptMap.put("assigned", "summary = issue.summary; summary");
+        scriptMap.put("unassigned", "binding.hasVariable('summary')");
+        scriptMap.put("shadowed", "container == home");
+        scriptMap.put("empty", "");
+        scriptMap.put("missing", "issue.summary == null ? null : null");
+        scriptMap.put("broken", "issue.");
+        scriptMap.put("failed", "issue.undefined.value");
+        final Map<String, String> paramMap = new HashMap<>();
+        paramMap.put("home", "https://example.atlassian.net");
+        paramMap.put("container", "https://example.atlassian.net");
+        final Map<String, Object> issue = new HashMap<>();
+        issue.put("summary", "Summary");
+        final Map<String, Object> variables = new HashMap<>();
+        variables.put("issue", issue);
+
+        final Map<String, Object> dataMap = new CompiledScripts(scriptMap).evaluate(paramMap, variables);
+        final Map<String, Object> resultMap = new HashMap<>(paramMap);
+        resultMap.putAll(variables);
+        for (final Map.Entry<String, String> entry : scriptMap.entrySet()) {
+            assertEquals(entry.getKey(), dataStore.convert(entry.getValue(), resultMap), dataMap.get(entry.getKey()));
+        }
+        assertEquals(Boolean.TRUE, dataMap.get("container"));
+        assertEquals(Boolean.FALSE, dataMap.get("shadowed"));
+        assertEquals("https://example.atlassian.net", dataMap.get("param"));
+        assertEquals(Boolean.FALSE, dataMap.get("unassigned"));
+
+        // a JobProcessingException stops the crawl as with convertValue
+        scriptMap.put("stop", "throw new org.codelibs.fess.exception.JobProcessingException('stop')");
+        try {
+            new CompiledScripts(scriptMap).evaluate(paramMap, variables);
+            fail();
+        } catch (final JobProcessingException e) {
+            assertEquals("stop", e.getMessage());
+        }
+    }
+
+    private static class ConvertingDataStore extends JiraDataStore {
+        private Object convert(final String template, final Map<String, Object> paramMap) {
+            return convertValue(template, paramMap);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.store;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class CrawlCheckpointTest extends ContainerTestCase {
+
+    private Path tempDir;
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        tempDir = Files.createTempDirectory("checkpoint");
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        Files.walk(tempDir).sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        super.tearDown();
+    }
+
+    public void test_resume() {
+        final Path path = tempDir.resolve("checkpoint.properties");
+        final CrawlCheckpoint checkpoint = new CrawlCheckpoint(path, "project = FESS");
+        assertFalse(checkpoint.isResumed());
+        assertEquals(0, checkpoint.getOffset("issue"));
+        checkpoint.update("issue", 150, "10150");
+
+        final CrawlCheckpoint resumed = new CrawlCheckpoint(path, "project = FESS");
+        assertTrue(resumed.isResumed());
+        assertEquals("issue", resumed.getPartition());
+        assertEquals(150, resumed.getOffset("issue"));
+        assertEquals(0, resumed.getOffset("blogpost"));
+        assertEquals("10150", resumed.getLastId());
+
+        resumed.clear();
+        assertFalse(Files.exists(path));
+        assertFalse(new CrawlCheckpoint(path, "project = FESS").isResumed());
+    }
+
+    public void test_otherQuery() {
+        final Path path = tempDir.resolve("checkpoint.properties");
+        new CrawlCheckpoint(path, "project = FESS").update("issue", 50, "10050");
+        final CrawlCheckpoint checkpoint = new CrawlCheckpoint(path, "project = OTHER");
+        assertFalse(checkpoint.isResumed());
+        assertEquals(0, checkpoint.getOffset("issue"));
+    }
+
+}
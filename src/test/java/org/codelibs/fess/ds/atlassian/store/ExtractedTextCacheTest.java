@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.store;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class ExtractedTextCacheTest extends ContainerTestCase {
+
+    private Path tempDir;
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        tempDir = Files.createTempDirectory("textcache");
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        Files.walk(tempDir).sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        super.tearDown();
+    }
+
+    public void test_getAndPut() {
+        final ExtractedTextCache cache = new ExtractedTextCache(tempDir.resolve("test.cache"), 1024 * 1024);
+        assertNull(cache.get("1", "1"));
+        cache.put("1", "1", "Text-1");
+        assertEquals("Text-1", cache.get("1", "1"));
+        assertNull(cache.get("1", "2"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    public void test_persist() {
+        final Path path = tempDir.resolve("test.cache");
+        final ExtractedTextCache cache = new ExtractedTextCache(path, 1024 * 1024);
+        cache.put("1", "1", "Text-1");
+        cache.put("2", "5", "Text-2");
+        cache.close();
+
+        final ExtractedTextCache reloaded = new ExtractedTextCache(path, 1024 * 1024);
+        assertEquals(2, reloaded.getEntryCount());
+        assertEquals("Text-1", reloaded.get("1", "1"));
+        assertEquals("Text-2", reloaded.get("2", "5"));
+    }
+
+    public void test_evict() {
+        final ExtractedTextCache cache = new ExtractedTextCache(tempDir.resolve("test.cache"), 64);
+        for (int i = 0; i < 100; i++) {
+            cache.put(Integer.toString(i), "1", "Text-" + i);
+        }
+        assertTrue(cache.getSize() <= 64);
+        assertNull(cache.get("0", "1"));
+        assertEquals("Text-99", cache.get("99", "1"));
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.store;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class FingerprintStoreTest extends ContainerTestCase {
+
+    private Path tempDir;
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        tempDir = Files.createTempDirectory("fingerprint");
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        Files.walk(tempDir).sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        super.tearDown();
+    }
+
+    public void test_isUnchanged() {
+        final FingerprintStore store = new FingerprintStore(tempDir.resolve("test.dat"));
+        final Map<String, Object> dataMap = new HashMap<>();
+        dataMap.put("title", "Title-1");
+        final long hash = FingerprintStore.hash(dataMap);
+        assertFalse(store.isUnchanged(1L, hash));
+        store.put(1L, hash, 1000L);
+        assertTrue(store.isUnchanged(1L, hash));
+        dataMap.put("title", "Title-2");
+        assertFalse(store.isUnchanged(1L, FingerprintStore.hash(dataMap)));
+        assertEquals(1000L, store.getLastModified(1L));
+        assertEquals(-1L, store.getLastModified(2L));
+    }
+
+    public void test_hash_nested() {
+        // the same entries in a different iteration order
+        final Map<String, Object> fields1 = new LinkedHashMap<>();
+        final Map<String, Object> fields2 = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            fields1.put("customfield_" + i, Arrays.asList("value" + i, Map.of("id", i)));
+            fields2.put("customfield_" + (19 - i), Arrays.asList("value" + (19 - i), Map.of("id", 19 - i)));
+        }
+        final long hash1 = FingerprintStore.hash(Map.of("issue", Map.of("fields", fields1)));
+        assertEquals(hash1, FingerprintStore.hash(Map.of("issue", Map.of("fields", fields2))));
+
+        fields2.put("customfield_0", Arrays.asList("changed", Map.of("id", 0)));
+        assertFalse(hash1 == FingerprintStore.hash(Map.of("issue", Map.of("fields", fields2))));
+    }
+
+    public void test_persist() {
+        final Path path = tempDir.resolve("test.dat");
+        final FingerprintStore store = new FingerprintStore(path);
+        for (long i = 0; i < 10000; i++) {
+            store.put(i, i * 31, i);
+        }
+        store.close();
+
+        final FingerprintStore reloaded = new FingerprintStore(path);
+        assertEquals(10000, reloaded.size());
+        for (long i = 0; i < 10000; i++) {
+            assertTrue(reloaded.isUnchanged(i, i * 31));
+        }
+        assertFalse(reloaded.isUnchanged(10000L, 0L));
+    }
+
+    public void test_remove() {
+        final FingerprintStore store = new FingerprintStore(tempDir.resolve("test.dat"));
+        for (long i = 0; i < 5000; i++) {
+            store.put(i, i, i);
+        }
+        for (long i = 0; i < 5000; i += 3) {
+            store.remove(i);
+        }
+        for (long i = 0; i < 5000; i++) {
+            assertEquals(i % 3 != 0, store.isUnchanged(i, i));
+        }
+        assertEquals(3333, store.size());
+    }
+
+}
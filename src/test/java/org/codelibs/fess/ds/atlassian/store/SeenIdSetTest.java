@@ -0,0 +1,109 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.store;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class SeenIdSetTest extends ContainerTestCase {
+
+    private Path tempDir;
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        tempDir = Files.createTempDirectory("seenid");
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        Files.walk(tempDir).sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        super.tearDown();
+    }
+
+    public void test_longHashSet() {
+        final LongHashSet set = new LongHashSet();
+        for (long i = 0; i < 100000; i += 2) {
+            assertTrue(set.add(i));
+        }
+        assertFalse(set.add(0L));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertEquals(50001, set.size());
+        assertTrue(set.contains(99998L));
+        assertFalse(set.contains(99999L));
+        assertTrue(set.contains(Long.MIN_VALUE));
+        assertEquals(50001, set.toArray().length);
+    }
+
+    public void test_commit() {
+        final Path path = tempDir.resolve("seen.dat");
+        final SeenIdSet first = new SeenIdSet(path);
+        first.add(1L, "http://localhost/1");
+        first.add(2L, "http://localhost/2");
+        first.add(3L, "http://localhost/3");
+        assertEquals(0L, first.commit((id, url) -> fail("no previous run")));
+        first.close();
+
+        final SeenIdSet second = new SeenIdSet(path);
+        second.add(1L, "http://localhost/1");
+        second.add(3L, null);
+        final Map<Long, String> removed = new HashMap<>();
+        assertEquals(1L, second.commit((id, url) -> removed.put(id, url)));
+        second.close();
+        assertEquals(1, removed.size());
+        assertEquals("http://localhost/2", removed.get(2L));
+
+        // the url of an id seen without one is carried over to the next run
+        final SeenIdSet third = new SeenIdSet(path);
+        third.add(1L, "http://localhost/1");
+        removed.clear();
+        assertEquals(1L, third.commit((id, url) -> removed.put(id, url)));
+        third.close();
+        assertEquals("http://localhost/3", removed.get(3L));
+    }
+
+    public void test_close_withoutCommit() {
+        final Path path = tempDir.resolve("seen.dat");
+        final SeenIdSet first = new SeenIdSet(path);
+        first.add(1L, "http://localhost/1");
+        first.commit((id, url) -> fail("no previous run"));
+        first.close();
+
+        final SeenIdSet aborted = new SeenIdSet(path);
+        aborted.add(2L, "http://localhost/2");
+        aborted.close();
+
+        final SeenIdSet third = new SeenIdSet(path);
+        third.add(1L, "http://localhost/1");
+        assertEquals(0L, third.commit((id, url) -> fail("aborted run must not be persisted")));
+        third.close();
+    }
+
+}
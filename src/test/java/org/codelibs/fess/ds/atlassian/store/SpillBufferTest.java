@@ -0,0 +1,98 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class SpillBufferTest extends ContainerTestCase {
+
+    private Path directory;
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        directory = Files.createTempDirectory("spill");
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(directory);
+        super.tearDown();
+    }
+
+    public void test_memory() throws Exception {
+        final byte[] bytes = "0123456789".getBytes(StandardCharsets.UTF_8);
+        try (SpillBuffer buffer = SpillBuffer.spool(new ByteArrayInputStream(bytes), 10L, directory)) {
+            assertFalse(buffer.isSpilled());
+            assertEquals(10L, buffer.size());
+            assertEquals("0123456789", read(buffer.getInputStream()));
+            assertEquals(0L, countFiles());
+        }
+    }
+
+    public void test_spill() throws Exception {
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            buf.append(i).append('\u3042');
+        }
+        final String text = buf.toString();
+        try (SpillBuffer buffer = SpillBuffer.spool(text, StandardCharsets.UTF_8, 1000L, directory)) {
+            assertTrue(buffer.isSpilled());
+            assertEquals(text.getBytes(StandardCharsets.UTF_8).length, buffer.size());
+            assertEquals(1L, countFiles());
+            assertEquals(text, read(buffer.getInputStream()));
+            // can be read again
+            assertEquals(text, read(buffer.getInputStream()));
+        }
+        assertEquals(0L, countFiles());
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private String read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] bytes = new byte[100];
+        int n;
+        while ((n = in.read(bytes)) != -1) {
+            out.write(bytes, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+}
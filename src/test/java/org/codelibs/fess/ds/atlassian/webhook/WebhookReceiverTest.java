@@ -0,0 +1,211 @@
+/*
+ * Copyright 2012-2018 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.atlassian.webhook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.codelibs.fess.ds.atlassian.api.AtlassianClient;
+import org.codelibs.fess.ds.atlassian.api.jira.JiraClient;
+import org.dbflute.utflute.lastadi.ContainerTestCase;
+
+public class WebhookReceiverTest extends ContainerTestCase {
+
+    private HttpServer jiraServer;
+    private List<String> requestedPaths;
+
+    @Override
+    protected String prepareConfigFile() {
+        return "test_app.xml";
+    }
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        requestedPaths = Collections.synchronizedList(new ArrayList<>());
+        // local stand-in for the Jira REST API
+        jiraServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        jiraServer.createContext("/rest/api/latest/issue/", exchange -> {
+            final String path = exchange.getRequestURI().getPath();
+            requestedPaths.add(path);
+            final String id = path.substring(path.lastIndexOf('/') + 1);
+            final byte[] body = ("{\"id\": \"" + id + "\", \"key\": \"FESS-" + id + "\", \"fields\": {\"summary\": \"Summary-" + id + "\"}}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        jiraServer.start();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        jiraServer.stop(0);
+        super.tearDown();
+    }
+
+    public void test_fromJson() {
+        final WebhookEvent issueEvent = WebhookEvent.fromJson("{\"webhookEvent\": \"jira:issue_deleted\", \"issue\": {\"id\": \"10001\"}}");
+        assertEquals("10001", issueEvent.getId());
+        assertTrue(issueEvent.isDeleted());
+
+        final WebhookEvent pageEvent = WebhookEvent.fromJson("{\"event\": \"page_updated\", \"page\": {\"id\": 123, \"spaceKey\": \"FESS\"}}");
+        assertEquals("123", pageEvent.getId());
+        assertFalse(pageEvent.isDeleted());
+        assertEquals("FESS", pageEvent.getEntity().get("spaceKey"));
+    }
+
+    public void test_coalesce() throws Exception {
+        final JiraClient client = newJiraClient();
+        final List<String> summaries = Collections.synchronizedList(new ArrayList<>());
+        final List<String> deleted = Collections.synchronizedList(new ArrayList<>());
+        final WebhookReceiver receiver = new WebhookReceiver(new WebhookReceiver.Handler() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public void update(final List<WebhookEvent> events) {
+                for (final WebhookEvent event : events) {
+                    final Map<String, Object> issue = client.getIssue(event.getId()).execute().getIssue();
+                    summaries.add((String) ((Map<String, Object>) issue.get("fields")).get("summary"));
+                }
+            }
+
+            @Override
+            public void delete(final List<WebhookEvent> events) {
+                for (final WebhookEvent event : events) {
+                    deleted.add(event.getId());
+                }
+            }
+        }, 60000L, 60000L, 10);
+        try {
+            for (int i = 0; i < 5; i++) {
+                receiver.accept("{\"webhookEvent\": \"jira:issue_updated\", \"issue\": {\"id\": \"1\"}}");
+                receiver.accept("{\"webhookEvent\": \"jira:issue_updated\", \"issue\": {\"id\": \"2\"}}");
+            }
+            receiver.accept("{\"webhookEvent\": \"jira:issue_updated\", \"issue\": {\"id\": \"3\"}}");
+            receiver.accept("{\"webhookEvent\": \"jira:issue_deleted\", \"issue\": {\"id\": \"3\"}}");
+            assertEquals(3, receiver.getPendingCount());
+            receiver.flush();
+        } finally {
+            receiver.close();
+        }
+        assertEquals(2, requestedPaths.size());
+        assertEquals(2, summaries.size());
+        assertTrue(summaries.contains("Summary-1"));
+        assertTrue(summaries.contains("Summary-2"));
+        assertEquals(1, deleted.size());
+        assertEquals("3", deleted.get(0));
+    }
+
+    public void test_httpEndpoint() throws Exception {
+        final List<String> updated = Collections.synchronizedList(new ArrayList<>());
+        final WebhookReceiver receiver = new WebhookReceiver(new WebhookReceiver.Handler() {
+            @Override
+            public void update(final List<WebhookEvent> events) {
+                for (final WebhookEvent event : events) {
+                    updated.add(event.getId());
+                }
+            }
+
+            @Override
+            public void delete(final List<WebhookEvent> events) {
+            }
+        }, 10L, 60000L, 10, 100);
+        try {
+            receiver.start(0, "/webhook", "secret");
+            final String url = "http://localhost:" + receiver.getPort() + "/webhook";
+            final String event = "{\"event\": \"page_updated\", \"page\": {\"id\": 1}}";
+            assertEquals(403, post(url, null, event));
+            assertEquals(403, post(url + "?token=secret", null, event));
+            assertEquals(403, post(url, "wrong", event));
+            assertEquals(400, post(url, "secret", "{\"event\": \"page_updated\"}"));
+            final String large = "{\"event\": \"page_updated\", \"page\": {\"id\": 1, \"title\": \"" + "x".repeat(100) + "\"}}";
+            assertEquals(413, post(url, "secret", large));
+            assertEquals(204, post(url, "secret", event));
+            for (int i = 0; i < 100 && updated.isEmpty(); i++) {
+                Thread.sleep(50L);
+            }
+        } finally {
+            receiver.close();
+        }
+        assertEquals(1, updated.size());
+        assertEquals("1", updated.get(0));
+    }
+
+    public void test_maxDelay() throws Exception {
+        final List<String> updated = Collections.synchronizedList(new ArrayList<>());
+        final WebhookReceiver receiver = new WebhookReceiver(new WebhookReceiver.Handler() {
+            @Override
+            public void update(final List<WebhookEvent> events) {
+                for (final WebhookEvent event : events) {
+                    updated.add(event.getId());
+                }
+            }
+
+            @Override
+            public void delete(final List<WebhookEvent> events) {
+            }
+        }, 60000L, 200L, 10);
+        try {
+            // events keep coming within the debounce window, but the first one is not delayed beyond the max delay
+            for (int i = 0; i < 100 && updated.isEmpty(); i++) {
+                receiver.accept("{\"webhookEvent\": \"jira:issue_updated\", \"issue\": {\"id\": \"1\"}}");
+                Thread.sleep(50L);
+            }
+        } finally {
+            receiver.close();
+        }
+        assertFalse(updated.isEmpty());
+        assertEquals("1", updated.get(0));
+    }
+
+    private JiraClient newJiraClient() {
+        final String home = "http://localhost:" + jiraServer.getAddress().getPort();
+        return new JiraClient(AtlassianClient.builder().basicAuth(home, "user", "password").build());
+    }
+
+    private int post(final String url, final String token, final String body) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        if (token != null) {
+            connection.setRequestProperty(WebhookReceiver.TOKEN_HEADER, token);
+        }
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        final int status = connection.getResponseCode();
+        connection.disconnect();
+        return status;
+    }
+
+}